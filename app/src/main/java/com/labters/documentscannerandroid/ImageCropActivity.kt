@@ -2,14 +2,13 @@ package com.labters.documentscannerandroid
 
 import android.content.Context
 import android.content.Intent
-import android.graphics.Bitmap
-import android.graphics.BitmapFactory
 import android.net.Uri
 import android.os.Bundle
 import androidx.appcompat.app.AppCompatActivity
 import androidx.core.view.isVisible
 import androidx.databinding.DataBindingUtil
 import androidx.lifecycle.lifecycleScope
+import com.labters.documentscanner.ImageSource
 import com.labters.documentscannerandroid.databinding.ActivityImageCropBinding
 import kotlinx.coroutines.launch
 
@@ -25,11 +24,12 @@ class ImageCropActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         val binding: ActivityImageCropBinding =
             DataBindingUtil.setContentView(this, R.layout.activity_image_crop)
-        val bitmap = assetToBitmap(intent.extras?.getString(FILE_DIR)!!)
         binding.documentScanner.setOnLoadListener { loading ->
             binding.progressBar.isVisible = loading
         }
-        binding.documentScanner.setImage(bitmap)
+        binding.documentScanner.setImage(
+            ImageSource.fromUri(contentResolver, Uri.parse(intent.extras?.getString(FILE_DIR)!!))
+        )
         binding.btnImageCrop.setOnClickListener {
             lifecycleScope.launch {
                 binding.progressBar.isVisible = true
@@ -40,9 +40,4 @@ class ImageCropActivity : AppCompatActivity() {
             }
         }
     }
-
-    private fun assetToBitmap(file: String): Bitmap =
-        contentResolver.openInputStream(Uri.parse(file)).run {
-            BitmapFactory.decodeStream(this)
-        }
 }
\ No newline at end of file
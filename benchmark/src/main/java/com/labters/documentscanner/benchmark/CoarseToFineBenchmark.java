@@ -0,0 +1,83 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.CoarseToFineDetector;
+import com.labters.documentscanner.libraries.DetectionMode;
+import com.labters.documentscanner.libraries.DocumentDetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detection at the 2000 px working size of {@code NativeClass.getPoint} against the coarse to
+ * fine detector, both starting from the full resolution image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoarseToFineBenchmark {
+
+    private static final int WORKING_SIZE = 2000;
+
+    @Param({"1MP", "12MP", "48MP"})
+    public String size;
+
+    private Mat document;
+    private Mat working;
+    private DocumentDetector detector;
+    private CoarseToFineDetector coarseToFineDetector;
+
+    @Setup
+    public void setUp() {
+        OpenCvLoader.load();
+        document = SyntheticDocument.create(SyntheticDocument.sizeOf(size));
+        working = new Mat();
+        detector = new DocumentDetector();
+        coarseToFineDetector = new CoarseToFineDetector(detector);
+    }
+
+    @TearDown
+    public void tearDown() {
+        document.release();
+        working.release();
+        detector.release();
+    }
+
+    @Benchmark
+    public MatOfPoint2f workingSize() {
+        double ratio = Math.min(1d, (double) WORKING_SIZE / Math.max(document.cols(), document.rows()));
+        Imgproc.resize(document, working, new Size(Math.round(document.cols() * ratio), Math.round(document.rows() * ratio)),
+                0, 0, Imgproc.INTER_AREA);
+        return release(detector.getLargestRectangle(working, DetectionMode.VALUE_CHANNEL));
+    }
+
+    @Benchmark
+    public MatOfPoint2f coarseToFine() {
+        return release(coarseToFineDetector.detect(document));
+    }
+
+    private static MatOfPoint2f release(MatOfPoint2f quad) {
+        if (quad != null) {
+            quad.release();
+        }
+        return quad;
+    }
+}
@@ -0,0 +1,126 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.CornerTracker;
+import com.labters.documentscanner.libraries.DetectionMode;
+import com.labters.documentscanner.libraries.DocumentDetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per frame of a {@link CornerTracker} against a full
+ * {@link DocumentDetector#getLargestRectangle} on every frame, over a stream of
+ * {@value #FRAMES} gray frames in which the page slowly turns and drifts. The tracker starts
+ * each stream with a full detection, as after {@link CornerTracker#reset()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CornerTrackerBenchmark {
+
+    private static final int FRAMES = CornerTracker.DEFAULT_REDETECT_INTERVAL;
+    private static final double DEGREES_PER_FRAME = 0.2;
+    private static final double DRIFT_PER_FRAME = 0.002;
+
+    @Param({"1MP", "12MP"})
+    public String size;
+
+    private Mat[] frames;
+    private DocumentDetector detector;
+    private CornerTracker tracker;
+
+    @Setup
+    public void setUp() {
+        OpenCvLoader.load();
+        Size frameSize = SyntheticDocument.sizeOf(size);
+        frames = new Mat[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            Mat document = SyntheticDocument.create(frameSize, corners(frameSize, i), new Scalar(70, 70, 70, 255));
+            frames[i] = new Mat();
+            Imgproc.cvtColor(document, frames[i], Imgproc.COLOR_RGBA2GRAY);
+            document.release();
+        }
+        detector = new DocumentDetector();
+        tracker = new CornerTracker(detector);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Mat frame : frames) {
+            frame.release();
+        }
+        tracker.release();
+        detector.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int tracked() {
+        tracker.reset();
+        int found = 0;
+        for (Mat frame : frames) {
+            found += count(tracker.update(frame));
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int detectedEveryFrame() {
+        int found = 0;
+        for (Mat frame : frames) {
+            found += count(detector.getLargestRectangle(frame, DetectionMode.VALUE_CHANNEL));
+        }
+        return found;
+    }
+
+    /**
+     * {@link SyntheticDocument#corners(Size)} turned about the image center and moved right,
+     * a little more on every frame.
+     */
+    private static Point[] corners(Size size, int frame) {
+        Point[] corners = SyntheticDocument.corners(size);
+        double centerX = size.width / 2;
+        double centerY = size.height / 2;
+        double cos = Math.cos(Math.toRadians(frame * DEGREES_PER_FRAME));
+        double sin = Math.sin(Math.toRadians(frame * DEGREES_PER_FRAME));
+        double shift = frame * DRIFT_PER_FRAME * size.width;
+        for (Point corner : corners) {
+            double dx = corner.x - centerX;
+            double dy = corner.y - centerY;
+            corner.x = centerX + shift + dx * cos - dy * sin;
+            corner.y = centerY + dx * sin + dy * cos;
+        }
+        return corners;
+    }
+
+    private static int count(MatOfPoint2f quad) {
+        if (quad == null) {
+            return 0;
+        }
+        quad.release();
+        return 1;
+    }
+}
@@ -0,0 +1,172 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.helpers.MathUtils;
+import com.labters.documentscanner.helpers.Quad;
+import com.labters.documentscanner.libraries.CoarseToFineDetector;
+import com.labters.documentscanner.libraries.DetectionMode;
+import com.labters.documentscanner.libraries.DocumentDetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+
+/**
+ * Corner accuracy of each {@link DetectionMode} and of {@link CoarseToFineDetector} against
+ * pages with known corners, run with {@code ./gradlew :benchmark:detectionAccuracy}.
+ * <p>
+ * Every scene is a {@link SyntheticDocument} page placed on a different background and with a
+ * different pose. Both modes search the full resolution image with
+ * {@link DocumentDetector#getLargestRectangle}. The coarse to fine detector is compared with
+ * the same search on a copy scaled to the 2000 px working size of {@code NativeClass.getPoint},
+ * the two ways of detecting on a large photo without searching it at full resolution.
+ * The error is the distance from each detected corner to the true one after both are sorted
+ * with {@link Quad#sortCorners()}. Timings are the best of a few runs on the calling thread,
+ * see {@link DetectionBenchmark} for proper ones.
+ */
+public final class DetectionAccuracy {
+
+    private static final int RUNS = 3;
+    private static final int WORKING_SIZE = 2000;
+
+    private DetectionAccuracy() {
+    }
+
+    public static void main(String[] args) {
+        OpenCvLoader.load();
+        String[] labels = args.length > 0 ? args : new String[]{"1MP", "12MP"};
+        final DocumentDetector detector = new DocumentDetector();
+        final CoarseToFineDetector coarseToFine = new CoarseToFineDetector(detector);
+        System.out.println("size  scene              detection      mean error  max error  time");
+        for (String label : labels) {
+            Size size = SyntheticDocument.sizeOf(label);
+            for (Scene scene : Scene.values()) {
+                Point[] truth = scene.corners(size);
+                Mat document = SyntheticDocument.create(size, truth, scene.background);
+                for (final DetectionMode mode : DetectionMode.values()) {
+                    report(label, scene, mode.name(), new Detection() {
+                        @Override
+                        public MatOfPoint2f detect(Mat document) {
+                            return detector.getLargestRectangle(document, mode);
+                        }
+                    }, document, truth);
+                }
+                report(label, scene, WORKING_SIZE + " px", new Detection() {
+                    @Override
+                    public MatOfPoint2f detect(Mat document) {
+                        return detectAtWorkingSize(detector, document);
+                    }
+                }, document, truth);
+                report(label, scene, "coarse to fine", new Detection() {
+                    @Override
+                    public MatOfPoint2f detect(Mat document) {
+                        return coarseToFine.detect(document);
+                    }
+                }, document, truth);
+                document.release();
+            }
+        }
+        detector.release();
+    }
+
+    /**
+     * VALUE_CHANNEL detection on a copy whose longer side is {@link #WORKING_SIZE}, scaled back
+     * to {@code document} coordinates.
+     */
+    private static MatOfPoint2f detectAtWorkingSize(DocumentDetector detector, Mat document) {
+        double ratio = Math.min(1d, (double) WORKING_SIZE / Math.max(document.cols(), document.rows()));
+        Mat working = new Mat();
+        Imgproc.resize(document, working, new Size(Math.round(document.cols() * ratio), Math.round(document.rows() * ratio)),
+                0, 0, Imgproc.INTER_AREA);
+        MatOfPoint2f found = detector.getLargestRectangle(working, DetectionMode.VALUE_CHANNEL);
+        working.release();
+        if (found == null) {
+            return null;
+        }
+        MatOfPoint2f scaled = MathUtils.toMatOfPoint2f(MathUtils.toQuad(found).scale(1 / ratio));
+        found.release();
+        return scaled;
+    }
+
+    private static void report(String label, Scene scene, String detection, Detection detector,
+                               Mat document, Point[] truth) {
+        MatOfPoint2f found = null;
+        long nanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            if (found != null) {
+                found.release();
+            }
+            long start = System.nanoTime();
+            found = detector.detect(document);
+            nanos = Math.min(nanos, System.nanoTime() - start);
+        }
+
+        String error;
+        if (found == null) {
+            error = String.format(Locale.ROOT, "%-23s", "not found");
+        } else {
+            Quad detected = MathUtils.toQuad(found).sortCorners();
+            Quad expected = Quad.fromPoints(truth).sortCorners();
+            double sum = 0;
+            double max = 0;
+            for (int i = 0; i < 4; i++) {
+                double distance = Math.hypot(detected.getX(i) - expected.getX(i), detected.getY(i) - expected.getY(i));
+                sum += distance;
+                max = Math.max(max, distance);
+            }
+            error = String.format(Locale.ROOT, "%6.2f px   %6.2f px", sum / 4, max);
+            found.release();
+        }
+        System.out.println(String.format(Locale.ROOT, "%-5s %-18s %-14s %s  %d ms",
+                label, scene.label, detection, error, nanos / 1_000_000));
+    }
+
+    private interface Detection {
+        MatOfPoint2f detect(Mat document);
+    }
+
+    private enum Scene {
+        GRAY_DESK("gray desk", new Scalar(70, 70, 70, 255), 0, 0),
+        WOODEN_DESK("wooden desk", new Scalar(150, 100, 60, 255), 8, 0),
+        LIGHT_DESK("light desk", new Scalar(175, 178, 182, 255), 0, 0.03),
+        BLUE_CLOTH("blue cloth", new Scalar(40, 60, 120, 255), -15, 0.02);
+
+        final String label;
+        final Scalar background;
+        final double degrees;
+        final double perspective;
+
+        Scene(String label, Scalar background, double degrees, double perspective) {
+            this.label = label;
+            this.background = background;
+            this.degrees = degrees;
+            this.perspective = perspective;
+        }
+
+        /**
+         * {@link SyntheticDocument#corners(Size)} rotated about the image center, with the top
+         * edge narrowed as if the page were tilted away from the camera.
+         */
+        Point[] corners(Size size) {
+            Point[] corners = SyntheticDocument.corners(size);
+            double centerX = size.width / 2;
+            double centerY = size.height / 2;
+            double inset = perspective * size.width;
+            corners[0].x += inset;
+            corners[1].x -= inset;
+            double cos = Math.cos(Math.toRadians(degrees));
+            double sin = Math.sin(Math.toRadians(degrees));
+            for (Point corner : corners) {
+                double dx = corner.x - centerX;
+                double dy = corner.y - centerY;
+                corner.x = centerX + dx * cos - dy * sin;
+                corner.y = centerY + dx * sin + dy * cos;
+            }
+            return corners;
+        }
+    }
+}
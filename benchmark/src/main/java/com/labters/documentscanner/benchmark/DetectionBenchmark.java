@@ -0,0 +1,75 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.DetectionMode;
+import com.labters.documentscanner.libraries.DocumentDetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Edge map and contour search of {@link DocumentDetector}, the code behind
+ * {@code NativeClass.getPoints}, on full resolution synthetic documents.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DetectionBenchmark {
+
+    @Param({"1MP", "12MP", "48MP"})
+    public String size;
+
+    @Param({"HSV", "VALUE_CHANNEL"})
+    public DetectionMode mode;
+
+    private Mat document;
+    private DocumentDetector detector;
+
+    @Setup
+    public void setUp() {
+        OpenCvLoader.load();
+        document = SyntheticDocument.create(SyntheticDocument.sizeOf(size));
+        detector = new DocumentDetector();
+    }
+
+    @TearDown
+    public void tearDown() {
+        document.release();
+        detector.release();
+    }
+
+    @Benchmark
+    public int getPoints() {
+        List<MatOfPoint2f> rectangles = detector.getPoints(document, mode);
+        int count = rectangles.size();
+        for (MatOfPoint2f rectangle : rectangles) {
+            rectangle.release();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int getModifiedImage() {
+        Mat edges = detector.getModifiedImage(document, mode);
+        int rows = edges.rows();
+        detector.getMatPool().recycle(edges);
+        return rows;
+    }
+}
@@ -0,0 +1,152 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.helpers.MathUtils;
+import com.labters.documentscanner.helpers.Quad;
+import com.labters.documentscanner.libraries.DocumentDetector;
+import com.labters.documentscanner.libraries.QuadCandidates;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Candidate ranking, by sorting Mats with the JNI area comparator or by selecting from
+ * precomputed {@link QuadCandidates}, and the {@link MathUtils} helpers used on every
+ * detected quad.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeometryBenchmark {
+
+    private static final int TOP_K = 5;
+
+    @Param({"16", "256", "4096"})
+    public int candidates;
+
+    private List<MatOfPoint2f> quads;
+    private QuadCandidates ranked;
+    private MatOfPoint2f quad;
+    private MatOfPoint quadInt;
+    private Point[] points;
+
+    @Setup
+    public void setUp() {
+        OpenCvLoader.load();
+        Random random = new Random(42);
+        quads = new ArrayList<>(candidates);
+        ranked = new QuadCandidates();
+        for (int i = 0; i < candidates; i++) {
+            double x = random.nextDouble() * 500;
+            double y = random.nextDouble() * 500;
+            double w = 100 + random.nextDouble() * 1400;
+            double h = 100 + random.nextDouble() * 1400;
+            MatOfPoint2f quad = new MatOfPoint2f(new Point(x, y), new Point(x, y + h), new Point(x + w, y + h), new Point(x + w, y));
+            quads.add(quad);
+            ranked.add(MathUtils.toQuad(quad), Imgproc.contourArea(quad), 1);
+        }
+        quad = quads.get(0);
+        quadInt = MathUtils.toMatOfPointInt(quad);
+        points = quad.toArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (MatOfPoint2f candidate : quads) {
+            candidate.release();
+        }
+        quadInt.release();
+    }
+
+    @Benchmark
+    public MatOfPoint2f sortByArea() {
+        List<MatOfPoint2f> sorted = new ArrayList<>(quads);
+        Collections.sort(sorted, DocumentDetector.AreaDescendingComparator);
+        return sorted.get(0);
+    }
+
+    @Benchmark
+    public int bestCandidate() {
+        return ranked.best();
+    }
+
+    @Benchmark
+    public int[] topCandidates() {
+        return ranked.top(TOP_K);
+    }
+
+    /**
+     * Area, convexity and corner angles of one quad through OpenCV, as candidates were checked
+     * before {@link Quad}.
+     */
+    @Benchmark
+    public double rectangleCheckMat() {
+        double area = Imgproc.contourArea(quad);
+        MatOfPoint polygonInt = MathUtils.toMatOfPointInt(quad);
+        boolean convex = Imgproc.isContourConvex(polygonInt);
+        polygonInt.release();
+        Point[] corners = quad.toArray();
+        double maxCosine = 0;
+        for (int i = 2; i < 5; i++) {
+            maxCosine = Math.max(maxCosine, Math.abs(MathUtils.angle(corners[i % 4], corners[i - 2], corners[i - 1])));
+        }
+        return convex ? area * maxCosine : -area;
+    }
+
+    @Benchmark
+    public double rectangleCheckQuad() {
+        Quad corners = MathUtils.toQuad(quad);
+        double area = corners.getArea();
+        boolean convex = corners.isConvex();
+        double maxCosine = 0;
+        for (int i = 1; i < 4; i++) {
+            maxCosine = Math.max(maxCosine, Math.abs(corners.getCosine(i)));
+        }
+        return convex ? area * maxCosine : -area;
+    }
+
+    @Benchmark
+    public double scaleRectangle() {
+        MatOfPoint2f scaled = MathUtils.scaleRectangle(quad, 0.5);
+        double rows = scaled.rows();
+        scaled.release();
+        return rows;
+    }
+
+    @Benchmark
+    public double angle() {
+        return MathUtils.angle(points[0], points[2], points[1]);
+    }
+
+    @Benchmark
+    public int toMatOfPointFloatAndInt() {
+        MatOfPoint2f floats = MathUtils.toMatOfPointFloat(quadInt);
+        MatOfPoint ints = MathUtils.toMatOfPointInt(floats);
+        int rows = ints.rows();
+        ints.release();
+        floats.release();
+        return rows;
+    }
+}
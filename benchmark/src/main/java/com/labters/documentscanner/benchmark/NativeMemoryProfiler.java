@@ -0,0 +1,72 @@
+package com.labters.documentscanner.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports resident memory of the benchmark process around every iteration.
+ * <p>
+ * OpenCV allocates Mats outside the Java heap, so the heap numbers of {@code -prof gc} do not
+ * see them. Resident set growth within an iteration shows native allocations that were not
+ * released, the high-water mark shows peak native plus heap footprint. Linux only, other
+ * systems report nothing.
+ */
+public class NativeMemoryProfiler implements InternalProfiler {
+
+    private static final String STATUS_FILE = "/proc/self/status";
+
+    private long residentBefore;
+
+    @Override
+    public String getDescription() {
+        return "Process resident memory, covers native OpenCV allocations";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        residentBefore = readKiloBytes("VmRSS:");
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams,
+                                                       IterationResult result) {
+        long resident = readKiloBytes("VmRSS:");
+        long peak = readKiloBytes("VmHWM:");
+        if (resident < 0 || residentBefore < 0) {
+            return Collections.emptyList();
+        }
+        List<Result> results = new ArrayList<>();
+        results.add(new ScalarResult("native.rss", resident / 1024d, "MB", AggregationPolicy.AVG));
+        results.add(new ScalarResult("native.rss.growth", (resident - residentBefore) / 1024d, "MB", AggregationPolicy.AVG));
+        results.add(new ScalarResult("native.rss.peak", peak / 1024d, "MB", AggregationPolicy.MAX));
+        return results;
+    }
+
+    private static long readKiloBytes(String key) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(STATUS_FILE))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(key)) {
+                    return Long.parseLong(line.substring(key.length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Not on Linux.
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,16 @@
+package com.labters.documentscanner.benchmark;
+
+final class OpenCvLoader {
+
+    private static boolean loaded;
+
+    private OpenCvLoader() {
+    }
+
+    static synchronized void load() {
+        if (!loaded) {
+            nu.pattern.OpenCV.loadLocally();
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.PerspectiveTransformation;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Deterministic photo-like input: a slightly rotated light page with text lines on a noisy
+ * dark background, as CV_8UC4 RGBA like a decoded Bitmap.
+ */
+final class SyntheticDocument {
+
+    private SyntheticDocument() {
+    }
+
+    static Size sizeOf(String label) {
+        switch (label) {
+            case "1MP":
+                return new Size(1152, 864);
+            case "12MP":
+                return new Size(4000, 3000);
+            case "48MP":
+                return new Size(8000, 6000);
+            default:
+                throw new IllegalArgumentException("Unknown size " + label);
+        }
+    }
+
+    static Point[] corners(Size size) {
+        double w = size.width;
+        double h = size.height;
+        return new Point[]{
+                new Point(w * 0.15, h * 0.13),
+                new Point(w * 0.85, h * 0.17),
+                new Point(w * 0.83, h * 0.90),
+                new Point(w * 0.17, h * 0.87)
+        };
+    }
+
+    static MatOfPoint2f cornerMat(Size size) {
+        return new MatOfPoint2f(corners(size));
+    }
+
+    /**
+     * Warped gray page of the document at the given size, the input of binarization.
+     */
+    static Mat createGrayPage(Size size) {
+        Mat document = create(size);
+        MatOfPoint2f corners = cornerMat(size);
+        Mat warped = new PerspectiveTransformation().transform(document, corners);
+        Mat gray = new Mat();
+        Imgproc.cvtColor(warped, gray, Imgproc.COLOR_RGBA2GRAY);
+        warped.release();
+        corners.release();
+        document.release();
+        return gray;
+    }
+
+    static Mat create(Size size) {
+        return create(size, corners(size), new Scalar(70, 70, 70, 255));
+    }
+
+    /**
+     * Page with the given corners, in {@link #corners(Size)} order, on a noisy background of
+     * the given RGBA color.
+     */
+    static Mat create(Size size, Point[] corners, Scalar background) {
+        Core.setRNGSeed(42);
+        Mat image = new Mat(size, CvType.CV_8UC4);
+        Core.randn(image, 70, 12);
+        Core.add(image, new Scalar(background.val[0] - 70, background.val[1] - 70, background.val[2] - 70,
+                background.val[3] - 70), image);
+
+        // Corners in fixed point with 4 fractional bits, so they are not rounded to whole pixels
+        // and sub-pixel corner errors can be measured.
+        Point[] fixedPoint = new Point[corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            fixedPoint[i] = new Point(Math.round(corners[i].x * 16), Math.round(corners[i].y * 16));
+        }
+        MatOfPoint page = new MatOfPoint(fixedPoint);
+        Imgproc.fillConvexPoly(image, page, new Scalar(225, 222, 215, 255), Imgproc.LINE_8, 4);
+        page.release();
+
+        double lineHeight = size.height / 40;
+        int thickness = Math.max(1, (int) (lineHeight / 6));
+        for (double y = corners[0].y + lineHeight * 2; y < corners[3].y - lineHeight * 2; y += lineHeight) {
+            double t = (y - corners[0].y) / (corners[3].y - corners[0].y);
+            double left = corners[0].x + (corners[3].x - corners[0].x) * t + size.width * 0.05;
+            double right = corners[1].x + (corners[2].x - corners[1].x) * t - size.width * 0.08;
+            double slope = (corners[1].y - corners[0].y) / (corners[1].x - corners[0].x);
+            Imgproc.line(image, new Point(left, y), new Point(right, y + (right - left) * slope),
+                    new Scalar(30, 30, 35, 255), thickness);
+        }
+        return image;
+    }
+}
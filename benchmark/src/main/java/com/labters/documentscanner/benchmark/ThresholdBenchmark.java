@@ -0,0 +1,89 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.IntegralThreshold;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binarization of a warped page: the Gaussian {@link Imgproc#adaptiveThreshold} that
+ * {@code EnhancementPipeline.BINARIZE} runs against the integral image thresholds. The Gaussian
+ * gets slower as the block grows, the integral image ones do not. {@code bradleyBilevel}
+ * streams into a packed page without a full size output Mat. Quality is compared by
+ * {@link ThresholdQuality}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThresholdBenchmark {
+
+    @Param({"1MP", "12MP", "48MP"})
+    public String size;
+
+    @Param({"31", "101"})
+    public int blockSize;
+
+    private Mat gray;
+    private Mat result;
+    private IntegralThreshold bradley;
+    private IntegralThreshold sauvola;
+
+    @Setup
+    public void setUp() {
+        OpenCvLoader.load();
+        gray = SyntheticDocument.createGrayPage(SyntheticDocument.sizeOf(size));
+        result = new Mat();
+        bradley = new IntegralThreshold(IntegralThreshold.Method.BRADLEY, blockSize,
+                IntegralThreshold.DEFAULT_BRADLEY_T);
+        sauvola = new IntegralThreshold(IntegralThreshold.Method.SAUVOLA, blockSize,
+                IntegralThreshold.DEFAULT_SAUVOLA_K);
+    }
+
+    @TearDown
+    public void tearDown() {
+        gray.release();
+        result.release();
+    }
+
+    @Benchmark
+    public int adaptiveThreshold() {
+        Imgproc.adaptiveThreshold(gray, result, 255.0,
+                Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                Imgproc.THRESH_BINARY, blockSize, 7.0);
+        return result.rows();
+    }
+
+    @Benchmark
+    public int bradley() {
+        bradley.threshold(gray, result);
+        return result.rows();
+    }
+
+    @Benchmark
+    public int sauvola() {
+        sauvola.threshold(gray, result);
+        return result.rows();
+    }
+
+    @Benchmark
+    public int bradleyBilevel() {
+        return bradley.toBilevel(gray, null).getHeight();
+    }
+}
@@ -0,0 +1,140 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.IntegralThreshold;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+
+/**
+ * Binarization quality against a known answer, run with {@code ./gradlew :benchmark:thresholdQuality}.
+ * <p>
+ * Text is drawn into a mask that is the ground truth, then photographed: ink on paper under a
+ * shadow falling off from one side and a dim corner, softened by a slight blur and sensor
+ * noise. Each binarizer is scored on the text pixels it finds (F-measure), on all wrong
+ * pixels, and on how far it agrees with the Gaussian adaptive threshold of
+ * {@code EnhancementPipeline.BINARIZE}. Timings are the best of a few runs on the calling
+ * thread, see {@link ThresholdBenchmark} for proper ones.
+ */
+public final class ThresholdQuality {
+
+    private static final int RUNS = 5;
+
+    private ThresholdQuality() {
+    }
+
+    public static void main(String[] args) {
+        OpenCvLoader.load();
+        String label = args.length > 0 ? args[0] : "12MP";
+        Size size = SyntheticDocument.sizeOf(label);
+
+        Mat truth = new Mat();
+        Mat photo = createPhoto(size, truth);
+        Mat gaussian = new Mat();
+        long gaussianNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            Imgproc.adaptiveThreshold(photo, gaussian, 255.0, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                    Imgproc.THRESH_BINARY, 31, 7.0);
+            gaussianNanos = Math.min(gaussianNanos, System.nanoTime() - start);
+        }
+
+        System.out.println("Page " + label + ", text pixels " + Core.countNonZero(truth));
+        System.out.println("method              F-measure  errors   agreement  time");
+        report("gaussian 31 / 7.0", gaussian, truth, gaussian, gaussianNanos);
+        for (IntegralThreshold threshold : new IntegralThreshold[]{
+                IntegralThreshold.bradley(),
+                IntegralThreshold.sauvola(),
+                new IntegralThreshold(IntegralThreshold.Method.BRADLEY, 101, IntegralThreshold.DEFAULT_BRADLEY_T),
+                new IntegralThreshold(IntegralThreshold.Method.SAUVOLA, 101, IntegralThreshold.DEFAULT_SAUVOLA_K)}) {
+            Mat result = new Mat();
+            long nanos = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                threshold.threshold(photo, result);
+                nanos = Math.min(nanos, System.nanoTime() - start);
+            }
+            String name = threshold.getMethod().name().toLowerCase(Locale.ROOT) + " " + threshold.getWindowSize()
+                    + " / " + threshold.getStrength();
+            report(name, result, truth, gaussian, nanos);
+            result.release();
+        }
+        gaussian.release();
+        photo.release();
+        truth.release();
+    }
+
+    /**
+     * Gray photo of a text page, {@code truth} receives 255 where there is ink.
+     */
+    static Mat createPhoto(Size size, Mat truth) {
+        truth.create(size, CvType.CV_8UC1);
+        truth.setTo(new Scalar(0));
+        double lineHeight = size.height / 60;
+        double scale = lineHeight / 40;
+        int thickness = Math.max(1, (int) Math.round(scale * 2));
+        for (double y = lineHeight * 3; y < size.height - lineHeight * 2; y += lineHeight * 1.5) {
+            Imgproc.putText(truth, "Lorem ipsum dolor sit amet, consectetur adipiscing elit 0123456789",
+                    new Point(size.width * 0.05, y), Imgproc.FONT_HERSHEY_SIMPLEX, scale,
+                    new Scalar(255), thickness);
+        }
+
+        // Paper at 225, ink at 45, in a light falling from 100% to 45% across the page.
+        Mat photo = new Mat(size, CvType.CV_8UC1, new Scalar(225));
+        photo.setTo(new Scalar(45), truth);
+        Mat light = new Mat(size, CvType.CV_32FC1);
+        float[] row = new float[(int) size.width];
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < row.length; x++) {
+                double across = (double) x / row.length;
+                double corner = Math.hypot(x - row.length, y - size.height) / Math.hypot(row.length, size.height);
+                row[x] = (float) ((1 - 0.55 * across * across) * (0.8 + 0.2 * Math.min(1, corner * 2)));
+            }
+            light.put(y, 0, row);
+        }
+        Mat lit = new Mat();
+        photo.convertTo(lit, CvType.CV_32FC1);
+        Core.multiply(lit, light, lit);
+        Imgproc.GaussianBlur(lit, lit, new Size(0, 0), Math.max(0.5, scale * 0.6));
+        Core.setRNGSeed(42);
+        Mat noise = new Mat(size, CvType.CV_32FC1);
+        Core.randn(noise, 0, 4);
+        Core.add(lit, noise, lit);
+        lit.convertTo(photo, CvType.CV_8UC1);
+        noise.release();
+        lit.release();
+        light.release();
+        return photo;
+    }
+
+    private static void report(String name, Mat result, Mat truth, Mat gaussian, long nanos) {
+        Mat found = new Mat();
+        Core.compare(result, new Scalar(0), found, Core.CMP_EQ);
+        Mat both = new Mat();
+        Core.bitwise_and(found, truth, both);
+        double truePositives = Core.countNonZero(both);
+        double precision = truePositives / Math.max(1, Core.countNonZero(found));
+        double recall = truePositives / Math.max(1, Core.countNonZero(truth));
+        double fMeasure = 2 * precision * recall / Math.max(1e-9, precision + recall);
+
+        Mat wrong = new Mat();
+        Core.compare(found, truth, wrong, Core.CMP_NE);
+        double errors = (double) Core.countNonZero(wrong) / truth.total();
+        Mat different = new Mat();
+        Core.compare(result, gaussian, different, Core.CMP_NE);
+        double agreement = 1 - (double) Core.countNonZero(different) / truth.total();
+
+        System.out.println(String.format(Locale.ROOT, "%-19s %.4f     %.3f%%   %.2f%%     %d ms",
+                name, fMeasure, errors * 100, agreement * 100, nanos / 1_000_000));
+        found.release();
+        both.release();
+        wrong.release();
+        different.release();
+    }
+}
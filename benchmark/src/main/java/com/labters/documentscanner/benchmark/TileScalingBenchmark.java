@@ -0,0 +1,91 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.PerspectiveTransformation;
+import com.labters.documentscanner.libraries.TiledThreshold;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of the parallel tiled warp and threshold from 1 to N fork-join threads.
+ * <p>
+ * OpenCV's own threading is disabled so the numbers only show the tile parallelism. Pass
+ * {@code -p threads=1,2,4,8,16} to match the cores of the machine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TileScalingBenchmark {
+
+    @Param({"12MP", "48MP"})
+    public String size;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private Mat document;
+    private MatOfPoint2f corners;
+    private Mat gray;
+    private Mat result;
+    private ForkJoinPool pool;
+    private PerspectiveTransformation transformation;
+    private final WarpBenchmark.CountingSink sink = new WarpBenchmark.CountingSink();
+
+    @Setup
+    public void setUp() {
+        OpenCvLoader.load();
+        Core.setNumThreads(1);
+        document = SyntheticDocument.create(SyntheticDocument.sizeOf(size));
+        corners = SyntheticDocument.cornerMat(document.size());
+        gray = SyntheticDocument.createGrayPage(document.size());
+        result = new Mat();
+        pool = new ForkJoinPool(threads);
+        transformation = new PerspectiveTransformation();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        document.release();
+        corners.release();
+        gray.release();
+        result.release();
+    }
+
+    @Benchmark
+    public long transformTiled() {
+        sink.pixels = 0;
+        transformation.transformTiled(document, corners,
+                PerspectiveTransformation.DEFAULT_TILE_SIZE, PerspectiveTransformation.DEFAULT_TILE_SIZE, sink, pool);
+        return sink.pixels;
+    }
+
+    @Benchmark
+    public int adaptiveThresholdTiled() {
+        TiledThreshold.adaptiveThreshold(gray, result, 255.0,
+                Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                Imgproc.THRESH_BINARY, 31, 7.0,
+                TiledThreshold.DEFAULT_TILE_SIZE, pool);
+        return result.rows();
+    }
+}
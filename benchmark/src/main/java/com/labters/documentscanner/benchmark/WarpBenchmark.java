@@ -0,0 +1,80 @@
+package com.labters.documentscanner.benchmark;
+
+import com.labters.documentscanner.libraries.PerspectiveTransformation;
+import com.labters.documentscanner.libraries.TileSink;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-image against tiled {@link PerspectiveTransformation} warps.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WarpBenchmark {
+
+    @Param({"1MP", "12MP", "48MP"})
+    public String size;
+
+    private Mat document;
+    private MatOfPoint2f corners;
+    private PerspectiveTransformation transformation;
+    private final CountingSink sink = new CountingSink();
+
+    @Setup
+    public void setUp() {
+        OpenCvLoader.load();
+        document = SyntheticDocument.create(SyntheticDocument.sizeOf(size));
+        corners = SyntheticDocument.cornerMat(document.size());
+        transformation = new PerspectiveTransformation();
+    }
+
+    @TearDown
+    public void tearDown() {
+        document.release();
+        corners.release();
+    }
+
+    @Benchmark
+    public int transform() {
+        Mat result = transformation.transform(document, corners);
+        int rows = result.rows();
+        result.release();
+        return rows;
+    }
+
+    @Benchmark
+    public long transformTiled() {
+        sink.pixels = 0;
+        transformation.transformTiled(document, corners,
+                PerspectiveTransformation.DEFAULT_TILE_SIZE, PerspectiveTransformation.DEFAULT_TILE_SIZE, sink);
+        return sink.pixels;
+    }
+
+    static class CountingSink implements TileSink {
+        long pixels;
+
+        @Override
+        public void onTile(Mat tile, int x, int y) {
+            pixels += tile.total();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.labters.documentscanner.helpers;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Properties of {@link Quad#sortCorners()} over many random quads, the corner numbering of
+ * {@code PolygonView}, and the rest of the geometry on shapes with known answers.
+ */
+public class QuadTest {
+
+    private static final int RUNS = 10_000;
+    private static final int[][] PERMUTATIONS = permutations();
+
+    @Test
+    public void orderDoesNotDependOnInputOrder() {
+        Random random = new Random(1);
+        double[] expected = new double[8];
+        double[] actual = new double[8];
+        for (int run = 0; run < RUNS; run++) {
+            double[] points = new double[8];
+            for (int i = 0; i < 8; i++) {
+                points[i] = random.nextDouble() * 1000;
+            }
+            new Quad(points).sortCorners().getCoordinates(expected);
+            for (int[] permutation : PERMUTATIONS) {
+                permute(points, permutation).sortCorners().getCoordinates(actual);
+                assertArrayEquals(expected, actual, 0);
+            }
+        }
+    }
+
+    @Test
+    public void convexQuadStaysConvex() {
+        Random random = new Random(2);
+        for (int run = 0; run < RUNS; run++) {
+            // One point in each quarter of an ellipse, so the quad is convex in this order.
+            double start = random.nextDouble() * 2 * Math.PI;
+            double radiusX = 10 + random.nextDouble() * 1000;
+            double radiusY = 10 + random.nextDouble() * 1000;
+            double[] points = new double[8];
+            for (int i = 0; i < 4; i++) {
+                double angle = start + (i + 0.05 + random.nextDouble() * 0.9) * Math.PI / 2;
+                points[i * 2] = 500 + radiusX * Math.cos(angle);
+                points[i * 2 + 1] = 500 + radiusY * Math.sin(angle);
+            }
+            Quad quad = new Quad(points);
+            assertTrue(quad.isConvex());
+            for (int[] permutation : PERMUTATIONS) {
+                assertTrue(quad.toString(), permute(points, permutation).sortCorners().isConvex());
+            }
+        }
+    }
+
+    @Test
+    public void topLeftStaysFirstBelow45Degrees() {
+        Random random = new Random(3);
+        for (int run = 0; run < RUNS; run++) {
+            double width = 10 + random.nextDouble() * 1000;
+            double height = width * (0.2 + random.nextDouble() * 4.8);
+            double degrees = (random.nextDouble() * 2 - 1) * 44.9;
+            Quad upright = new Quad(0, 0, width, 0, width, height, 0, height);
+            double[] expected = rotate(upright, Math.toRadians(degrees), random.nextDouble() * 500);
+            double[] actual = new double[8];
+            for (int[] permutation : PERMUTATIONS) {
+                permute(expected, permutation).sortCorners().getCoordinates(actual);
+                assertArrayEquals("Rotated by " + degrees, expected, actual, 0);
+            }
+        }
+    }
+
+    @Test
+    public void polygonViewNumbersCornersRowByRow() {
+        assertEquals(Quad.TOP_LEFT, Quad.polygonViewCorner(0));
+        assertEquals(Quad.TOP_RIGHT, Quad.polygonViewCorner(1));
+        assertEquals(Quad.BOTTOM_LEFT, Quad.polygonViewCorner(2));
+        assertEquals(Quad.BOTTOM_RIGHT, Quad.polygonViewCorner(3));
+
+        Quad quad = new Quad(90, 95, 12, 8, 10, 90, 100, 10).sortCorners();
+        double[][] expected = {{12, 8}, {100, 10}, {10, 90}, {90, 95}};
+        for (int index = 0; index < 4; index++) {
+            int corner = Quad.polygonViewCorner(index);
+            assertEquals(expected[index][0], quad.getX(corner), 0);
+            assertEquals(expected[index][1], quad.getY(corner), 0);
+        }
+    }
+
+    @Test
+    public void areaDoesNotDependOnDirection() {
+        assertEquals(12, new Quad(0, 0, 4, 0, 4, 3, 0, 3).getArea(), 0);
+        assertEquals(12, new Quad(0, 0, 0, 3, 4, 3, 4, 0).getArea(), 0);
+        // A kite with diagonals of 6 and 4.
+        assertEquals(12, new Quad(3, 0, 5, 2, 3, 6, 1, 2).getArea(), 0);
+        // A bow tie, whose two halves cancel out.
+        assertEquals(0, new Quad(0, 0, 2, 2, 2, 0, 0, 2).getArea(), 0);
+        assertEquals(0, new Quad(1, 1, 1, 1, 1, 1, 1, 1).getArea(), 0);
+    }
+
+    @Test
+    public void convexityOfKnownShapes() {
+        assertTrue(new Quad(0, 0, 4, 0, 4, 3, 0, 3).isConvex());
+        assertTrue(new Quad(0, 0, 0, 3, 4, 3, 4, 0).isConvex());
+        // An arrowhead with its fourth corner pushed inside.
+        assertFalse(new Quad(0, 0, 4, 2, 0, 4, 1, 2).isConvex());
+        assertFalse(new Quad(0, 0, 2, 2, 2, 0, 0, 2).isConvex());
+        // Three corners on one line.
+        assertFalse(new Quad(0, 0, 2, 0, 4, 0, 2, 3).isConvex());
+        assertFalse(new Quad(1, 1, 1, 1, 1, 1, 1, 1).isConvex());
+    }
+
+    @Test
+    public void cosineMatchesMathUtilsAngle() {
+        Quad square = new Quad(0, 0, 4, 0, 4, 4, 0, 4);
+        for (int corner = 0; corner < 4; corner++) {
+            assertEquals(0, square.getCosine(corner), 1e-12);
+        }
+        Quad trapezoid = new Quad(0, 0, 4, 0, 8, 4, 0, 4);
+        assertEquals(-Math.sqrt(0.5), trapezoid.getCosine(1), 1e-12);
+        assertEquals(Math.sqrt(0.5), trapezoid.getCosine(2), 1e-12);
+
+        Random random = new Random(4);
+        for (int run = 0; run < RUNS; run++) {
+            Quad quad = new Quad();
+            for (int i = 0; i < 4; i++) {
+                quad.set(i, random.nextDouble() * 1000, random.nextDouble() * 1000);
+            }
+            Point[] points = quad.toPoints();
+            for (int corner = 0; corner < 4; corner++) {
+                double expected = MathUtils.angle(points[(corner + 3) & 3], points[(corner + 1) & 3], points[corner]);
+                assertEquals(quad.toString(), expected, quad.getCosine(corner), 0);
+            }
+        }
+    }
+
+    @Test
+    public void scaleAndTranslateMoveEveryCorner() {
+        Quad quad = new Quad(1, 2, 5, 2, 5, 4, 1, 4);
+        assertSame(quad, quad.scale(2.5));
+        assertSame(quad, quad.translate(-3, 10));
+        double[] actual = new double[8];
+        quad.getCoordinates(actual);
+        assertArrayEquals(new double[]{-0.5, 15, 9.5, 15, 9.5, 20, -0.5, 20}, actual, 0);
+        assertEquals(8 * 2.5 * 2.5, quad.getArea(), 1e-12);
+        assertEquals(4.5, quad.getCenterX(), 0);
+        assertEquals(17.5, quad.getCenterY(), 0);
+    }
+
+    @Test
+    public void fromPointsKeepsOrder() {
+        Point[] points = {new Point(1, 2), new Point(3, 4), new Point(5, 6), new Point(7, 8)};
+        Quad quad = Quad.fromPoints(points);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(points[i], quad.getPoint(i));
+        }
+        assertArrayEquals(points, quad.toPoints());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromPointsRejectsThreeCorners() {
+        Quad.fromPoints(new Point[]{new Point(0, 0), new Point(1, 0), new Point(1, 1)});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRejectsMissingCoordinate() {
+        new Quad().set(0, 0, 1, 0, 1, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRejectsExtraFloatCoordinate() {
+        new Quad().set(new float[9]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorRejectsMissingCoordinates() {
+        new Quad(0, 0);
+    }
+
+    private static double[] rotate(Quad quad, double radians, double offset) {
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        double[] rotated = new double[8];
+        for (int i = 0; i < 4; i++) {
+            rotated[i * 2] = offset + quad.getX(i) * cos - quad.getY(i) * sin;
+            rotated[i * 2 + 1] = offset + quad.getX(i) * sin + quad.getY(i) * cos;
+        }
+        return rotated;
+    }
+
+    private static Quad permute(double[] points, int[] permutation) {
+        Quad quad = new Quad();
+        for (int i = 0; i < 4; i++) {
+            quad.set(i, points[permutation[i] * 2], points[permutation[i] * 2 + 1]);
+        }
+        return quad;
+    }
+
+    private static int[][] permutations() {
+        int[][] permutations = new int[24][];
+        int count = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 4; b++) {
+                for (int c = 0; c < 4; c++) {
+                    int d = 6 - a - b - c;
+                    if (a != b && a != c && b != c && d != a && d != b && d != c) {
+                        permutations[count++] = new int[]{a, b, c, d};
+                    }
+                }
+            }
+        }
+        return permutations;
+    }
+}
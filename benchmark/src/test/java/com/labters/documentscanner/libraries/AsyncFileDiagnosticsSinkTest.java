@@ -0,0 +1,74 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link AsyncFileDiagnosticsSink} writing images on its thread, and ignoring them once closed.
+ */
+public class AsyncFileDiagnosticsSinkTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void writesCopyOfImage() throws InterruptedException {
+        File directory = new File(folder.getRoot(), "diagnostics");
+        AsyncFileDiagnosticsSink sink = new AsyncFileDiagnosticsSink(directory);
+        Mat image = new Mat(20, 30, CvType.CV_8UC1, new Scalar(90));
+        sink.onImage("edges.png", image);
+        // The sink owns a copy, the caller may reuse its Mat right away.
+        image.setTo(new Scalar(0));
+
+        // Read until the writer has finished the file.
+        String path = new File(directory, "edges.png").getPath();
+        Mat written = new Mat();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (written.empty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            written = Imgcodecs.imread(path, Imgcodecs.IMREAD_GRAYSCALE);
+        }
+        sink.close();
+        assertEquals(20, written.rows());
+        assertEquals(30, written.cols());
+        assertEquals(90, written.get(19, 29)[0], 0);
+        assertEquals(0, sink.getDroppedCount());
+        written.release();
+        image.release();
+    }
+
+    @Test
+    public void ignoresImagesAfterClose() throws InterruptedException {
+        File directory = folder.getRoot();
+        AsyncFileDiagnosticsSink sink = new AsyncFileDiagnosticsSink(directory);
+        assertTrue(sink.isEnabled());
+        sink.close();
+        assertFalse(sink.isEnabled());
+
+        Mat image = new Mat(4, 4, CvType.CV_8UC1, new Scalar(1));
+        sink.onImage("late.png", image);
+        Thread.sleep(100);
+        assertFalse(new File(directory, "late.png").exists());
+        assertEquals(0, sink.getDroppedCount());
+        image.release();
+    }
+}
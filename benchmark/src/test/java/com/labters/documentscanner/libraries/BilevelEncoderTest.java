@@ -0,0 +1,122 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * {@link BilevelEncoder} output read back by ImageIO for PNG and by {@link G4Decoder} for the
+ * TIFF strip.
+ */
+public class BilevelEncoderTest {
+
+    private static final int[][] SIZES = {{1, 1}, {7, 3}, {100, 65}, {333, 200}, {1001, 700}};
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void pngDecodesToSamePixels() throws IOException {
+        Random random = new Random(1);
+        for (int[] size : SIZES) {
+            BilevelImage image = image(size[0], size[1], random);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BilevelEncoder.writePng(image, out);
+
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            assertNotNull(decoded);
+            assertEquals(image.getWidth(), decoded.getWidth());
+            assertEquals(image.getHeight(), decoded.getHeight());
+            assertEquals(1, decoded.getColorModel().getPixelSize());
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int expected = image.isBlack(x, y) ? 0xff000000 : 0xffffffff;
+                    assertEquals(size[0] + "x" + size[1] + " at " + x + ", " + y, expected, decoded.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tiffStripDecodesToSameRows() throws IOException {
+        Random random = new Random(2);
+        for (int[] size : SIZES) {
+            BilevelImage image = image(size[0], size[1], random);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BilevelEncoder.writeTiff(image, out);
+            ByteBuffer tiff = ByteBuffer.wrap(out.toByteArray());
+
+            assertEquals('M', tiff.get(0));
+            assertEquals('M', tiff.get(1));
+            assertEquals(42, tiff.getShort(2));
+            Map<Integer, Integer> tags = tags(tiff, tiff.getInt(4));
+            assertEquals(image.getWidth(), (int) tags.get(256));
+            assertEquals(image.getHeight(), (int) tags.get(257));
+            assertEquals(1, (int) tags.get(258));
+            assertEquals(4, (int) tags.get(259));
+            assertEquals(0, (int) tags.get(262));
+            assertEquals(image.getHeight(), (int) tags.get(278));
+
+            int offset = tags.get(273);
+            int length = tags.get(279);
+            assertEquals(tiff.capacity(), offset + length);
+            byte[] strip = new byte[length];
+            System.arraycopy(tiff.array(), offset, strip, 0, length);
+            assertArrayEquals(size[0] + "x" + size[1], image.getData(),
+                    G4Decoder.decode(strip, image.getWidth(), image.getHeight()));
+        }
+    }
+
+    /**
+     * Tags of the image file directory at {@code offset} with their single values.
+     */
+    private static Map<Integer, Integer> tags(ByteBuffer tiff, int offset) {
+        Map<Integer, Integer> tags = new HashMap<>();
+        int count = tiff.getShort(offset);
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            int tag = tiff.getShort(entry) & 0xffff;
+            int type = tiff.getShort(entry + 2);
+            assertEquals(1, tiff.getInt(entry + 4));
+            tags.put(tag, type == 3 ? tiff.getShort(entry + 8) & 0xffff : tiff.getInt(entry + 8));
+        }
+        assertEquals("only one directory", 0, tiff.getInt(offset + 2 + count * 12));
+        return tags;
+    }
+
+    /**
+     * Noise with blocks of text-like stripes, large enough in the last size for several IDAT
+     * chunks.
+     */
+    private static BilevelImage image(int width, int height, Random random) {
+        byte[] gray = BilevelImageTest.gray(width, height, random);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((x / 40 + y / 30) % 3 == 0) {
+                    gray[y * width + x] = (byte) ((y / 3) % 2 == 0 ? 255 : 0);
+                }
+            }
+        }
+        Mat mat = BilevelImageTest.toMat(gray, width, height);
+        BilevelImage image = BilevelImage.fromMat(mat);
+        mat.release();
+        return image;
+    }
+}
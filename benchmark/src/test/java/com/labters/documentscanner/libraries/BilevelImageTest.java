@@ -0,0 +1,163 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Packing and unpacking of {@link BilevelImage} on widths that do not fill the last byte,
+ * heights over one band of {@code fromMat} and {@code toMat}, and submats.
+ */
+public class BilevelImageTest {
+
+    private static final int[] WIDTHS = {1, 7, 8, 9, 15, 63, 64, 65, 200, 333};
+    private static final int[] HEIGHTS = {1, 63, 64, 65, 150};
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void fromMatPacksPixelsBelowHalfAsBlack() {
+        Random random = new Random(1);
+        for (int width : WIDTHS) {
+            for (int height : HEIGHTS) {
+                byte[] gray = gray(width, height, random);
+                Mat mat = toMat(gray, width, height);
+                BilevelImage image = BilevelImage.fromMat(mat);
+                mat.release();
+
+                assertEquals((width + 7) / 8, image.getStride());
+                assertEquals(image.getStride() * height, image.getData().length);
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        assertEquals(width + "x" + height + " at " + x + ", " + y,
+                                (gray[y * width + x] & 0xff) < 128, image.isBlack(x, y));
+                    }
+                    int last = image.getData()[y * image.getStride() + image.getStride() - 1] & 0xff;
+                    assertEquals("padding bits of row " + y, 0, last & (0xff >> (width - (image.getStride() - 1) * 8)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void toMatRestoresThresholdedImage() {
+        Random random = new Random(2);
+        for (int width : WIDTHS) {
+            for (int height : HEIGHTS) {
+                byte[] gray = gray(width, height, random);
+                byte[] expected = new byte[gray.length];
+                for (int i = 0; i < gray.length; i++) {
+                    expected[i] = (gray[i] & 0xff) < 128 ? 0 : (byte) 255;
+                }
+                Mat mat = toMat(gray, width, height);
+                Mat restored = BilevelImage.fromMat(mat).toMat();
+                byte[] actual = new byte[gray.length];
+                restored.get(0, 0, actual);
+                assertEquals(CvType.CV_8UC1, restored.type());
+                assertArrayEquals(width + "x" + height, expected, actual);
+                restored.release();
+                mat.release();
+            }
+        }
+    }
+
+    @Test
+    public void fromMatReadsSubmats() {
+        Random random = new Random(3);
+        int width = 301;
+        int height = 170;
+        Mat mat = toMat(gray(width, height, random), width, height);
+        int[][] regions = {{0, 0, 37, 70}, {5, 3, 101, 130}, {13, 11, 288, 159}, {300, 169, 1, 1}};
+        for (int[] region : regions) {
+            Mat submat = mat.submat(region[1], region[1] + region[3], region[0], region[0] + region[2]);
+            Mat copy = submat.clone();
+            BilevelImage fromSubmat = BilevelImage.fromMat(submat);
+            BilevelImage fromCopy = BilevelImage.fromMat(copy);
+            assertEquals(region[2], fromSubmat.getWidth());
+            assertEquals(region[3], fromSubmat.getHeight());
+            assertArrayEquals(fromCopy.getData(), fromSubmat.getData());
+            copy.release();
+            submat.release();
+        }
+        mat.release();
+    }
+
+    @Test
+    public void rowsRoundTripAtAnyOffset() {
+        Random random = new Random(4);
+        for (int width : WIDTHS) {
+            BilevelImage image = new BilevelImage(width, 3);
+            int offset = 1 + random.nextInt(9);
+            byte[] gray = new byte[offset + width];
+            for (int i = offset; i < gray.length; i++) {
+                gray[i] = (byte) (random.nextBoolean() ? random.nextInt(128) : 128 + random.nextInt(128));
+            }
+            image.packRow(1, gray, offset);
+
+            byte[] unpacked = new byte[offset + width + 1];
+            unpacked[unpacked.length - 1] = 42;
+            image.unpackRow(1, unpacked, offset);
+            for (int x = 0; x < width; x++) {
+                boolean black = (gray[offset + x] & 0xff) < 128;
+                assertEquals("width " + width + " at " + x, black, image.isBlack(x, 1));
+                assertEquals("width " + width + " at " + x, black ? 0 : (byte) 255, unpacked[offset + x]);
+            }
+            assertEquals("byte before the row", 0, unpacked[offset - 1]);
+            assertEquals("byte after the row", 42, unpacked[unpacked.length - 1]);
+            for (int x = 0; x < width; x++) {
+                assertEquals("row above", false, image.isBlack(x, 0));
+                assertEquals("row below", false, image.isBlack(x, 2));
+            }
+        }
+    }
+
+    @Test
+    public void setBlackChangesOnePixel() {
+        BilevelImage image = new BilevelImage(13, 2);
+        image.setBlack(9, 1, true);
+        assertArrayEquals(new byte[]{0, 0, 0, 0x40}, image.getData());
+        image.setBlack(9, 1, false);
+        assertArrayEquals(new byte[4], image.getData());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsColorMat() {
+        Mat color = new Mat(4, 4, CvType.CV_8UC3);
+        try {
+            BilevelImage.fromMat(color);
+        } finally {
+            color.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptySize() {
+        new BilevelImage(0, 10);
+    }
+
+    /**
+     * Random gray values with runs of black and white and values on both sides of 128.
+     */
+    static byte[] gray(int width, int height, Random random) {
+        byte[] gray = new byte[width * height];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = (byte) (random.nextInt(4) == 0 ? 127 + random.nextInt(2) : random.nextInt(256));
+        }
+        return gray;
+    }
+
+    static Mat toMat(byte[] gray, int width, int height) {
+        Mat mat = new Mat(height, width, CvType.CV_8UC1);
+        mat.put(0, 0, gray);
+        return mat;
+    }
+}
@@ -0,0 +1,194 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link CcittG4Encoder} output against libtiff and through {@link G4Decoder}.
+ */
+public class CcittG4EncoderTest {
+
+    /**
+     * Images from {@link #runs} or {@link #shapes} compressed by libtiff (TIFFTAG_COMPRESSION 4,
+     * white is zero): width, height, generator, parameter, seed, compressed length and CRC32,
+     * CRC32 of the image.
+     */
+    private static final Object[][] LIBTIFF = {
+            {1, 4, "runs", 3, 1, 4, 0xbb57b3e8L, 0x2144df1cL},
+            {8, 8, "runs", 4, 2, 9, 0x25693124L, 0x1f2dc5c0L},
+            {37, 9, "runs", 5, 3, 71, 0x854d3d71L, 0x9cff186dL},
+            {200, 50, "shapes", 20, 4, 208, 0x67e99bf4L, 0x994bd341L},
+            {1728, 40, "runs", 1728, 5, 273, 0x38a53f53L, 0xedb364e7L},
+            {2481, 64, "shapes", 30, 6, 587, 0x90fb2fedL, 0x7e57d02cL},
+            {9000, 6, "runs", 9000, 8, 54, 0xd7dc2c3eL, 0xdf59e1beL},
+            {333, 100, "runs", 2, 9, 2903, 0x4b8f3b17L, 0xe404073bL},
+            {4961, 20, "shapes", 40, 10, 366, 0x60fdcb49L, 0x78e4cc50L}};
+
+    @Test
+    public void matchesLibtiff() throws IOException {
+        for (Object[] vector : LIBTIFF) {
+            int width = (Integer) vector[0];
+            int height = (Integer) vector[1];
+            int parameter = (Integer) vector[3];
+            int seed = (Integer) vector[4];
+            byte[] image = vector[2].equals("runs")
+                    ? runs(width, height, parameter, seed)
+                    : shapes(width, height, parameter, seed);
+            String name = width + " x " + height + " " + vector[2];
+            assertEquals(name + " image", vector[7], crc(image));
+
+            byte[] encoded = encode(image, width, height, (width + 7) / 8);
+            assertEquals(name + " length", vector[5], encoded.length);
+            assertEquals(name + " data", vector[6], crc(encoded));
+        }
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        Random random = new Random(1);
+        for (int width = 1; width <= 80; width++) {
+            for (int run = 0; run < 5; run++) {
+                int height = 1 + random.nextInt(12);
+                byte[] image = run % 2 == 0
+                        ? runs(width, height, 1 + random.nextInt(width + 3), random.nextInt())
+                        : shapes(width, height, 1 + random.nextInt(8), random.nextInt());
+                byte[] encoded = encode(image, width, height, (width + 7) / 8);
+                assertArrayEquals(width + " x " + height, image, G4Decoder.decode(encoded, width, height));
+            }
+        }
+        int[] wide = {1727, 1728, 1729, 2559, 2560, 2561, 4961};
+        for (int width : wide) {
+            byte[] image = shapes(width, 30, 25, width);
+            assertArrayEquals("width " + width, image,
+                    G4Decoder.decode(encode(image, width, 30, (width + 7) / 8), width, 30));
+        }
+    }
+
+    @Test
+    public void uniformPagesRoundTrip() throws IOException {
+        for (int width : new int[]{1, 7, 8, 9, 2481}) {
+            int stride = (width + 7) / 8;
+            byte[] white = new byte[stride * 3];
+            assertArrayEquals(white, G4Decoder.decode(encode(white, width, 3, stride), width, 3));
+            byte[] black = new byte[stride * 3];
+            for (int y = 0; y < 3; y++) {
+                for (int x = 0; x < width; x++) {
+                    black[y * stride + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+            assertArrayEquals(black, G4Decoder.decode(encode(black, width, 3, stride), width, 3));
+        }
+    }
+
+    @Test
+    public void ignoresStridePaddingAndTrailingBits() throws IOException {
+        int width = 37;
+        int height = 9;
+        int packed = (width + 7) / 8;
+        byte[] image = runs(width, height, 5, 3);
+        // Set every bit past the row end, which must not reach the output.
+        int stride = packed + 3;
+        byte[] padded = new byte[stride * height];
+        for (int i = 0; i < padded.length; i++) {
+            padded[i] = (byte) 0xFF;
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(image, y * packed, padded, y * stride, packed);
+            padded[y * stride + packed - 1] |= (byte) (0xFF >> (width & 7));
+        }
+        assertArrayEquals(encode(image, width, height, packed), encode(padded, width, height, stride));
+    }
+
+    @Test
+    public void encodesRowByRowLikeWholeImage() throws IOException {
+        int width = 200;
+        int height = 50;
+        byte[] image = shapes(width, height, 20, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CcittG4Encoder encoder = new CcittG4Encoder(out, width);
+        for (int y = 0; y < height; y++) {
+            encoder.encodeRow(image, y * ((width + 7) / 8));
+        }
+        encoder.finish();
+        assertArrayEquals(encode(image, width, height, (width + 7) / 8), out.toByteArray());
+    }
+
+    static byte[] encode(byte[] image, int width, int height, int stride) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CcittG4Encoder.encode(image, width, height, stride, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rows of alternating runs starting white, each 1 to {@code maxRun} pixels long.
+     */
+    static byte[] runs(int width, int height, int maxRun, int seed) {
+        Lcg random = new Lcg(seed);
+        int stride = (width + 7) / 8;
+        byte[] image = new byte[stride * height];
+        for (int y = 0; y < height; y++) {
+            boolean black = false;
+            int x = 0;
+            while (x < width) {
+                int end = Math.min(width, x + 1 + random.next(maxRun));
+                for (; x < end; x++) {
+                    if (black) {
+                        image[y * stride + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                    }
+                }
+                black = !black;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * {@code count} random rectangles, each inverting the pixels it covers.
+     */
+    static byte[] shapes(int width, int height, int count, int seed) {
+        Lcg random = new Lcg(seed);
+        int stride = (width + 7) / 8;
+        byte[] image = new byte[stride * height];
+        for (int i = 0; i < count; i++) {
+            int x0 = random.next(width);
+            int y0 = random.next(height);
+            int x1 = x0 + 1 + random.next(width - x0);
+            int y1 = y0 + 1 + random.next(height - y0);
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    image[y * stride + (x >> 3)] ^= (byte) (0x80 >> (x & 7));
+                }
+            }
+        }
+        return image;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    /**
+     * The generator the libtiff vectors were made with, so the images can be rebuilt here.
+     */
+    private static final class Lcg {
+        private long state;
+
+        Lcg(int seed) {
+            state = seed & 0x7fffffffL;
+        }
+
+        int next(int bound) {
+            state = (state * 1103515245L + 12345L) & 0x7fffffffL;
+            return (int) (state % bound);
+        }
+    }
+}
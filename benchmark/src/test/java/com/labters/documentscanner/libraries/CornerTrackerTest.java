@@ -0,0 +1,142 @@
+package com.labters.documentscanner.libraries;
+
+import com.labters.documentscanner.helpers.MathUtils;
+import com.labters.documentscanner.helpers.Quad;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CornerTracker} on a page that turns by 20 degrees and moves away from the camera, so it
+ * ends well below the share of the frame a full detection accepts.
+ */
+public class CornerTrackerTest {
+
+    private static final Size FRAME = new Size(640, 480);
+    private static final int MOVING_FRAMES = 20;
+    private static final int STILL_FRAMES = 6;
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void followsMovingPage() {
+        CountingDetector detector = new CountingDetector();
+        CornerTracker tracker = new CornerTracker(detector, DetectionMode.VALUE_CHANNEL, 5);
+        Mat background = background();
+        Mat frame = new Mat();
+        for (int i = 0; i <= MOVING_FRAMES + STILL_FRAMES; i++) {
+            double t = Math.min(i, MOVING_FRAMES) / (double) MOVING_FRAMES;
+            Point[] truth = page(20 * t, 1 - 0.22 * t, 30 * t);
+            draw(background, truth, frame);
+
+            MatOfPoint2f found = tracker.update(frame);
+            assertNotNull("frame " + i, found);
+            double error = maxError(found, truth);
+            found.release();
+            // Smoothing lags a moving page by about one frame of motion, and detection itself
+            // lands a few pixels out since the dilated edges lie just outside the page.
+            double tolerance = i < MOVING_FRAMES + STILL_FRAMES / 2 ? 12 : 4;
+            assertTrue("frame " + i + " error " + error, error < tolerance);
+        }
+        assertEquals("full frame detections", 1, detector.fullFrameCalls);
+
+        frame.release();
+        background.release();
+        tracker.release();
+        detector.release();
+    }
+
+    @Test
+    public void regionSearchFindsRotatedPage() {
+        CountingDetector detector = new CountingDetector();
+        CornerTracker tracker = new CornerTracker(detector, DetectionMode.VALUE_CHANNEL, 0);
+        Mat background = background();
+        Mat frame = new Mat();
+
+        draw(background, page(0, 1, 0), frame);
+        tracker.update(frame).release();
+        // The page turns too far between frames for optical flow, and covers under a third of
+        // the region searched around it.
+        Point[] truth = page(20, 0.78, 0);
+        draw(background, truth, frame);
+        MatOfPoint2f found = tracker.update(frame);
+        assertNotNull(found);
+        found.release();
+        assertEquals("full frame detections", 1, detector.fullFrameCalls);
+
+        frame.release();
+        background.release();
+        tracker.release();
+        detector.release();
+    }
+
+    /**
+     * Corners of a 420 by 320 page centred in the frame, turned by {@code degrees}, scaled and
+     * moved right by {@code shift} pixels.
+     */
+    private static Point[] page(double degrees, double scale, double shift) {
+        double cos = Math.cos(Math.toRadians(degrees));
+        double sin = Math.sin(Math.toRadians(degrees));
+        double[][] offsets = {{-210, -160}, {210, -160}, {210, 160}, {-210, 160}};
+        Point[] corners = new Point[4];
+        for (int i = 0; i < 4; i++) {
+            double x = offsets[i][0] * scale;
+            double y = offsets[i][1] * scale;
+            corners[i] = new Point(FRAME.width / 2 + shift + x * cos - y * sin, FRAME.height / 2 + x * sin + y * cos);
+        }
+        return corners;
+    }
+
+    private static Mat background() {
+        Core.setRNGSeed(8);
+        Mat background = new Mat(FRAME, CvType.CV_8UC1);
+        Core.randn(background, 70, 12);
+        return background;
+    }
+
+    private static void draw(Mat background, Point[] corners, Mat frame) {
+        background.copyTo(frame);
+        MatOfPoint page = new MatOfPoint(corners);
+        Imgproc.fillConvexPoly(frame, page, new Scalar(220), Imgproc.LINE_AA);
+        page.release();
+    }
+
+    private static double maxError(MatOfPoint2f found, Point[] truth) {
+        Quad detected = MathUtils.toQuad(found).sortCorners();
+        Quad expected = Quad.fromPoints(truth).sortCorners();
+        double max = 0;
+        for (int i = 0; i < 4; i++) {
+            max = Math.max(max, Math.hypot(detected.getX(i) - expected.getX(i), detected.getY(i) - expected.getY(i)));
+        }
+        return max;
+    }
+
+    private static final class CountingDetector extends DocumentDetector {
+
+        int fullFrameCalls;
+
+        @Override
+        public MatOfPoint2f getLargestRectangle(Mat src, DetectionMode mode, double minArea) {
+            if (src.size().equals(FRAME)) {
+                fullFrameCalls++;
+            }
+            return super.getLargestRectangle(src, mode, minArea);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DetectionCache} keys, and its disk tier read back by a new instance as after a process
+ * restart.
+ */
+public class DetectionCacheTest {
+
+    private static final float[] CORNERS = {0.1f, 0.2f, 0.9f, 0.15f, 0.85f, 0.95f, 0.05f, 0.8f};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keyChangesWithAnyPixel() {
+        int width = 401;
+        int height = 299;
+        int[] pixels = new int[width * height];
+        Random random = new Random(3);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        String key = key(pixels, width, height, 1);
+        assertEquals(key, key(pixels, width, height, 1));
+        assertNotEquals(key, key(pixels, width, height, 6));
+
+        // Single pixels between the points a 32 by 32 sampling grid would read.
+        int[][] points = {{0, 0}, {6, 4}, {200, 150}, {207, 151}, {400, 298}};
+        for (int[] point : points) {
+            int index = point[1] * width + point[0];
+            int original = pixels[index];
+            pixels[index] = original ^ 1;
+            assertNotEquals("pixel " + point[0] + ", " + point[1], key, key(pixels, width, height, 1));
+            pixels[index] = original;
+        }
+        assertEquals(key, key(pixels, width, height, 1));
+    }
+
+    @Test
+    public void keyOfImageSmallerThanGrid() {
+        int[] pixels = {0xff102030, 0xff405060, 0xff708090};
+        assertEquals(key(pixels, 3, 1, 0), key(pixels.clone(), 3, 1, 0));
+        assertNotEquals(key(pixels, 3, 1, 0), key(pixels, 1, 3, 0));
+    }
+
+    @Test
+    public void entriesSurviveNewInstance() throws IOException {
+        File directory = folder.newFolder();
+        DetectionCache cache = new DetectionCache(4, directory, 8);
+        cache.put("found", new DetectionCache.Entry(CORNERS, 90, 2000));
+        cache.put("missing", new DetectionCache.Entry(null, 0, 1000));
+
+        DetectionCache restarted = new DetectionCache(4, directory, 8);
+        assertEquals(0, restarted.size());
+        DetectionCache.Entry found = restarted.get("found");
+        assertNotNull(found);
+        assertArrayEquals(CORNERS, found.getCorners(), 0);
+        assertEquals(90, found.getRotationDegrees());
+        assertEquals(2000, found.getWorkingSize());
+        DetectionCache.Entry missing = restarted.get("missing");
+        assertNotNull(missing);
+        assertNull(missing.getCorners());
+        assertEquals(1000, missing.getWorkingSize());
+        assertNull(restarted.get("other"));
+        assertEquals(2, restarted.size());
+
+        restarted.clear();
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void fileOfOtherVersionIsDeleted() throws IOException {
+        File directory = folder.newFolder();
+        new DetectionCache(4, directory, 8).put("key", new DetectionCache.Entry(CORNERS, 0, 2000));
+        File file = onlyFile(directory);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            int version = raw.readInt();
+            raw.seek(0);
+            raw.writeInt(version + 1);
+        }
+
+        assertNull(new DetectionCache(4, directory, 8).get("key"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void corruptedFileIsDeleted() throws IOException {
+        File directory = folder.newFolder();
+        new DetectionCache(4, directory, 8).put("key", new DetectionCache.Entry(CORNERS, 0, 2000));
+        File file = onlyFile(directory);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 3);
+        }
+
+        assertNull(new DetectionCache(4, directory, 8).get("key"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void pruningKeepsRecentlyUsedFiles() throws IOException {
+        File directory = folder.newFolder();
+        DetectionCache cache = new DetectionCache(4, directory, 3);
+        String[] keys = {"a", "b", "c"};
+        for (String key : keys) {
+            cache.put(key, new DetectionCache.Entry(CORNERS, 0, 2000));
+        }
+        assertEquals(3, directory.list().length);
+        // Written a, b, c seconds apart, then a is read from disk again.
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.length; i++) {
+            File file = fileOf(directory, keys[i]);
+            assertTrue(file.setLastModified(now - (keys.length - i) * 10000L));
+        }
+        DetectionCache restarted = new DetectionCache(4, directory, 3);
+        assertNotNull(restarted.get("a"));
+
+        restarted.put("d", new DetectionCache.Entry(CORNERS, 0, 2000));
+        assertEquals(3, directory.list().length);
+        DetectionCache reopened = new DetectionCache(4, directory, 3);
+        assertNotNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertNotNull(reopened.get("c"));
+        assertNotNull(reopened.get("d"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyDiskTier() {
+        new DetectionCache(4, null, 0);
+    }
+
+    private static String key(final int[] pixels, final int width, int height, int exifOrientation) {
+        return DetectionCache.keyOf(width, height, exifOrientation, new DetectionCache.PixelRows() {
+            @Override
+            public void read(int y, int[] row) {
+                System.arraycopy(pixels, y * width, row, 0, width);
+            }
+        });
+    }
+
+    private static File onlyFile(File directory) {
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static File fileOf(File directory, String key) {
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith(key + '.')) {
+                return file;
+            }
+        }
+        throw new AssertionError("No file for " + key);
+    }
+}
@@ -0,0 +1,226 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link EnhancementPipeline} with its two buffers and fused lookup tables against the plain
+ * result of running each stage on its own, on gray, RGB and RGBA pages.
+ */
+public class EnhancementPipelineTest {
+
+    private static final int[] CHANNELS = {1, 3, 4};
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        nu.pattern.OpenCV.loadLocally();
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void applyAndReleaseMatchesApply() {
+        for (EnhancementPipeline pipeline : pipelines()) {
+            for (int channels : CHANNELS) {
+                for (ForkJoinPool threads : new ForkJoinPool[]{null, pool}) {
+                    Mat src = page(channels);
+                    Mat original = src.clone();
+                    Mat kept = pipeline.apply(src, threads, null);
+                    assertEquals("input changed", 0, differences(original, src));
+                    Mat released = pipeline.applyAndRelease(src, threads, null);
+                    assertEquals(channels + " channels", 0, differences(kept, released));
+                    released.release();
+                    kept.release();
+                    original.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fusedPointStagesMatchStagesOneByOne() {
+        EnhancementPipeline fused = EnhancementPipeline.builder().stretchContrast(0.05).gamma(0.6).gamma(1.3).build();
+        EnhancementPipeline[] separate = {
+                EnhancementPipeline.builder().stretchContrast(0.05).build(),
+                EnhancementPipeline.builder().gamma(0.6).build(),
+                EnhancementPipeline.builder().gamma(1.3).build()};
+        for (int channels : CHANNELS) {
+            Mat src = page(channels);
+            Mat expected = src.clone();
+            for (EnhancementPipeline stage : separate) {
+                Mat next = stage.apply(expected);
+                expected.release();
+                expected = next;
+            }
+            Mat actual = fused.apply(src);
+            assertEquals(channels + " channels", 0, differences(expected, actual));
+            actual.release();
+            expected.release();
+            src.release();
+        }
+    }
+
+    @Test
+    public void colorStagesKeepAlpha() {
+        EnhancementPipeline[] pipelines = {
+                EnhancementPipeline.DOCUMENT,
+                EnhancementPipeline.builder().gamma(0.5).sharpen(2, 1).stretchContrast(0.1).build()};
+        for (EnhancementPipeline pipeline : pipelines) {
+            Mat src = page(4);
+            Mat result = pipeline.apply(src);
+            assertEquals(CvType.CV_8UC4, result.type());
+            Mat expected = new Mat();
+            Mat actual = new Mat();
+            Core.extractChannel(src, expected, 3);
+            Core.extractChannel(result, actual, 3);
+            assertEquals(0, differences(expected, actual));
+            actual.release();
+            expected.release();
+            result.release();
+            src.release();
+        }
+    }
+
+    @Test
+    public void binarizesColorPagesLikeTheirGray() {
+        for (int channels : CHANNELS) {
+            Mat src = page(channels);
+            Mat gray = new Mat();
+            if (channels == 1) {
+                src.copyTo(gray);
+            } else {
+                Imgproc.cvtColor(src, gray, channels == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+            }
+            Mat expected = new Mat();
+            Imgproc.adaptiveThreshold(gray, expected, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY,
+                    EnhancementPipeline.DEFAULT_BLOCK_SIZE, EnhancementPipeline.DEFAULT_C);
+            Mat actual = EnhancementPipeline.BINARIZE.apply(src, pool, null);
+            assertEquals(CvType.CV_8UC1, actual.type());
+            assertEquals(channels + " channels", 0, differences(expected, actual));
+            actual.release();
+            expected.release();
+            gray.release();
+            src.release();
+        }
+    }
+
+    @Test
+    public void knowsWhenItBinarizes() {
+        assertTrue(EnhancementPipeline.BINARIZE.isBinarizing());
+        assertTrue(EnhancementPipeline.builder().removeShadows().binarize(IntegralThreshold.bradley()).build().isBinarizing());
+        assertFalse(EnhancementPipeline.ORIGINAL.isBinarizing());
+        assertFalse(EnhancementPipeline.GRAYSCALE.isBinarizing());
+        assertFalse(EnhancementPipeline.DOCUMENT.isBinarizing());
+        assertFalse(EnhancementPipeline.builder().binarize().gamma(2).build().isBinarizing());
+    }
+
+    @Test
+    public void reportsFusedStagesOnce() {
+        EnhancementPipeline pipeline = EnhancementPipeline.builder()
+                .removeShadows()
+                .stretchContrast()
+                .gamma(0.8)
+                .sharpen()
+                .gamma(1.2)
+                .binarize()
+                .build();
+        final List<String> names = new ArrayList<>();
+        Mat src = page(4);
+        Mat result = pipeline.apply(src, null, new EnhancementPipeline.StageListener() {
+            @Override
+            public void onStage(String stage, long elapsedNanos) {
+                assertTrue(elapsedNanos >= 0);
+                names.add(stage);
+            }
+        });
+        assertEquals(Arrays.asList("shadows", "contrast+gamma", "sharpen", "gamma", "binarize"), names);
+        result.release();
+        src.release();
+    }
+
+    @Test
+    public void originalReturnsCopy() {
+        Mat src = page(3);
+        Mat result = EnhancementPipeline.ORIGINAL.apply(src);
+        assertTrue(result != src);
+        assertEquals(0, differences(src, result));
+        result.release();
+        src.release();
+    }
+
+    private static List<EnhancementPipeline> pipelines() {
+        return Arrays.asList(
+                EnhancementPipeline.ORIGINAL,
+                EnhancementPipeline.GRAYSCALE,
+                EnhancementPipeline.BINARIZE,
+                EnhancementPipeline.DOCUMENT,
+                EnhancementPipeline.builder().stretchContrast().gamma(0.7).build(),
+                EnhancementPipeline.builder().gamma(1.5).binarize().build(),
+                EnhancementPipeline.builder().removeShadows().binarize(IntegralThreshold.bradley()).build(),
+                EnhancementPipeline.builder().sharpen().grayscale().gamma(0.9).binarize(IntegralThreshold.sauvola()).build(),
+                EnhancementPipeline.builder().grayscale().removeShadows().stretchContrast().sharpen().build());
+    }
+
+    /**
+     * A shaded page of dark strokes on colored paper, with noise, and an alpha channel that
+     * varies so that any stage writing to it shows.
+     */
+    private static Mat page(int channels) {
+        int width = 237;
+        int height = 181;
+        Mat page = new Mat(height, width, CvType.CV_8UC(channels));
+        byte[] pixels = new byte[width * height * channels];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double shade = 0.6 + 0.4 * x / width;
+                for (int c = 0; c < channels; c++) {
+                    int value = c == 3 ? (x * 7 + y * 3) % 256 : (int) ((200 + 15 * c) * shade);
+                    pixels[(y * width + x) * channels + c] = (byte) value;
+                }
+            }
+        }
+        page.put(0, 0, pixels);
+        Scalar ink = channels == 4 ? new Scalar(30, 35, 50, 128) : new Scalar(30, 35, 50);
+        for (int y = 20; y < height - 20; y += 14) {
+            Imgproc.line(page, new Point(15, y), new Point(width - 30, y + 3), ink, 2);
+        }
+        Mat noise = new Mat(page.size(), page.type());
+        Core.setRNGSeed(channels);
+        Core.randn(noise, 0, 8);
+        Core.add(page, noise, page);
+        noise.release();
+        return page;
+    }
+
+    private static int differences(Mat expected, Mat actual) {
+        Mat difference = new Mat();
+        Core.absdiff(expected, actual, difference);
+        Mat channels = difference.reshape(1);
+        int count = Core.countNonZero(channels);
+        channels.release();
+        difference.release();
+        return count;
+    }
+}
@@ -0,0 +1,190 @@
+package com.labters.documentscanner.libraries;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Straightforward CCITT Group 4 (ITU-T T.6) decoder to check {@link CcittG4Encoder} output.
+ * It reads one bit at a time and looks codes up in hash maps, which is slow but simple to
+ * follow. Rows are returned packed like the encoder input, set bits for black.
+ */
+final class G4Decoder {
+
+    // Outside the -3 to 3 offsets of the vertical modes.
+    private static final int PASS = 10;
+    private static final int HORIZONTAL = 11;
+    private static final int EOL = 12;
+
+    private static final Map<String, Integer> MODES = new HashMap<>();
+    private static final Map<String, Integer> WHITE_RUNS = new HashMap<>();
+    private static final Map<String, Integer> BLACK_RUNS = new HashMap<>();
+
+    static {
+        MODES.put("0001", PASS);
+        MODES.put("001", HORIZONTAL);
+        MODES.put("000000000001", EOL);
+        String[] vertical = {"0000010", "000010", "010", "1", "011", "000011", "0000011"};
+        for (int i = 0; i < vertical.length; i++) {
+            MODES.put(vertical[i], i - 3);
+        }
+
+        String[] whiteTerminating = {
+                "00110101", "000111", "0111", "1000", "1011", "1100", "1110", "1111",
+                "10011", "10100", "00111", "01000", "001000", "000011", "110100", "110101",
+                "101010", "101011", "0100111", "0001100", "0001000", "0010111", "0000011", "0000100",
+                "0101000", "0101011", "0010011", "0100100", "0011000", "00000010", "00000011", "00011010",
+                "00011011", "00010010", "00010011", "00010100", "00010101", "00010110", "00010111", "00101000",
+                "00101001", "00101010", "00101011", "00101100", "00101101", "00000100", "00000101", "00001010",
+                "00001011", "01010010", "01010011", "01010100", "01010101", "00100100", "00100101", "01011000",
+                "01011001", "01011010", "01011011", "01001010", "01001011", "00110010", "00110011", "00110100"};
+        String[] blackTerminating = {
+                "0000110111", "010", "11", "10", "011", "0011", "0010", "00011",
+                "000101", "000100", "0000100", "0000101", "0000111", "00000100", "00000111", "000011000",
+                "0000010111", "0000011000", "0000001000", "00001100111", "00001101000", "00001101100",
+                "00000110111", "00000101000", "00000010111", "00000011000", "000011001010", "000011001011",
+                "000011001100", "000011001101", "000001101000", "000001101001", "000001101010", "000001101011",
+                "000011010010", "000011010011", "000011010100", "000011010101", "000011010110", "000011010111",
+                "000001101100", "000001101101", "000011011010", "000011011011", "000001010100", "000001010101",
+                "000001010110", "000001010111", "000001100100", "000001100101", "000001010010", "000001010011",
+                "000000100100", "000000110111", "000000111000", "000000100111", "000000101000", "000001011000",
+                "000001011001", "000000101011", "000000101100", "000001011010", "000001100110", "000001100111"};
+        String[] whiteMakeup = {
+                "11011", "10010", "010111", "0110111", "00110110", "00110111", "01100100", "01100101",
+                "01101000", "01100111", "011001100", "011001101", "011010010", "011010011", "011010100",
+                "011010101", "011010110", "011010111", "011011000", "011011001", "011011010", "011011011",
+                "010011000", "010011001", "010011010", "011000", "010011011"};
+        String[] blackMakeup = {
+                "0000001111", "000011001000", "000011001001", "000001011011", "000000110011", "000000110100",
+                "000000110101", "0000001101100", "0000001101101", "0000001001010", "0000001001011",
+                "0000001001100", "0000001001101", "0000001110010", "0000001110011", "0000001110100",
+                "0000001110101", "0000001110110", "0000001110111", "0000001010010", "0000001010011",
+                "0000001010100", "0000001010101", "0000001011010", "0000001011011", "0000001100100",
+                "0000001100101"};
+        String[] extendedMakeup = {
+                "00000001000", "00000001100", "00000001101", "000000010010", "000000010011", "000000010100",
+                "000000010101", "000000010110", "000000010111", "000000011100", "000000011101", "000000011110",
+                "000000011111"};
+        for (int run = 0; run < 64; run++) {
+            WHITE_RUNS.put(whiteTerminating[run], run);
+            BLACK_RUNS.put(blackTerminating[run], run);
+        }
+        for (int i = 0; i < whiteMakeup.length; i++) {
+            WHITE_RUNS.put(whiteMakeup[i], (i + 1) * 64);
+            BLACK_RUNS.put(blackMakeup[i], (i + 1) * 64);
+        }
+        for (int i = 0; i < extendedMakeup.length; i++) {
+            WHITE_RUNS.put(extendedMakeup[i], 1792 + i * 64);
+            BLACK_RUNS.put(extendedMakeup[i], 1792 + i * 64);
+        }
+    }
+
+    private final byte[] data;
+    private int bitPosition;
+
+    private G4Decoder(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Decodes {@code height} rows of {@code width} pixels and checks that the end of facsimile
+     * block follows them.
+     */
+    static byte[] decode(byte[] data, int width, int height) {
+        return new G4Decoder(data).decode(width, height);
+    }
+
+    private byte[] decode(int width, int height) {
+        int stride = (width + 7) / 8;
+        byte[] image = new byte[stride * height];
+        // Changing elements of the reference row, padded with width. The first row is white.
+        int[] reference = {width, width};
+        int[] changes = new int[width + 2];
+        for (int y = 0; y < height; y++) {
+            int count = 0;
+            int a0 = -1;
+            int color = 0;
+            while (a0 < width) {
+                int b1Index = 0;
+                // b1 is the first change right of a0 to the opposite color, even changes turn black.
+                while (reference[b1Index] <= a0 || (b1Index & 1) != color) {
+                    b1Index++;
+                }
+                int b1 = reference[b1Index];
+                int b2 = reference[Math.min(b1Index + 1, reference.length - 1)];
+                int mode = readCode(MODES, "mode");
+                if (mode == PASS) {
+                    a0 = b2;
+                } else if (mode == HORIZONTAL) {
+                    int start = Math.max(a0, 0);
+                    int a1 = start + readRun(color == 0 ? WHITE_RUNS : BLACK_RUNS);
+                    int a2 = a1 + readRun(color == 0 ? BLACK_RUNS : WHITE_RUNS);
+                    if (a1 > width || a2 > width) {
+                        throw new IllegalStateException("Run past the end of row " + y);
+                    }
+                    count = addChange(changes, count, a1, width);
+                    count = addChange(changes, count, a2, width);
+                    a0 = a2;
+                } else if (mode == EOL) {
+                    throw new IllegalStateException("End of block before row " + y);
+                } else {
+                    int a1 = b1 + mode;
+                    if (a1 < 0 || a1 > width || a1 <= a0) {
+                        throw new IllegalStateException("Vertical change out of place in row " + y);
+                    }
+                    count = addChange(changes, count, a1, width);
+                    a0 = a1;
+                    color ^= 1;
+                }
+            }
+            for (int i = 0; i < count; i += 2) {
+                int end = i + 1 < count ? changes[i + 1] : width;
+                for (int x = changes[i]; x < end; x++) {
+                    image[y * stride + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+            reference = new int[count + 2];
+            System.arraycopy(changes, 0, reference, 0, count);
+            reference[count] = width;
+            reference[count + 1] = width;
+        }
+        if (readCode(MODES, "EOFB") != EOL || readCode(MODES, "EOFB") != EOL) {
+            throw new IllegalStateException("No end of facsimile block after the last row.");
+        }
+        return image;
+    }
+
+    private static int addChange(int[] changes, int count, int position, int width) {
+        if (position < width) {
+            changes[count++] = position;
+        }
+        return count;
+    }
+
+    private int readRun(Map<String, Integer> codes) {
+        int run = 0;
+        while (true) {
+            int length = readCode(codes, "run");
+            run += length;
+            if (length < 64) {
+                return run;
+            }
+        }
+    }
+
+    private int readCode(Map<String, Integer> codes, String what) {
+        StringBuilder bits = new StringBuilder();
+        while (bits.length() < 13) {
+            if (bitPosition >= data.length * 8) {
+                throw new IllegalStateException("Data ends inside a " + what + " code.");
+            }
+            int bit = (data[bitPosition >> 3] >> (7 - (bitPosition & 7))) & 1;
+            bitPosition++;
+            bits.append(bit);
+            Integer value = codes.get(bits.toString());
+            if (value != null) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Unknown " + what + " code " + bits + " at bit " + (bitPosition - 13));
+    }
+}
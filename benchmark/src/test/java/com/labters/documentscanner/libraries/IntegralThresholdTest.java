@@ -0,0 +1,232 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link IntegralThreshold} against brute force window statistics, with strengths that are not
+ * binary fractions so any rounding of {@code 1 - t} shows, and its strip parallel and streaming
+ * paths against the plain one.
+ */
+public class IntegralThresholdTest {
+
+    private static final double[] STRENGTHS = {0.15, 0.1, 0.05, 0.23, 0.3, 0.123};
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void bradleyMatchesWindowMean() {
+        Random random = new Random(5);
+        for (int run = 0; run < 24; run++) {
+            int width = 1 + random.nextInt(160);
+            int height = 1 + random.nextInt(160);
+            int[][] image = page(width, height, random);
+            int windowSize = 3 + 2 * random.nextInt(30);
+            double t = STRENGTHS[run % STRENGTHS.length];
+            IntegralThreshold threshold = new IntegralThreshold(IntegralThreshold.Method.BRADLEY, windowSize, t);
+
+            Mat src = toMat(image);
+            Mat dst = new Mat();
+            threshold.threshold(src, dst);
+            byte[] output = new byte[width * height];
+            dst.get(0, 0, output);
+            BilevelImage bilevel = threshold.toBilevel(src, null);
+
+            int radius = windowSize / 2;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    long sum = 0;
+                    long count = 0;
+                    for (int j = Math.max(0, y - radius); j < Math.min(height, y + radius + 1); j++) {
+                        for (int i = Math.max(0, x - radius); i < Math.min(width, x + radius + 1); i++) {
+                            sum += image[j][i];
+                            count++;
+                        }
+                    }
+                    boolean black = image[y][x] <= (double) sum / count * (1 - t);
+                    String pixel = "t " + t + " window " + windowSize + " at " + x + ", " + y;
+                    assertEquals(pixel, black, output[y * width + x] == 0);
+                    assertEquals(pixel, black, bilevel.isBlack(x, y));
+                }
+            }
+            src.release();
+            dst.release();
+        }
+    }
+
+    @Test
+    public void sauvolaMatchesWindowStatistics() {
+        Random random = new Random(6);
+        for (int run = 0; run < 24; run++) {
+            int width = 1 + random.nextInt(160);
+            int height = 1 + random.nextInt(160);
+            int[][] image = page(width, height, random);
+            int windowSize = 3 + 2 * random.nextInt(30);
+            double k = STRENGTHS[run % STRENGTHS.length] + 0.1;
+            IntegralThreshold threshold = new IntegralThreshold(IntegralThreshold.Method.SAUVOLA, windowSize, k);
+
+            Mat src = toMat(image);
+            Mat dst = new Mat();
+            threshold.threshold(src, dst);
+            byte[] output = new byte[width * height];
+            dst.get(0, 0, output);
+            BilevelImage bilevel = threshold.toBilevel(src, null);
+
+            int radius = windowSize / 2;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    long sum = 0;
+                    long squares = 0;
+                    long count = 0;
+                    for (int j = Math.max(0, y - radius); j < Math.min(height, y + radius + 1); j++) {
+                        for (int i = Math.max(0, x - radius); i < Math.min(width, x + radius + 1); i++) {
+                            sum += image[j][i];
+                            squares += image[j][i] * image[j][i];
+                            count++;
+                        }
+                    }
+                    double mean = (double) sum / count;
+                    double deviation = Math.sqrt(Math.max(0, (double) squares / count - mean * mean));
+                    boolean black = image[y][x] <= mean * (1 + k * (deviation / 128 - 1));
+                    String pixel = "k " + k + " window " + windowSize + " at " + x + ", " + y;
+                    assertEquals(pixel, black, output[y * width + x] == 0);
+                    assertEquals(pixel, black, bilevel.isBlack(x, y));
+                }
+            }
+            src.release();
+            dst.release();
+        }
+    }
+
+    @Test
+    public void poolMatchesCallingThreadAcrossStrips() {
+        Random random = new Random(7);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            int[][] sizes = {{90, 700}, {33, 257}, {150, 1030}};
+            int[] windows = {3, 31, 301, 601};
+            for (int[] size : sizes) {
+                Mat src = toMat(page(size[0], size[1], random));
+                for (IntegralThreshold.Method method : IntegralThreshold.Method.values()) {
+                    for (int windowSize : windows) {
+                        IntegralThreshold threshold = new IntegralThreshold(method, windowSize, 0.2);
+                        Mat expected = new Mat();
+                        threshold.threshold(src, expected);
+                        Mat actual = new Mat();
+                        threshold.threshold(src, actual, pool);
+                        String label = method + " window " + windowSize + " on " + size[0] + "x" + size[1];
+                        assertArrayEquals(label, bytes(expected), bytes(actual));
+                        assertArrayEquals(label, threshold.toBilevel(src, null).getData(),
+                                threshold.toBilevel(src, pool).getData());
+                        assertArrayEquals(label, BilevelImage.fromMat(expected).getData(),
+                                threshold.toBilevel(src, pool).getData());
+                        actual.release();
+                        expected.release();
+                    }
+                }
+                src.release();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void streamPushedInOddBandsMatchesThreshold() {
+        Random random = new Random(8);
+        int width = 71;
+        int height = 333;
+        int[][] image = page(width, height, random);
+        Mat src = toMat(image);
+        byte[] gray = bytes(src);
+        int[] bands = {1, 3, 7, 13, 64, 65, 200};
+        for (IntegralThreshold.Method method : IntegralThreshold.Method.values()) {
+            for (int windowSize : new int[]{5, 41, 401}) {
+                IntegralThreshold threshold = new IntegralThreshold(method, windowSize, 0.15);
+                Mat dst = new Mat();
+                threshold.threshold(src, dst);
+                byte[] expected = bytes(dst);
+                dst.release();
+
+                for (int band : bands) {
+                    final byte[] actual = new byte[width * height];
+                    final int[] nextRow = {0};
+                    IntegralThreshold.RowStream stream = threshold.newStream(width, height, new IntegralThreshold.RowSink() {
+                        @Override
+                        public void onRow(int y, byte[] row) {
+                            assertEquals(nextRow[0]++, y);
+                            System.arraycopy(row, 0, actual, y * row.length, row.length);
+                        }
+                    });
+                    // Rows are copied out of a larger array with leading bytes, as from a reused buffer.
+                    byte[] buffer = new byte[5 + band * width];
+                    for (int y = 0; y < height; y += band) {
+                        int rows = Math.min(band, height - y);
+                        assertFalse(stream.isComplete());
+                        System.arraycopy(gray, y * width, buffer, 5, rows * width);
+                        stream.push(buffer, 5, rows);
+                    }
+                    assertTrue(stream.isComplete());
+                    assertArrayEquals(method + " window " + windowSize + " in bands of " + band, expected, actual);
+                }
+            }
+        }
+        src.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void streamRejectsRowsPastTheEnd() {
+        IntegralThreshold.RowStream stream = IntegralThreshold.bradley().newStream(4, 2, new IntegralThreshold.RowSink() {
+            @Override
+            public void onRow(int y, byte[] row) {
+            }
+        });
+        stream.push(new byte[12], 0, 3);
+    }
+
+    /**
+     * Smooth shading with noise and dark specks, so many pixels lie close to the threshold.
+     */
+    private static int[][] page(int width, int height, Random random) {
+        int[][] image = new int[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 120 + (int) (40 * Math.sin(x / 9.0 + y / 13.0)) + random.nextInt(30) - 15;
+                image[y][x] = random.nextInt(12) == 0 ? random.nextInt(60) : value;
+            }
+        }
+        return image;
+    }
+
+    private static byte[] bytes(Mat mat) {
+        byte[] data = new byte[(int) mat.total()];
+        mat.get(0, 0, data);
+        return data;
+    }
+
+    private static Mat toMat(int[][] image) {
+        int width = image[0].length;
+        byte[] data = new byte[image.length * width];
+        for (int y = 0; y < image.length; y++) {
+            for (int x = 0; x < width; x++) {
+                data[y * width + x] = (byte) image[y][x];
+            }
+        }
+        Mat mat = new Mat(image.length, width, CvType.CV_8UC1);
+        mat.put(0, 0, data);
+        return mat;
+    }
+}
@@ -0,0 +1,147 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link OrientationEstimator#estimate(Mat)} on synthetic pages at the analysis size: text in
+ * every orientation, and pages without text that have strong structure in one direction.
+ */
+public class OrientationEstimatorTest {
+
+    private static final String[] WORDS = {
+            "The", "quick", "brown", "fox", "jumps", "over", "lazy", "dogs", "while", "Kelly",
+            "reads", "eight", "pages", "of", "the", "quarterly", "budget", "report", "and", "signs"};
+
+    private final OrientationEstimator estimator = new OrientationEstimator();
+
+    @BeforeClass
+    public static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void keepsUprightText() {
+        for (int seed = 0; seed < 4; seed++) {
+            Mat page = textPage(seed);
+            assertEquals("seed " + seed, 0, estimator.estimate(page));
+            page.release();
+        }
+    }
+
+    @Test
+    public void turnsTextLyingOnItsSide() {
+        for (int seed = 0; seed < 4; seed++) {
+            Mat page = textPage(seed);
+            // Text turned clockwise needs 270 degrees clockwise to stand up again.
+            assertEquals("seed " + seed, 270, estimateTurned(page, Core.ROTATE_90_CLOCKWISE));
+            assertEquals("seed " + seed, 90, estimateTurned(page, Core.ROTATE_90_COUNTERCLOCKWISE));
+            page.release();
+        }
+    }
+
+    @Test
+    public void keepsUpsideDownText() {
+        Mat page = textPage(1);
+        assertEquals(0, estimateTurned(page, Core.ROTATE_180));
+        page.release();
+    }
+
+    @Test
+    public void keepsGridInEveryOrientation() {
+        Mat page = blankPage(600, 800);
+        for (int x = 40; x < 560; x += 40) {
+            Imgproc.line(page, new Point(x, 40), new Point(x, 760), new Scalar(40), 2);
+        }
+        for (int y = 40; y < 760; y += 40) {
+            Imgproc.line(page, new Point(40, y), new Point(560, y), new Scalar(40), 2);
+        }
+        assertEveryOrientationKept(page);
+        page.release();
+    }
+
+    @Test
+    public void keepsRuledFormInEveryOrientation() {
+        Mat page = blankPage(600, 800);
+        Imgproc.rectangle(page, new Point(40, 40), new Point(560, 760), new Scalar(30), 3);
+        for (int y = 120; y < 740; y += 36) {
+            Imgproc.line(page, new Point(60, y), new Point(540, y), new Scalar(60), 1);
+        }
+        for (int y = 120; y < 740; y += 144) {
+            Imgproc.rectangle(page, new Point(60, y - 30), new Point(84, y - 6), new Scalar(30), 2);
+        }
+        assertEveryOrientationKept(page);
+        page.release();
+    }
+
+    @Test
+    public void keepsBlankNoise() {
+        Mat page = blankPage(600, 800);
+        Mat noise = new Mat(page.size(), CvType.CV_8UC1);
+        Core.setRNGSeed(6);
+        Core.randn(noise, 0, 30);
+        Core.subtract(page, noise, page);
+        noise.release();
+        assertEveryOrientationKept(page);
+        page.release();
+    }
+
+    private void assertEveryOrientationKept(Mat page) {
+        assertEquals(0, estimator.estimate(page));
+        assertEquals(0, estimateTurned(page, Core.ROTATE_90_CLOCKWISE));
+        assertEquals(0, estimateTurned(page, Core.ROTATE_90_COUNTERCLOCKWISE));
+    }
+
+    private int estimateTurned(Mat page, int rotation) {
+        Mat turned = new Mat();
+        Core.rotate(page, turned, rotation);
+        int degrees = estimator.estimate(turned);
+        turned.release();
+        return degrees;
+    }
+
+    /**
+     * A portrait page of left aligned lines of random words with ragged right ends and a
+     * short last line in each paragraph, the way a letter or report looks once scaled down.
+     */
+    private static Mat textPage(int seed) {
+        Random random = new Random(seed);
+        Mat page = blankPage(600, 800);
+        int y = 70;
+        while (y < 740) {
+            int lines = 3 + random.nextInt(5);
+            for (int line = 0; line < lines && y < 740; line++, y += 22) {
+                int right = line == lines - 1 ? 200 + random.nextInt(200) : 480 + random.nextInt(60);
+                StringBuilder text = new StringBuilder();
+                while (true) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    String next = text.length() == 0 ? word : text + " " + word;
+                    double width = Imgproc.getTextSize(next, Imgproc.FONT_HERSHEY_SIMPLEX, 0.5, 1, null).width;
+                    if (60 + width > right) {
+                        break;
+                    }
+                    text.setLength(0);
+                    text.append(next);
+                }
+                Imgproc.putText(page, text.toString(), new Point(60, y), Imgproc.FONT_HERSHEY_SIMPLEX, 0.5,
+                        new Scalar(20), 1, Imgproc.LINE_AA);
+            }
+            y += 22;
+        }
+        return page;
+    }
+
+    private static Mat blankPage(int width, int height) {
+        return new Mat(height, width, CvType.CV_8UC1, new Scalar(235));
+    }
+}
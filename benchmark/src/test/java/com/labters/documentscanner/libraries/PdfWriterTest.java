@@ -0,0 +1,220 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Structure of the files {@link PdfWriter} writes: cross-reference offsets, stream lengths,
+ * the page tree and the embedded image data.
+ */
+public class PdfWriterTest {
+
+    private static final Pattern STREAM = Pattern.compile("/Length (\\d+)( 0 R)? >>\nstream\n");
+
+    @Test
+    public void crossReferenceTablePointsAtObjects() throws IOException {
+        String pdf = text(writeSample());
+        assertTrue(pdf.startsWith("%PDF-1.4\n"));
+        assertTrue(pdf.endsWith("%%EOF\n"));
+
+        Matcher startxref = Pattern.compile("startxref\n(\\d+)\n%%EOF\n$").matcher(pdf);
+        assertTrue(startxref.find());
+        int xref = Integer.parseInt(startxref.group(1));
+        assertTrue(pdf.startsWith("xref\n0 ", xref));
+
+        long[] offsets = offsets(pdf);
+        Matcher size = Pattern.compile("trailer\n<< /Size (\\d+) /Root 1 0 R >>").matcher(pdf);
+        assertTrue(size.find());
+        assertEquals(offsets.length, Integer.parseInt(size.group(1)));
+        for (int object = 1; object < offsets.length; object++) {
+            assertTrue("object " + object, pdf.startsWith(object + " 0 obj\n", (int) offsets[object]));
+        }
+        assertEquals("objects", offsets.length - 1, count(pdf, Pattern.compile("(?m)^\\d+ 0 obj$")));
+    }
+
+    @Test
+    public void streamLengthsMatchTheData() throws IOException {
+        String pdf = text(writeSample());
+        long[] offsets = offsets(pdf);
+        Matcher stream = STREAM.matcher(pdf);
+        int streams = 0;
+        while (stream.find()) {
+            int length = Integer.parseInt(stream.group(1));
+            if (stream.group(2) != null) {
+                length = Integer.parseInt(objectBody(pdf, offsets, length).trim());
+            }
+            int end = stream.end() + length;
+            assertTrue("stream " + streams, pdf.startsWith("\nendstream\n", end) || pdf.startsWith("endstream\n", end));
+            streams++;
+        }
+        // An image and a content stream per page.
+        assertEquals(8, streams);
+    }
+
+    @Test
+    public void pageTreeListsPagesInOrder() throws IOException {
+        String pdf = text(writeSample());
+        long[] offsets = offsets(pdf);
+        assertTrue(objectBody(pdf, offsets, 1).startsWith("<< /Type /Catalog /Pages 2 0 R >>"));
+        Matcher tree = Pattern.compile("<< /Type /Pages /Kids \\[([\\d R]+)\\] /Count (\\d+) >>")
+                .matcher(objectBody(pdf, offsets, 2));
+        assertTrue(tree.find());
+        assertEquals(4, Integer.parseInt(tree.group(2)));
+
+        List<Integer> images = new ArrayList<>();
+        for (String kid : tree.group(1).split(" 0 R ?")) {
+            String page = objectBody(pdf, offsets, Integer.parseInt(kid));
+            assertTrue(page.startsWith("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 "));
+            Matcher image = Pattern.compile("/Im0 (\\d+) 0 R").matcher(page);
+            assertTrue(image.find());
+            images.add(Integer.parseInt(image.group(1)));
+        }
+        List<Integer> sorted = new ArrayList<>(images);
+        sorted.sort(null);
+        assertEquals(sorted, images);
+        assertTrue(objectBody(pdf, offsets, images.get(0)).contains("/Width 64 /Height 48 /ColorSpace /DeviceRGB"));
+        assertTrue(objectBody(pdf, offsets, images.get(2)).contains("/DecodeParms << /K -1 /Columns 37 /Rows 9 >>"));
+    }
+
+    @Test
+    public void embedsImageDataUnchanged() throws IOException {
+        byte[] pdf = writeSample();
+        List<byte[]> streams = imageStreams(text(pdf));
+        assertEquals(4, streams.size());
+        assertArrayEquals(jpeg(1), streams.get(0));
+        assertArrayEquals(jpeg(2), streams.get(1));
+
+        byte[] image = CcittG4EncoderTest.runs(37, 9, 5, 3);
+        assertArrayEquals(CcittG4EncoderTest.encode(image, 37, 9, 5), streams.get(2));
+        assertArrayEquals(image, G4Decoder.decode(streams.get(2), 37, 9));
+
+        BilevelImage page = bilevelPage();
+        assertArrayEquals(page.getData(), G4Decoder.decode(streams.get(3), page.getWidth(), page.getHeight()));
+    }
+
+    @Test
+    public void writesEachPageBeforeClose() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfWriter writer = new PdfWriter(out);
+        byte[] jpeg = jpeg(1);
+        writer.addJpegPage(jpeg, 64, 48, 3);
+        int first = out.size();
+        assertTrue(first > jpeg.length);
+        assertTrue(text(out.toByteArray()).endsWith("/Contents 5 0 R >>\nendobj\n"));
+        writer.addJpegPage(jpeg, 64, 48, 3);
+        assertTrue(out.size() > first + jpeg.length);
+        assertEquals(2, writer.getPageCount());
+        writer.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsPagesAfterClose() throws IOException {
+        PdfWriter writer = new PdfWriter(new ByteArrayOutputStream());
+        writer.close();
+        writer.addJpegPage(jpeg(1), 64, 48, 3);
+    }
+
+    /**
+     * Two JPEG pages, one from an array and one from a stream, then two bilevel pages.
+     */
+    private static byte[] writeSample() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfWriter writer = new PdfWriter(out)) {
+            writer.addJpegPage(jpeg(1), 64, 48, 3);
+            writer.addJpegPage(new ByteArrayInputStream(jpeg(2)), 48, 64, 1);
+            // A stride wider than the row, the padding must not reach the output.
+            byte[] image = CcittG4EncoderTest.runs(37, 9, 5, 3);
+            byte[] padded = new byte[7 * 9];
+            for (int y = 0; y < 9; y++) {
+                System.arraycopy(image, y * 5, padded, y * 7, 5);
+                padded[y * 7 + 6] = (byte) 0xFF;
+            }
+            writer.addBilevelPage(padded, 37, 9, 7);
+            writer.addBilevelPage(bilevelPage());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Stand-in for JPEG data, random bytes that contain the stream keywords to show they are
+     * not searched for.
+     */
+    private static byte[] jpeg(int seed) {
+        byte[] data = new byte[3000 + seed * 17];
+        new Random(seed).nextBytes(data);
+        byte[] keyword = "\nendstream\nendobj\n".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(keyword, 0, data, 1000, keyword.length);
+        return data;
+    }
+
+    private static BilevelImage bilevelPage() {
+        BilevelImage page = new BilevelImage(200, 50);
+        byte[] image = CcittG4EncoderTest.shapes(200, 50, 20, 4);
+        System.arraycopy(image, 0, page.getData(), 0, image.length);
+        return page;
+    }
+
+    private static String text(byte[] pdf) {
+        return new String(pdf, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Offsets from the cross-reference table, indexed by object number.
+     */
+    private static long[] offsets(String pdf) {
+        int xref = pdf.lastIndexOf("xref\n0 ");
+        Matcher header = Pattern.compile("xref\n0 (\\d+)\n").matcher(pdf);
+        assertTrue(header.find(xref));
+        int count = Integer.parseInt(header.group(1));
+        int position = header.end();
+        assertTrue(pdf.startsWith("0000000000 65535 f \n", position));
+        long[] offsets = new long[count];
+        for (int object = 1; object < count; object++) {
+            position += 20;
+            String entry = pdf.substring(position, position + 20);
+            assertTrue(entry, entry.matches("\\d{10} 00000 n \n"));
+            offsets[object] = Long.parseLong(entry.substring(0, 10));
+        }
+        return offsets;
+    }
+
+    private static String objectBody(String pdf, long[] offsets, int object) {
+        int start = (int) offsets[object] + (object + " 0 obj\n").length();
+        return pdf.substring(start, pdf.indexOf("endobj\n", start));
+    }
+
+    private static List<byte[]> imageStreams(String pdf) {
+        long[] offsets = offsets(pdf);
+        List<byte[]> streams = new ArrayList<>();
+        Matcher stream = STREAM.matcher(pdf);
+        while (stream.find()) {
+            if (stream.group(2) != null) {
+                int length = Integer.parseInt(objectBody(pdf, offsets, Integer.parseInt(stream.group(1))).trim());
+                streams.add(pdf.substring(stream.end(), stream.end() + length).getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+        return streams;
+    }
+
+    private static int count(String text, Pattern pattern) {
+        Matcher matcher = pattern.matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,175 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link PerspectiveTransformation#transformTiled} against {@link PerspectiveTransformation#transform}
+ * on noise, where any pixel read from the wrong place shows, for tile sizes that do not divide
+ * the output and corners on and beyond the source edge, and the pooled overload against the
+ * sequential one.
+ */
+public class PerspectiveTransformationTest {
+
+    private static final int[] TILE_SIZES = {5, 64, 100, 1000};
+    private static final int RUNS = 12;
+
+    private static Mat gray;
+    private static Mat rgba;
+
+    @BeforeClass
+    public static void setUp() {
+        nu.pattern.OpenCV.loadLocally();
+        Core.setRNGSeed(9);
+        gray = new Mat(480, 640, CvType.CV_8UC1);
+        Core.randu(gray, 0, 256);
+        rgba = new Mat(480, 640, CvType.CV_8UC4);
+        Core.randu(rgba, 0, 256);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        gray.release();
+        rgba.release();
+    }
+
+    @Test
+    public void tiledMatchesWholeWarp() {
+        PerspectiveTransformation transformation = new PerspectiveTransformation();
+        for (MatOfPoint2f corners : corners()) {
+            for (Mat src : new Mat[]{gray, rgba}) {
+                Mat whole = transformation.transform(src, corners);
+                for (int tileSize : TILE_SIZES) {
+                    Mat tiled = new Mat(whole.size(), whole.type(), Scalar.all(1));
+                    List<Point> origins = new ArrayList<>();
+                    transformation.transformTiled(src, corners, tileSize, tileSize, collect(tiled, origins));
+                    String label = whole.size() + " in tiles of " + tileSize;
+                    assertEquals(label, 0, differences(whole, tiled));
+                    assertEquals(label, expectedOrigins(whole.cols(), whole.rows(), tileSize, tileSize), origins);
+                    tiled.release();
+                }
+                whole.release();
+            }
+            corners.release();
+        }
+    }
+
+    @Test
+    public void rowBandsMatchWholeWarp() {
+        PerspectiveTransformation transformation = new PerspectiveTransformation();
+        MatOfPoint2f corners = corners().get(1);
+        Mat whole = transformation.transform(rgba, corners);
+        Mat tiled = new Mat(whole.size(), whole.type(), Scalar.all(1));
+        List<Point> origins = new ArrayList<>();
+        transformation.transformTiled(rgba, corners, Integer.MAX_VALUE, 3, collect(tiled, origins));
+        assertEquals(0, differences(whole, tiled));
+        assertEquals(expectedOrigins(whole.cols(), whole.rows(), Integer.MAX_VALUE, 3), origins);
+        tiled.release();
+        whole.release();
+        corners.release();
+    }
+
+    @Test
+    public void pooledMatchesSequential() {
+        PerspectiveTransformation transformation = new PerspectiveTransformation();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (MatOfPoint2f corners : corners()) {
+                for (int tileSize : new int[]{5, 64, 1000, Integer.MAX_VALUE}) {
+                    Mat sequential = new Mat(transformation.getOutputSize(corners), rgba.type(), Scalar.all(1));
+                    List<Point> sequentialOrigins = new ArrayList<>();
+                    transformation.transformTiled(rgba, corners, tileSize, tileSize / 2 + 1,
+                            collect(sequential, sequentialOrigins));
+                    Mat pooled = new Mat(sequential.size(), sequential.type(), Scalar.all(2));
+                    List<Point> pooledOrigins = new ArrayList<>();
+                    transformation.transformTiled(rgba, corners, tileSize, tileSize / 2 + 1,
+                            collect(pooled, pooledOrigins), pool);
+                    String label = sequential.size() + " in tiles of " + tileSize;
+                    assertEquals(label, 0, differences(sequential, pooled));
+                    assertEquals(label, sequentialOrigins, pooledOrigins);
+                    pooled.release();
+                    sequential.release();
+                }
+                corners.release();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyTiles() {
+        MatOfPoint2f corners = corners().get(0);
+        new PerspectiveTransformation().transformTiled(gray, corners, 0, 64, collect(new Mat(), new ArrayList<Point>()));
+    }
+
+    /**
+     * The whole source, a quad reaching 40 pixels past every edge, one wholly past the left
+     * edge, and random quads with corners near the edges.
+     */
+    static List<MatOfPoint2f> corners() {
+        List<MatOfPoint2f> corners = new ArrayList<>();
+        corners.add(new MatOfPoint2f(new Point(0, 0), new Point(640, 0), new Point(640, 480), new Point(0, 480)));
+        corners.add(new MatOfPoint2f(new Point(-40, -30), new Point(670, -40), new Point(680, 520), new Point(-35, 510)));
+        corners.add(new MatOfPoint2f(new Point(-300, 10), new Point(-20, 30), new Point(-25, 400), new Point(-290, 380)));
+        Random random = new Random(3);
+        for (int run = 0; run < RUNS; run++) {
+            Point[] points = new Point[4];
+            for (int i = 0; i < 4; i++) {
+                boolean right = i == 1 || i == 2;
+                boolean bottom = i >= 2;
+                points[i] = new Point((right ? 640 : 0) + (random.nextDouble() - 0.5) * 200 + (right ? -60 : 60),
+                        (bottom ? 480 : 0) + (random.nextDouble() - 0.5) * 150 + (bottom ? -45 : 45));
+            }
+            corners.add(new MatOfPoint2f(points));
+        }
+        return corners;
+    }
+
+    static TileSink collect(final Mat output, final List<Point> origins) {
+        return new TileSink() {
+            @Override
+            public void onTile(Mat tile, int x, int y) {
+                origins.add(new Point(x, y));
+                Mat target = output.submat(new Rect(x, y, tile.cols(), tile.rows()));
+                tile.copyTo(target);
+                target.release();
+            }
+        };
+    }
+
+    static List<Point> expectedOrigins(int width, int height, int tileWidth, int tileHeight) {
+        List<Point> origins = new ArrayList<>();
+        for (long y = 0; y < height; y += tileHeight) {
+            for (long x = 0; x < width; x += tileWidth) {
+                origins.add(new Point(x, y));
+            }
+        }
+        return origins;
+    }
+
+    static int differences(Mat expected, Mat actual) {
+        Mat difference = new Mat();
+        Core.absdiff(expected, actual, difference);
+        Mat channels = difference.reshape(1);
+        int count = Core.countNonZero(channels);
+        channels.release();
+        difference.release();
+        return count;
+    }
+}
@@ -0,0 +1,114 @@
+package com.labters.documentscanner.libraries;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link TiledThreshold#adaptiveThreshold} against {@link Imgproc#adaptiveThreshold} on the whole
+ * image, for block sizes whose halo is wider than the tiles and image sizes the tiles do not
+ * divide.
+ */
+public class TiledThresholdTest {
+
+    private static final int[] BLOCK_SIZES = {3, 11, 31, 75};
+    private static final int[] TILE_SIZES = {4, 9, 64, 512};
+    private static final int[] METHODS = {Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.ADAPTIVE_THRESH_MEAN_C};
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        nu.pattern.OpenCV.loadLocally();
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void matchesWholeImageThreshold() {
+        Mat src = page(203, 141);
+        for (int method : METHODS) {
+            for (int blockSize : BLOCK_SIZES) {
+                Mat expected = new Mat();
+                Imgproc.adaptiveThreshold(src, expected, 255, method, Imgproc.THRESH_BINARY, blockSize, 7);
+                for (int tileSize : TILE_SIZES) {
+                    Mat actual = new Mat();
+                    TiledThreshold.adaptiveThreshold(src, actual, 255, method, Imgproc.THRESH_BINARY,
+                            blockSize, 7, tileSize, pool);
+                    assertEquals("method " + method + " block " + blockSize + " tile " + tileSize,
+                            0, differences(expected, actual));
+                    actual.release();
+                }
+                expected.release();
+            }
+        }
+        src.release();
+    }
+
+    @Test
+    public void matchesOnSubmatAndInverseThreshold() {
+        Mat page = page(300, 200);
+        Mat src = page.submat(17, 190, 23, 281);
+        Mat expected = new Mat();
+        Imgproc.adaptiveThreshold(src, expected, 200, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY_INV, 15, -3);
+        Mat actual = new Mat();
+        TiledThreshold.adaptiveThreshold(src, actual, 200, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY_INV,
+                15, -3, 6, pool);
+        assertEquals(0, differences(expected, actual));
+        actual.release();
+        expected.release();
+        src.release();
+        page.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsThresholdInPlace() {
+        Mat src = page(16, 16);
+        try {
+            TiledThreshold.adaptiveThreshold(src, src, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY,
+                    3, 0, 8, pool);
+        } finally {
+            src.release();
+        }
+    }
+
+    /**
+     * Noise over a gradient, so that both the window mean and the pixels vary everywhere.
+     */
+    private static Mat page(int width, int height) {
+        Core.setRNGSeed(width * 31 + height);
+        Mat page = new Mat(height, width, CvType.CV_8UC1);
+        Core.randn(page, 0, 25);
+        Mat gradient = new Mat(height, width, CvType.CV_8UC1);
+        byte[] row = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[y * width + x] = (byte) (60 + 130 * x / width + 40 * y / height);
+            }
+        }
+        gradient.put(0, 0, row);
+        Core.add(page, gradient, page);
+        gradient.release();
+        return page;
+    }
+
+    private static int differences(Mat expected, Mat actual) {
+        Mat difference = new Mat();
+        Core.absdiff(expected, actual, difference);
+        int count = Core.countNonZero(difference);
+        difference.release();
+        return count;
+    }
+}
@@ -0,0 +1,18 @@
+package com.labters.documentscanner
+
+/**
+ * Outcome of [BatchScanner.scan]. Pages without a detected document are cropped to the
+ * whole image and only counted in [pageCount].
+ */
+class BatchScanReport(
+    val pageCount: Int,
+    val detectedCount: Int,
+    val elapsedNanos: Long
+) {
+    val pagesPerSecond: Double
+        get() = if (elapsedNanos > 0) pageCount * 1e9 / elapsedNanos else 0.0
+
+    override fun toString(): String =
+        "BatchScanReport(pages=$pageCount, detected=$detectedCount, " +
+                "elapsedMs=${elapsedNanos / 1_000_000}, pagesPerSecond=${"%.2f".format(pagesPerSecond)})"
+}
@@ -0,0 +1,154 @@
+package com.labters.documentscanner
+
+import android.graphics.Bitmap
+import com.labters.documentscanner.helpers.MatScope
+import com.labters.documentscanner.libraries.EnhancementPipeline
+import com.labters.documentscanner.libraries.NativeClass
+import com.labters.documentscanner.libraries.NativeMemoryMonitor
+import com.labters.documentscanner.libraries.PerspectiveTransformation
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import org.opencv.core.MatOfPoint2f
+import org.opencv.core.Point
+
+/**
+ * Headless multi-page scanner, no View involved.
+ *
+ * Every page goes through decode, detect, warp, enhance and encode. Each stage runs in its own
+ * coroutine and hands pages to the next one over a channel of [queueCapacity] pages, so page
+ * N + 1 is detected while page N is encoded and a slow stage holds the ones before it back.
+ * At most a fixed number of pages is in flight, memory does not grow with the page count.
+ * Pages are detected coarse to fine, see [NativeClass.getRefinedPoint].
+ *
+ * [enhancer] may return its input or a new Bitmap, in which case the input is recycled. To
+ * run an [EnhancementPipeline] pass `pipeline::enhance`. An instance runs one batch at a time.
+ */
+class BatchScanner @JvmOverloads constructor(
+    private val queueCapacity: Int = DEFAULT_QUEUE_CAPACITY,
+    private val dispatcher: CoroutineDispatcher = ScannerDispatchers.Default,
+    private val enhancer: (Bitmap) -> Bitmap = { it }
+) {
+
+    init {
+        require(queueCapacity > 0) { "queueCapacity must be positive." }
+    }
+
+    private val nativeClass = NativeClass()
+    private val perspectiveTransformation = PerspectiveTransformation()
+
+    /**
+     * Scans [sources] in order and passes the pages to [encoder] in the same order. The first
+     * failing stage cancels the whole batch and its exception is thrown from here. Pages still
+     * in flight when the batch fails or is cancelled are recycled.
+     */
+    suspend fun scan(sources: List<PageSource>, encoder: PageEncoder): BatchScanReport {
+        val start = System.nanoTime()
+        val memory = NativeMemoryMonitor.begin()
+        val channels = ArrayList<Channel<Page>>()
+        fun pages() = Channel<Page>(queueCapacity) { it.recycle() }.also { channels.add(it) }
+        try {
+            return coroutineScope {
+                var detectedCount = 0
+
+                val decoded = pages()
+                launch(dispatcher) {
+                    try {
+                        sources.forEachIndexed { index, source -> decoded.send(Page(index, source.decode())) }
+                    } finally {
+                        decoded.close()
+                    }
+                }
+                val detected = stage(decoded, pages()) { page ->
+                    page.corners = nativeClass.getRefinedPoint(page.bitmap)
+                    if (page.corners == null) {
+                        page.corners = getOutline(page.bitmap)
+                    } else {
+                        detectedCount++
+                    }
+                    page
+                }
+                val warped = stage(detected, pages()) { page ->
+                    val cropped = MatScope().use { scope ->
+                        perspectiveTransformation.cropToBitmap(page.bitmap, scope.track(page.corners!!))
+                    }
+                    page.bitmap.recycle()
+                    Page(page.index, cropped)
+                }
+                val enhanced = stage(warped, pages()) { page ->
+                    val result = enhancer(page.bitmap)
+                    if (result !== page.bitmap) {
+                        page.bitmap.recycle()
+                    }
+                    Page(page.index, result)
+                }
+                withContext(dispatcher) {
+                    for (page in enhanced) {
+                        try {
+                            encoder.encode(page.index, page.bitmap)
+                        } finally {
+                            page.recycle()
+                        }
+                    }
+                }
+
+                BatchScanReport(sources.size, detectedCount, System.nanoTime() - start)
+            }
+        } finally {
+            // Every stage has stopped here, cancelling hands the queued pages to recycle().
+            channels.forEach { it.cancel() }
+            nativeClass.release()
+            NativeMemoryMonitor.end("BatchScanner.scan", memory)
+        }
+    }
+
+    /**
+     * Runs [transform] on every page of [input] and sends the results to [output]. A page whose
+     * transform fails is recycled, a result that cannot be sent is recycled by [output].
+     */
+    private fun CoroutineScope.stage(
+        input: ReceiveChannel<Page>,
+        output: Channel<Page>,
+        transform: (Page) -> Page
+    ): ReceiveChannel<Page> {
+        launch(dispatcher) {
+            try {
+                for (page in input) {
+                    val result = try {
+                        transform(page)
+                    } catch (e: Throwable) {
+                        page.recycle()
+                        throw e
+                    }
+                    output.send(result)
+                }
+            } finally {
+                output.close()
+            }
+        }
+        return output
+    }
+
+    private fun getOutline(bitmap: Bitmap): MatOfPoint2f {
+        val width = bitmap.width.toDouble()
+        val height = bitmap.height.toDouble()
+        return MatOfPoint2f(Point(0.0, 0.0), Point(width, 0.0), Point(width, height), Point(0.0, height))
+    }
+
+    private class Page(val index: Int, val bitmap: Bitmap) {
+        var corners: MatOfPoint2f? = null
+
+        fun recycle() {
+            bitmap.recycle()
+            corners?.release()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_QUEUE_CAPACITY = 1
+    }
+}
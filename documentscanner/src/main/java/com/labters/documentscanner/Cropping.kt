@@ -0,0 +1,200 @@
+package com.labters.documentscanner
+
+import android.graphics.Bitmap
+import android.graphics.Rect
+import com.labters.documentscanner.helpers.ImageUtils
+import com.labters.documentscanner.helpers.MatScope
+import com.labters.documentscanner.libraries.BilevelImage
+import com.labters.documentscanner.libraries.BitmapTileSink
+import com.labters.documentscanner.libraries.EnhancementPipeline
+import com.labters.documentscanner.libraries.GrayTileSink
+import com.labters.documentscanner.libraries.IntegralThreshold
+import com.labters.documentscanner.libraries.PerspectiveTransformation
+import org.opencv.core.Core
+import org.opencv.core.CvType
+import org.opencv.core.Mat
+import org.opencv.core.MatOfPoint2f
+import org.opencv.core.Point
+import org.opencv.imgproc.Imgproc
+import kotlin.math.ceil
+import kotlin.math.floor
+
+/**
+ * Warps the area of [source] inside [corners] into a new ARGB_8888 Bitmap, tile by tile on
+ * [ScannerDispatchers.tilePool], so no full size result Mat is allocated.
+ */
+internal fun PerspectiveTransformation.cropToBitmap(source: Bitmap, corners: MatOfPoint2f): Bitmap {
+    MatScope().use { scope ->
+        val sourceMat = scope.track(ImageUtils.bitmapToMat(source))
+        val size = getOutputSize(corners)
+        val result = Bitmap.createBitmap(size.width.toInt(), size.height.toInt(), Bitmap.Config.ARGB_8888)
+        transformTiled(
+            sourceMat, corners,
+            PerspectiveTransformation.DEFAULT_TILE_SIZE, PerspectiveTransformation.DEFAULT_TILE_SIZE,
+            BitmapTileSink(result), ScannerDispatchers.tilePool
+        )
+        return result
+    }
+}
+
+/**
+ * Warps the area of [source] inside [corners] into a new CV_8UC1 Mat owned by the caller. Tiles
+ * are converted to gray as they are warped on [ScannerDispatchers.tilePool], so the page is
+ * never held with 4 bytes per pixel.
+ */
+internal fun PerspectiveTransformation.cropToGray(source: Bitmap, corners: MatOfPoint2f): Mat {
+    MatScope().use { scope ->
+        val sourceMat = scope.track(ImageUtils.bitmapToMat(source))
+        val result = scope.track(Mat(getOutputSize(corners), CvType.CV_8UC1))
+        transformTiled(
+            sourceMat, corners,
+            PerspectiveTransformation.DEFAULT_TILE_SIZE, PerspectiveTransformation.DEFAULT_TILE_SIZE,
+            GrayTileSink(result), ScannerDispatchers.tilePool
+        )
+        return scope.detach(result)
+    }
+}
+
+/**
+ * Crops [corners], given on a [proxyWidth] x [proxyHeight] proxy of [source] that is rotated
+ * clockwise by [degrees], from the full resolution image. Only the bounding box of the corners
+ * is decoded and only the cropped page is rotated upright.
+ */
+internal fun PerspectiveTransformation.cropFromSource(
+    source: ImageSource,
+    corners: Array<Point>,
+    proxyWidth: Int,
+    proxyHeight: Int,
+    degrees: Int
+): Bitmap {
+    val cropped = cropRegion(source, corners, proxyWidth, proxyHeight, degrees) { bitmap, regionCorners ->
+        cropToBitmap(bitmap, regionCorners)
+    }
+    if (degrees == 0) {
+        return cropped
+    }
+    val rotated = ImageUtils.rotateBitmap(cropped, degrees)
+    if (rotated !== cropped) {
+        cropped.recycle()
+    }
+    return rotated
+}
+
+/**
+ * Like [cropFromSource], but warps into a gray Mat with [cropToGray].
+ */
+internal fun PerspectiveTransformation.cropGrayFromSource(
+    source: ImageSource,
+    corners: Array<Point>,
+    proxyWidth: Int,
+    proxyHeight: Int,
+    degrees: Int
+): Mat {
+    val cropped = cropRegion(source, corners, proxyWidth, proxyHeight, degrees) { bitmap, regionCorners ->
+        cropToGray(bitmap, regionCorners)
+    }
+    val rotation = when (degrees) {
+        90 -> Core.ROTATE_90_CLOCKWISE
+        180 -> Core.ROTATE_180
+        270 -> Core.ROTATE_90_COUNTERCLOCKWISE
+        else -> return cropped
+    }
+    MatScope().use { scope ->
+        scope.track(cropped)
+        val rotated = scope.newMat()
+        Core.rotate(cropped, rotated, rotation)
+        return scope.detach(rotated)
+    }
+}
+
+/**
+ * Maps [corners] from the proxy to [source], decodes their bounding box and crops it with [crop].
+ */
+private inline fun <T> cropRegion(
+    source: ImageSource,
+    corners: Array<Point>,
+    proxyWidth: Int,
+    proxyHeight: Int,
+    degrees: Int,
+    crop: (Bitmap, MatOfPoint2f) -> T
+): T {
+    val width = source.width.toDouble()
+    val height = source.height.toDouble()
+    val sideways = degrees == 90 || degrees == 270
+    val scaleX = (if (sideways) height else width) / proxyWidth
+    val scaleY = (if (sideways) width else height) / proxyHeight
+    val sourcePoints = corners.map {
+        val x = it.x * scaleX
+        val y = it.y * scaleY
+        when (degrees) {
+            90 -> Point(y, height - x)
+            180 -> Point(width - x, height - y)
+            270 -> Point(width - y, x)
+            else -> Point(x, y)
+        }
+    }
+
+    val region = Rect(
+        floor(sourcePoints.minOf { it.x }).toInt().coerceIn(0, source.width),
+        floor(sourcePoints.minOf { it.y }).toInt().coerceIn(0, source.height),
+        ceil(sourcePoints.maxOf { it.x }).toInt().coerceIn(0, source.width),
+        ceil(sourcePoints.maxOf { it.y }).toInt().coerceIn(0, source.height)
+    )
+    val regionBitmap = source.decodeRegion(region)
+    try {
+        MatScope().use { scope ->
+            val regionCorners = scope.track(
+                MatOfPoint2f(*sourcePoints.map { Point(it.x - region.left, it.y - region.top) }.toTypedArray())
+            )
+            return crop(regionBitmap, regionCorners)
+        }
+    } finally {
+        regionBitmap.recycle()
+    }
+}
+
+/**
+ * Binarizes [page] like [binarize] and packs the result 1 bit per pixel. The page is converted
+ * to gray before the RGBA copy is freed, and the full resolution Mats only live during the call.
+ */
+internal fun binarize(page: Bitmap, binarizer: IntegralThreshold?): BilevelImage = MatScope().use { scope ->
+    val rgba = scope.track(ImageUtils.bitmapToMat(page))
+    val gray = scope.newMat()
+    Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY)
+    scope.free(rgba)
+    binarize(gray, binarizer)
+}
+
+/**
+ * Binarizes the CV_8UC1 [gray] on [ScannerDispatchers.tilePool] and packs the result 1 bit per
+ * pixel. [binarizer] streams its rows straight into the packed image, without it the page is
+ * thresholded with [EnhancementPipeline.BINARIZE] first.
+ */
+internal fun binarize(gray: Mat, binarizer: IntegralThreshold?): BilevelImage {
+    if (binarizer != null) {
+        return binarizer.toBilevel(gray, ScannerDispatchers.tilePool)
+    }
+    MatScope().use { scope ->
+        val binary = scope.track(EnhancementPipeline.BINARIZE.apply(gray, ScannerDispatchers.tilePool, null))
+        return BilevelImage.fromMat(binary)
+    }
+}
+
+/**
+ * Runs [enhancement] on the CV_8UC1 [gray] and packs the result 1 bit per pixel. A pipeline
+ * that ends with a binarize stage is packed as it is, otherwise its output is thresholded
+ * like [binarize]. [gray] is released or reused by the pipeline.
+ */
+internal fun binarize(
+    gray: Mat,
+    enhancement: EnhancementPipeline,
+    listener: EnhancementPipeline.StageListener?,
+    binarizer: IntegralThreshold?
+): BilevelImage = MatScope().use { scope ->
+    if (enhancement.isEmpty) {
+        scope.track(gray)
+        return binarize(gray, binarizer)
+    }
+    val enhanced = scope.track(enhancement.applyAndRelease(gray, ScannerDispatchers.tilePool, listener))
+    if (enhancement.isBinarizing) BilevelImage.fromMat(enhanced) else binarize(enhanced, binarizer)
+}
@@ -0,0 +1,13 @@
+package com.labters.documentscanner
+
+import android.graphics.Bitmap
+import com.labters.documentscanner.libraries.DetectionCache
+
+/**
+ * [DetectionCache] key of [image], the image detection runs on before it is rotated, shown
+ * with the given EXIF orientation tag. Reads every pixel, call it off the main thread.
+ */
+fun detectionCacheKey(image: Bitmap, exifOrientation: Int): String =
+    DetectionCache.keyOf(image.width, image.height, exifOrientation) { y, row ->
+        image.getPixels(row, 0, image.width, 0, y, image.width, 1)
+    }
@@ -0,0 +1,115 @@
+package com.labters.documentscanner
+
+import com.labters.documentscanner.helpers.MatPool
+import com.labters.documentscanner.libraries.CornerTracker
+import com.labters.documentscanner.libraries.DetectionMode
+import com.labters.documentscanner.libraries.NativeClass
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import org.opencv.core.CvType
+import org.opencv.core.Mat
+import org.opencv.core.MatOfPoint2f
+import org.opencv.imgproc.Imgproc
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**
+ * Detects documents in a stream of camera frames for a live edge overlay.
+ *
+ * Only the luma plane is processed, downscaled so its longer side is at most [workingSize].
+ * When detection is slower than the camera, frames that arrive while a frame is being
+ * processed are dropped and only the newest one is kept, so results never lag behind. The
+ * frame buffers are reused from frame to frame, call [release] when the camera session ends.
+ *
+ * [detector] receives the downscaled single channel frame and returns the document corners in
+ * its coordinates. It defaults to [NativeClass.getLargestRectangle] on the value channel path
+ * and can be replaced to drive the stream with synthetic frames and detectors on the JVM.
+ */
+class DocumentDetectionStream @JvmOverloads constructor(
+    private val workingSize: Int = DEFAULT_WORKING_SIZE,
+    private val dispatcher: CoroutineDispatcher = ScannerDispatchers.Default,
+    private val detector: (Mat) -> MatOfPoint2f? = defaultDetector()
+) {
+
+    private val matPool = MatPool()
+
+    /**
+     * Detection results of [frames]. A collector slower than detection only ever receives the
+     * newest result, older ones are dropped instead of queueing up.
+     */
+    fun detect(frames: Flow<LumaFrame>): Flow<QuadDetection> =
+        frames
+            .conflate()
+            .map { detectFrame(it) }
+            .flowOn(dispatcher)
+            .conflate()
+
+    /**
+     * Frees the frame buffers kept between frames. The stream stays usable.
+     */
+    fun release() {
+        matPool.release()
+    }
+
+    private fun detectFrame(frame: LumaFrame): QuadDetection {
+        val plane = matPool.acquire(frame.height, frame.rowStride, CvType.CV_8UC1)
+        plane.put(0, 0, frame.data, 0, minOf(frame.data.size, frame.rowStride * frame.height))
+        val luma = plane.submat(0, frame.height, 0, frame.width)
+
+        val ratio = minOf(1.0, workingSize.toDouble() / max(frame.width, frame.height))
+        val working = if (ratio < 1.0) {
+            matPool.acquire(
+                (frame.height * ratio).roundToInt(), (frame.width * ratio).roundToInt(), CvType.CV_8UC1
+            ).also {
+                Imgproc.resize(luma, it, it.size(), 0.0, 0.0, Imgproc.INTER_AREA)
+            }
+        } else {
+            luma
+        }
+
+        var quad: MatOfPoint2f? = null
+        try {
+            quad = detector(working)
+            val corners = quad?.toArray()?.let { points ->
+                FloatArray(points.size * 2).also {
+                    for (i in points.indices) {
+                        it[i * 2] = (points[i].x / ratio).toFloat()
+                        it[i * 2 + 1] = (points[i].y / ratio).toFloat()
+                    }
+                }
+            }
+            return QuadDetection(frame.timestampNanos, frame.width, frame.height, corners)
+        } finally {
+            quad?.release()
+            if (working !== luma) matPool.recycle(working)
+            luma.release()
+            matPool.recycle(plane)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_WORKING_SIZE = 640
+
+        /**
+         * Stream that follows the document with a [CornerTracker] between frames and only runs
+         * a full detection when tracking loses confidence. Use one stream per camera session.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun tracking(
+            workingSize: Int = DEFAULT_WORKING_SIZE,
+            dispatcher: CoroutineDispatcher = ScannerDispatchers.Default
+        ): DocumentDetectionStream {
+            val tracker = CornerTracker(NativeClass().detector)
+            return DocumentDetectionStream(workingSize, dispatcher) { tracker.update(it) }
+        }
+
+        private fun defaultDetector(): (Mat) -> MatOfPoint2f? {
+            val nativeClass = NativeClass()
+            return { nativeClass.getLargestRectangle(it, DetectionMode.VALUE_CHANNEL) }
+        }
+    }
+}
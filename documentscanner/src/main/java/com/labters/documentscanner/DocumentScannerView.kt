@@ -17,20 +17,32 @@ import androidx.lifecycle.LifecycleCoroutineScope
 import androidx.lifecycle.LifecycleOwner
 import androidx.lifecycle.findViewTreeLifecycleOwner
 import androidx.lifecycle.lifecycleScope
+import com.labters.documentscanner.helpers.ImageUtils
+import com.labters.documentscanner.helpers.MatScope
+import com.labters.documentscanner.libraries.BilevelEncoder
+import com.labters.documentscanner.libraries.BilevelImage
+import com.labters.documentscanner.libraries.DetectionCache
+import com.labters.documentscanner.libraries.DetectionResolution
+import com.labters.documentscanner.libraries.DiagnosticsSink
+import com.labters.documentscanner.libraries.EnhancementPipeline
+import com.labters.documentscanner.libraries.IntegralThreshold
 import com.labters.documentscanner.libraries.NativeClass
+import com.labters.documentscanner.libraries.NativeMemoryMonitor
+import com.labters.documentscanner.libraries.OrientationEstimator
+import com.labters.documentscanner.libraries.PdfWriter
 import com.labters.documentscanner.libraries.PerspectiveTransformation
 import com.labters.documentscanner.libraries.PolygonView
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
-import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.launch
-import org.opencv.android.Utils
-import org.opencv.core.CvType
-import org.opencv.core.Mat
+import kotlinx.coroutines.withContext
 import org.opencv.core.MatOfPoint2f
 import org.opencv.core.Point
-import org.opencv.imgproc.Imgproc
+import java.util.Collections
 
 
 class DocumentScannerView @JvmOverloads constructor(
@@ -56,6 +68,51 @@ class DocumentScannerView @JvmOverloads constructor(
         get() = lifecycle.lifecycleScope
 
     private val nativeClass = NativeClass()
+    private val orientationEstimator = OrientationEstimator()
+    private var exifOrientation = OrientationEstimator.ORIENTATION_UNDEFINED
+    private var imageSource: ImageSource? = null
+    private var rotationDegrees = 0
+
+    /**
+     * Receives intermediate images of detection and cropping. Nothing is encoded or written
+     * unless a sink other than [DiagnosticsSink.NONE] is set.
+     */
+    var diagnosticsSink: DiagnosticsSink = DiagnosticsSink.NONE
+        set(value) {
+            field = value
+            nativeClass.diagnosticsSink = value
+        }
+
+    /**
+     * Resolution the document is detected at, see [DetectionResolution]. The working size the
+     * last detection actually used is reported by [lastDetectionSize].
+     */
+    var detectionResolution: DetectionResolution
+        get() = nativeClass.detectionResolution
+        set(value) {
+            nativeClass.detectionResolution = value
+        }
+
+    val lastDetectionSize: Int
+        get() = nativeClass.lastWorkingSize
+
+    /**
+     * Detection results of recently opened images, looked up by [setImage] before the
+     * orientation is estimated and the document detected. Shared by every view by default,
+     * `null` disables caching.
+     */
+    var detectionCache: DetectionCache? = defaultDetectionCache
+
+    /**
+     * Applied to the page by [getCroppedImage] after it is cropped. The default,
+     * [EnhancementPipeline.ORIGINAL], returns the page as it was cropped.
+     */
+    var enhancement: EnhancementPipeline = EnhancementPipeline.ORIGINAL
+
+    /**
+     * Receives the time each [enhancement] stage took, on a scanner thread.
+     */
+    var enhancementListener: EnhancementPipeline.StageListener? = null
 
     init {
         inflate(context, R.layout.document_scanner, this).run {
@@ -68,37 +125,85 @@ class DocumentScannerView @JvmOverloads constructor(
         }
     }
 
+    private var scanJob: Job? = null
+    private val detachableJobs: MutableSet<Job> = Collections.synchronizedSet(HashSet())
+
     private fun initView() {
-        scope.launch {
+        scanJob?.cancel()
+        scanJob = scope.launch {
             onLoad?.invoke(true)
-            setImageRotation()
-            initializeCropping()
-            onLoad?.invoke(false)
+            try {
+                val cache = detectionCache
+                var cacheKey: String? = null
+                val cached = onScannerThread {
+                    imageSource?.let {
+                        selectedImage = it.decodeSampled(ImageSource.DEFAULT_PROXY_SIZE)
+                        exifOrientation = it.exifOrientation
+                    }
+                    cacheKey = cache?.let { detectionCacheKey(selectedImage, exifOrientation) }
+                    val entry = cacheKey?.let { cache?.get(it) }
+                    setImageRotation(entry)
+                    entry
+                }
+                initializeCropping(cached) { entry -> cacheKey?.let { cache?.put(it, entry) } }
+            } finally {
+                onLoad?.invoke(false)
+            }
         }
     }
 
+    /**
+     * Runs [block] on [ScannerDispatchers.Default], it is cancelled when the view is detached.
+     */
+    private suspend fun <T> onScannerThread(block: suspend CoroutineScope.() -> T): T =
+        withContext(ScannerDispatchers.Default) {
+            val job = coroutineContext[Job]!!
+            detachableJobs.add(job)
+            try {
+                block()
+            } finally {
+                detachableJobs.remove(job)
+            }
+        }
+
     fun setImage(image: Bitmap) {
+        setImage(image, OrientationEstimator.ORIENTATION_UNDEFINED)
+    }
+
+    /**
+     * Sets the image together with the EXIF orientation tag of its source, which is used
+     * instead of estimating the orientation from the pixels.
+     */
+    fun setImage(image: Bitmap, exifOrientation: Int) {
         selectedImage = image
+        imageSource = null
+        this.exifOrientation = exifOrientation
         doWhenInitialised { initView() }
     }
 
-    private suspend fun setImageRotation() {
-        var tempBitmap = selectedImage.copy(selectedImage.config, true)
-        for (i in 1..4) {
-            val point2f = nativeClass.getPoint(tempBitmap)
-            if (point2f == null) {
-                tempBitmap = rotateBitmap(tempBitmap, (90 * i).toFloat()).first()
-            } else {
-                selectedImage = tempBitmap.copy(selectedImage.config, true)
-                break
-            }
-        }
+    /**
+     * Sets an encoded image. Detection and display work on a subsampled proxy and only the
+     * selected area is decoded at full resolution by [getCroppedImage]. The EXIF orientation
+     * is read from the source.
+     */
+    fun setImage(source: ImageSource) {
+        imageSource = source
+        exifOrientation = OrientationEstimator.ORIENTATION_UNDEFINED
+        doWhenInitialised { initView() }
     }
 
-    private fun rotateBitmap(source: Bitmap, angle: Float): Flow<Bitmap> = flow<Bitmap> {
-        val matrix = Matrix()
-        matrix.postRotate(angle)
-        emit(Bitmap.createBitmap(source, 0, 0, source.width, source.height, matrix, true))
+    private fun setImageRotation(cached: DetectionCache.Entry?) {
+        val degrees = if (cached != null) {
+            cached.rotationDegrees
+        } else if (exifOrientation != OrientationEstimator.ORIENTATION_UNDEFINED) {
+            OrientationEstimator.fromExifOrientation(exifOrientation)
+        } else {
+            orientationEstimator.estimate(selectedImage)
+        }
+        rotationDegrees = degrees
+        if (degrees != 0) {
+            selectedImage = ImageUtils.rotateBitmap(selectedImage, degrees)
+        }
     }
 
     private fun scaledBitmap(bitmap: Bitmap, width: Int, height: Int) = flow<Bitmap> {
@@ -114,16 +219,28 @@ class DocumentScannerView @JvmOverloads constructor(
     }
 
 //    original
-    private suspend fun initializeCropping() {
-        val scaledBitmap: Bitmap = scaledBitmap(
-            selectedImage,
-            holder.width,
-            holder.height
-        ).first()
+    private suspend fun initializeCropping(
+        cached: DetectionCache.Entry?,
+        onDetected: (DetectionCache.Entry) -> Unit
+    ) {
+        val width = holder.width
+        val height = holder.height
+        val scaledBitmap: Bitmap = onScannerThread {
+            scaledBitmap(selectedImage, width, height).first()
+        }
         image.setImageBitmap(scaledBitmap)
         val tempBitmap = (image.drawable as BitmapDrawable).bitmap
 
-        val pointFs = getEdgePoints(tempBitmap)
+        val contourPoints = onScannerThread {
+            if (cached != null) {
+                getCachedEdgePoints(tempBitmap, cached)
+            } else {
+                getContourEdgePoints(tempBitmap).also {
+                    onDetected(toCacheEntry(tempBitmap, it))
+                }
+            }
+        }
+        val pointFs = orderedValidEdgePoints(tempBitmap, contourPoints)
         polygonView.points = pointFs
         polygonView.visibility = VISIBLE
         val padding = resources.getDimension(R.dimen.scanPadding).toInt() * 2
@@ -134,20 +251,33 @@ class DocumentScannerView @JvmOverloads constructor(
         polygonView.setPointColor(ContextCompat.getColor(context, R.color.blue))
     }
 
-    private fun getEdgePoints(tempBitmap: Bitmap): Map<Int, PointF>? {
-        val pointFs: List<PointF> = getContourEdgePoints(tempBitmap)
-        return orderedValidEdgePoints(tempBitmap, pointFs)
+    private fun getContourEdgePoints(tempBitmap: Bitmap): List<PointF> {
+        MatScope().use { scope ->
+            val point2f = scope.track(nativeClass.getPoint(tempBitmap)) ?: return emptyList()
+            return point2f.toArray().map { PointF(it.x.toFloat(), it.y.toFloat()) }
+        }
     }
 
-    private fun getContourEdgePoints(tempBitmap: Bitmap): List<PointF> {
-        var point2f = nativeClass.getPoint(tempBitmap)
-        if (point2f == null) point2f = MatOfPoint2f()
-        val points = listOf(*point2f.toArray())
-        val result: MutableList<PointF> = ArrayList()
-        for (i in points.indices) {
-            result.add(PointF(points[i].x.toFloat(), points[i].y.toFloat()))
+    private fun getCachedEdgePoints(tempBitmap: Bitmap, cached: DetectionCache.Entry): List<PointF> {
+        val corners = cached.corners ?: return emptyList()
+        return (0 until 4).map {
+            PointF(corners[it * 2] * tempBitmap.width, corners[it * 2 + 1] * tempBitmap.height)
         }
-        return result
+    }
+
+    /**
+     * Stores the corners relative to the image size, so a cached result fits the image
+     * whatever size it is displayed at next time.
+     */
+    private fun toCacheEntry(tempBitmap: Bitmap, points: List<PointF>): DetectionCache.Entry {
+        val corners = if (points.size == 4) {
+            FloatArray(8) {
+                if (it % 2 == 0) points[it / 2].x / tempBitmap.width else points[it / 2].y / tempBitmap.height
+            }
+        } else {
+            null
+        }
+        return DetectionCache.Entry(corners, rotationDegrees, nativeClass.lastWorkingSize)
     }
 
     private fun getOutlinePoints(tempBitmap: Bitmap): Map<Int, PointF> {
@@ -169,56 +299,101 @@ class DocumentScannerView @JvmOverloads constructor(
         }
         return orderedPoints
     }
+    /**
+     * Crops and straightens the selected area on a scanner thread. Must be called from the
+     * main thread, the work is cancelled when the view is detached.
+     */
     @Throws
-    fun getCroppedImage(): Bitmap {
-        val perspectiveTransformation = PerspectiveTransformation()
+    suspend fun getCroppedImage(): Bitmap {
+        val corners = selectedCorners()
+        val source = selectedImage
+        val imageSource = imageSource
+        val degrees = rotationDegrees
+        val enhancement = enhancement
+        val enhancementListener = enhancementListener
+
+        return onScannerThread {
+            val memory = NativeMemoryMonitor.begin()
+            val perspectiveTransformation = PerspectiveTransformation(diagnosticsSink)
+            val resultBitmap = if (imageSource != null) {
+                perspectiveTransformation.cropFromSource(
+                    imageSource, corners, source.width, source.height, degrees
+                )
+            } else {
+                MatScope().use { scope ->
+                    val cornerPoints = scope.track(MatOfPoint2f(*corners))
+                    perspectiveTransformation.cropToBitmap(source, cornerPoints)
+                }
+            }
+            ensureActive()
+            emitDiagnostics(resultBitmap)
+            val enhanced = enhancement.enhance(resultBitmap, enhancementListener)
+            if (enhanced !== resultBitmap) {
+                resultBitmap.recycle()
+            }
+            NativeMemoryMonitor.end("getCroppedImage", memory)
+            enhanced
+        }
+    }
 
+    /**
+     * Crops and enhances like [getCroppedImage] and returns the page binarized and packed 1 bit
+     * per pixel, for text documents. Encode it with [BilevelEncoder] or add it to a [PdfWriter].
+     * The page is warped straight into gray, so it is never held with 4 bytes per pixel. When
+     * [enhancement] ends with a binarize stage its output is packed as it is, otherwise it is
+     * thresholded with [binarizer], or with [EnhancementPipeline.BINARIZE] when that is null.
+     * An [IntegralThreshold] streams its rows straight into the packed page.
+     */
+    suspend fun getCroppedBilevelImage(binarizer: IntegralThreshold? = null): BilevelImage {
+        val corners = selectedCorners()
+        val source = selectedImage
+        val imageSource = imageSource
+        val degrees = rotationDegrees
+        val enhancement = enhancement
+        val enhancementListener = enhancementListener
+
+        return onScannerThread {
+            val memory = NativeMemoryMonitor.begin()
+            val perspectiveTransformation = PerspectiveTransformation(diagnosticsSink)
+            val page = MatScope().use { scope ->
+                val gray = scope.track(
+                    if (imageSource != null) {
+                        perspectiveTransformation.cropGrayFromSource(
+                            imageSource, corners, source.width, source.height, degrees
+                        )
+                    } else {
+                        val cornerPoints = scope.track(MatOfPoint2f(*corners))
+                        perspectiveTransformation.cropToGray(source, cornerPoints)
+                    }
+                )
+                ensureActive()
+                binarize(scope.detach(gray), enhancement, enhancementListener, binarizer)
+            }
+            NativeMemoryMonitor.end("getCroppedBilevelImage", memory)
+            page
+        }
+    }
+
+    /**
+     * Corners of the polygon on [selectedImage], in the order [PolygonView] numbers them.
+     */
+    private fun selectedCorners(): Array<Point> {
         val points: Map<Int, PointF> = polygonView.points
         val xRatio: Float = selectedImage.width.toFloat() / image.width
         val yRatio: Float = selectedImage.height.toFloat() / image.height
-        val x1 = points[0]!!.x * xRatio
-        val x2 = points[1]!!.x * xRatio
-        val x3 = points[2]!!.x * xRatio
-        val x4 = points[3]!!.x * xRatio
-        val y1 = points[0]!!.y * yRatio
-        val y2 = points[1]!!.y * yRatio
-        val y3 = points[2]!!.y * yRatio
-        val y4 = points[3]!!.y * yRatio
-
-        val point1 = Point(x1.toDouble(), y1.toDouble())
-        val point2 = Point(x2.toDouble(), y2.toDouble())
-        val point3 = Point(x3.toDouble(), y3.toDouble())
-        val point4 = Point(x4.toDouble(), y4.toDouble())
-        val cornerPoints = MatOfPoint2f(point1, point2, point3, point4)
-
-        val selectedImageMat = Mat(selectedImage.width, selectedImage.height, CvType.CV_8UC1)
-        Utils.bitmapToMat(selectedImage, selectedImageMat)
-
-        val resultMat = perspectiveTransformation.transform(selectedImageMat, cornerPoints)
-
-        val resultBitmap = Bitmap.createBitmap(resultMat.cols(), resultMat.rows(), Bitmap.Config.ARGB_8888)
-        Utils.matToBitmap(resultMat, resultBitmap)
-
-        val grayMat = Mat()
-        Imgproc.cvtColor(resultMat, grayMat, Imgproc.COLOR_RGB2GRAY)
-
-        Imgproc.adaptiveThreshold(grayMat, grayMat, 255.0,
-            Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
-            Imgproc.THRESH_BINARY, 31, 7.0)
-
-        val finalBitmap = Bitmap.createBitmap(grayMat.cols(), grayMat.rows(), Bitmap.Config.ARGB_8888)
-        Utils.matToBitmap(grayMat, finalBitmap)
-
-        val finalMat = Mat()
-        Utils.bitmapToMat(finalBitmap, finalMat)
-        nativeClass.saveImage(finalMat, "/final_norm.jpg")
-    nativeClass.saveImage(resultMat, "/final.jpg")
+        return Array(4) { Point((points[it]!!.x * xRatio).toDouble(), (points[it]!!.y * yRatio).toDouble()) }
+    }
 
-        resultMat.release()
-        grayMat.release()
-        selectedImageMat.release()
+    private fun emitDiagnostics(resultBitmap: Bitmap) {
+        if (diagnosticsSink.isEnabled) MatScope().use { scope ->
+            val resultMat = scope.track(ImageUtils.bitmapToMat(resultBitmap))
+            val thresholdMat = scope.track(
+                EnhancementPipeline.BINARIZE.apply(resultMat, ScannerDispatchers.tilePool, null)
+            )
 
-        return resultBitmap
+            diagnosticsSink.onImage("final_norm.jpg", thresholdMat)
+            diagnosticsSink.onImage("final.jpg", resultMat)
+        }
     }
 
     private fun doWhenInitialised(function: () -> Unit) {
@@ -233,4 +408,17 @@ class DocumentScannerView @JvmOverloads constructor(
     fun setOnLoadListener(listener: OnLoadListener?) {
         onLoad = listener
     }
+
+    override fun onDetachedFromWindow() {
+        super.onDetachedFromWindow()
+        scanJob?.cancel()
+        synchronized(detachableJobs) {
+            detachableJobs.forEach { it.cancel() }
+        }
+        nativeClass.release()
+    }
+
+    companion object {
+        private val defaultDetectionCache = DetectionCache()
+    }
 }
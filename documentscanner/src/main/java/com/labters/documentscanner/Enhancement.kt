@@ -0,0 +1,24 @@
+package com.labters.documentscanner
+
+import android.graphics.Bitmap
+import com.labters.documentscanner.helpers.ImageUtils
+import com.labters.documentscanner.helpers.MatScope
+import com.labters.documentscanner.libraries.EnhancementPipeline
+
+/**
+ * Runs the pipeline on [page] with thresholding split on [ScannerDispatchers.tilePool] and
+ * returns the result as a new ARGB_8888 Bitmap. [page] itself is returned, untouched, when the
+ * pipeline has no stages. Pass it to [BatchScanner] as `enhancer = pipeline::enhance`.
+ */
+@JvmOverloads
+fun EnhancementPipeline.enhance(page: Bitmap, listener: EnhancementPipeline.StageListener? = null): Bitmap {
+    if (isEmpty) {
+        return page
+    }
+    MatScope().use { scope ->
+        // The pipeline takes over the RGBA copy as one of its two buffers.
+        val rgba = ImageUtils.bitmapToMat(page)
+        val result = scope.track(applyAndRelease(rgba, ScannerDispatchers.tilePool, listener))
+        return ImageUtils.matToBitmap(result)
+    }
+}
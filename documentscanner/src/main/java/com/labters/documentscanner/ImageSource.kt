@@ -0,0 +1,113 @@
+package com.labters.documentscanner
+
+import android.content.ContentResolver
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.BitmapRegionDecoder
+import android.graphics.Rect
+import android.net.Uri
+import com.labters.documentscanner.libraries.DetectionResolution
+import androidx.exifinterface.media.ExifInterface
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
+import java.io.InputStream
+import kotlin.math.max
+
+/**
+ * Encoded image that is decoded only as far as needed: a subsampled proxy for detection and
+ * display, and the full resolution pixels of the cropped area once the page is cropped.
+ *
+ * [open] is called for every read and must return a fresh stream of the encoded file. Sizes
+ * and coordinates are those of the stored pixels, before the EXIF orientation is applied.
+ */
+class ImageSource(private val open: () -> InputStream) {
+
+    private val bounds: BitmapFactory.Options by lazy {
+        val options = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        open().use { BitmapFactory.decodeStream(it, null, options) }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw IOException("Cannot decode image bounds.")
+        }
+        options
+    }
+
+    val width: Int
+        get() = bounds.outWidth
+
+    val height: Int
+        get() = bounds.outHeight
+
+    /**
+     * EXIF orientation tag, [ExifInterface.ORIENTATION_UNDEFINED] when there is none.
+     */
+    val exifOrientation: Int by lazy {
+        try {
+            open().use {
+                ExifInterface(it).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED)
+            }
+        } catch (e: IOException) {
+            ExifInterface.ORIENTATION_UNDEFINED
+        }
+    }
+
+    /**
+     * Decodes the image with the largest power of two subsampling that keeps its longer side
+     * at least [minSize] pixels, so the full resolution Bitmap never exists.
+     */
+    @Throws(IOException::class)
+    fun decodeSampled(minSize: Int): Bitmap {
+        var sampleSize = 1
+        while (max(width, height) / (sampleSize * 2) >= minSize) {
+            sampleSize *= 2
+        }
+        val options = BitmapFactory.Options().apply { inSampleSize = sampleSize }
+        return open().use { BitmapFactory.decodeStream(it, null, options) }
+            ?: throw IOException("Cannot decode image.")
+    }
+
+    /**
+     * Decodes [region] at full resolution. Formats the region decoder does not support are
+     * decoded whole and cut.
+     */
+    @Suppress("DEPRECATION")
+    @Throws(IOException::class)
+    fun decodeRegion(region: Rect): Bitmap {
+        require(region.left >= 0 && region.top >= 0 && region.right <= width && region.bottom <= height && !region.isEmpty) {
+            "Region $region is outside the ${width}x$height image."
+        }
+        val decoder = try {
+            open().use { BitmapRegionDecoder.newInstance(it, false) }
+        } catch (e: IOException) {
+            null
+        }
+        if (decoder != null) {
+            try {
+                return decoder.decodeRegion(region, null)
+            } finally {
+                decoder.recycle()
+            }
+        }
+        val full = open().use { BitmapFactory.decodeStream(it) } ?: throw IOException("Cannot decode image.")
+        val cut = Bitmap.createBitmap(full, region.left, region.top, region.width(), region.height())
+        if (cut !== full) {
+            full.recycle()
+        }
+        return cut
+    }
+
+    companion object {
+        /**
+         * Longer side of the proxy the scanner detects on, the same size detection downscales to.
+         */
+        const val DEFAULT_PROXY_SIZE = DetectionResolution.DEFAULT_SIZE
+
+        @JvmStatic
+        fun fromFile(file: File) = ImageSource { FileInputStream(file) }
+
+        @JvmStatic
+        fun fromUri(contentResolver: ContentResolver, uri: Uri) = ImageSource {
+            contentResolver.openInputStream(uri) ?: throw IOException("Cannot open $uri")
+        }
+    }
+}
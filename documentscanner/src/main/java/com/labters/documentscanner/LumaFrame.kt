@@ -0,0 +1,22 @@
+package com.labters.documentscanner
+
+/**
+ * Luma (Y) plane of a camera frame, for example plane 0 of a YUV_420_888 image.
+ *
+ * Rows are [rowStride] bytes apart, only the first [width] bytes of each row are pixels. The
+ * frame owns [data], copy the plane out of the camera buffer before emitting it because stale
+ * frames are dropped without notice.
+ */
+class LumaFrame(
+    val data: ByteArray,
+    val width: Int,
+    val height: Int,
+    val rowStride: Int = width,
+    val timestampNanos: Long = 0L
+) {
+    init {
+        require(width > 0 && height > 0) { "Frame size must be positive." }
+        require(rowStride >= width) { "rowStride must be at least width." }
+        require(data.size >= rowStride * (height - 1) + width) { "data is smaller than the frame." }
+    }
+}
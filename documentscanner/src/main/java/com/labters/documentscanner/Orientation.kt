@@ -0,0 +1,29 @@
+package com.labters.documentscanner
+
+import android.graphics.Bitmap
+import com.labters.documentscanner.helpers.ImageUtils
+import com.labters.documentscanner.helpers.MatScope
+import com.labters.documentscanner.libraries.OrientationEstimator
+import org.opencv.imgproc.Imgproc
+
+/**
+ * Estimates the clockwise rotation, 0, 90 or 270 degrees, that makes the text of [bitmap]
+ * upright, see [OrientationEstimator.estimate]. The analysis runs on a copy scaled down to
+ * [OrientationEstimator.ANALYSIS_SIZE] on its longer side.
+ */
+fun OrientationEstimator.estimate(bitmap: Bitmap): Int {
+    val scale = minOf(1.0, OrientationEstimator.ANALYSIS_SIZE.toDouble() / maxOf(bitmap.width, bitmap.height))
+    val width = maxOf(1, Math.round(bitmap.width * scale).toInt())
+    val height = maxOf(1, Math.round(bitmap.height * scale).toInt())
+    val small = Bitmap.createScaledBitmap(bitmap, width, height, true)
+    MatScope().use { scope ->
+        val rgba = scope.track(ImageUtils.bitmapToMat(small))
+        if (small != bitmap) {
+            small.recycle()
+        }
+        val gray = scope.newMat()
+        Imgproc.cvtColor(rgba, gray, Imgproc.COLOR_RGBA2GRAY)
+        scope.free(rgba)
+        return estimate(gray)
+    }
+}
@@ -0,0 +1,55 @@
+package com.labters.documentscanner
+
+import android.graphics.Bitmap
+import com.labters.documentscanner.libraries.EnhancementPipeline
+import com.labters.documentscanner.libraries.IntegralThreshold
+import com.labters.documentscanner.libraries.PdfWriter
+import java.io.File
+import java.io.IOException
+
+/**
+ * Last stage of a batch scan, receives the finished pages in order. The Bitmap is recycled
+ * once [encode] returns, so keep the encoded bytes rather than the Bitmap.
+ */
+fun interface PageEncoder {
+
+    @Throws(IOException::class)
+    fun encode(index: Int, page: Bitmap)
+
+    companion object {
+        /**
+         * Writes every page to [directory] as page-001.jpg, page-002.jpg and so on.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun jpeg(directory: File, quality: Int = 90) = PageEncoder { index, page ->
+            if (!directory.isDirectory && !directory.mkdirs()) {
+                throw IOException("Cannot create $directory")
+            }
+            File(directory, "page-%03d.jpg".format(index + 1)).outputStream().use {
+                page.compress(Bitmap.CompressFormat.JPEG, quality, it)
+            }
+        }
+
+        /**
+         * Appends every page to [writer] as a JPEG page, close the writer after the scan to
+         * finish the document.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun pdf(writer: PdfWriter, quality: Int = 90) = PageEncoder { _, page ->
+            writer.addJpegPage(page, quality)
+        }
+
+        /**
+         * Binarizes every page and appends it to [writer] as a CCITT Group 4 page, the
+         * smallest output for text documents. Pages are thresholded with [binarizer], or with
+         * [EnhancementPipeline.BINARIZE] when it is null.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun bilevelPdf(writer: PdfWriter, binarizer: IntegralThreshold? = null) = PageEncoder { _, page ->
+            writer.addBilevelPage(binarize(page, binarizer))
+        }
+    }
+}
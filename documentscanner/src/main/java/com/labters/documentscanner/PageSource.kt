@@ -0,0 +1,31 @@
+package com.labters.documentscanner
+
+import android.content.ContentResolver
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.net.Uri
+import java.io.File
+import java.io.IOException
+
+/**
+ * One page of a batch scan. [decode] is called once, on a scanner thread, and the returned
+ * Bitmap is owned and recycled by the [BatchScanner].
+ */
+fun interface PageSource {
+
+    @Throws(IOException::class)
+    fun decode(): Bitmap
+
+    companion object {
+        @JvmStatic
+        fun fromFile(file: File) = PageSource {
+            BitmapFactory.decodeFile(file.path) ?: throw IOException("Cannot decode $file")
+        }
+
+        @JvmStatic
+        fun fromUri(contentResolver: ContentResolver, uri: Uri) = PageSource {
+            contentResolver.openInputStream(uri)?.use { BitmapFactory.decodeStream(it) }
+                ?: throw IOException("Cannot decode $uri")
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.labters.documentscanner
+
+import android.graphics.Bitmap
+import com.labters.documentscanner.libraries.PdfWriter
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+
+/**
+ * Compresses [page] to a JPEG of the given [quality] and adds it as a color page. Only the
+ * compressed bytes of this one page are held while it is written.
+ */
+@Throws(IOException::class)
+fun PdfWriter.addJpegPage(page: Bitmap, quality: Int = 90) {
+    val jpeg = JpegBuffer()
+    if (!page.compress(Bitmap.CompressFormat.JPEG, quality, jpeg)) {
+        throw IOException("Cannot compress the page")
+    }
+    jpeg.addTo(this, page.width, page.height)
+}
+
+/**
+ * Hands its buffer to the writer without the copy [ByteArrayOutputStream.toByteArray] makes.
+ */
+private class JpegBuffer : ByteArrayOutputStream(1 shl 16) {
+    fun addTo(writer: PdfWriter, width: Int, height: Int) {
+        writer.addJpegPage(buf, 0, count, width, height, 3)
+    }
+}
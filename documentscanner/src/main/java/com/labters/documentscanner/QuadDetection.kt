@@ -0,0 +1,17 @@
+package com.labters.documentscanner
+
+/**
+ * Result of detecting a document in one frame.
+ *
+ * [corners] holds x0, y0, x1, y1, x2, y2, x3, y3 in frame pixel coordinates, or is `null`
+ * when no document was found in the frame.
+ */
+class QuadDetection(
+    val timestampNanos: Long,
+    val frameWidth: Int,
+    val frameHeight: Int,
+    val corners: FloatArray?
+) {
+    val isFound: Boolean
+        get() = corners != null
+}
@@ -0,0 +1,39 @@
+package com.labters.documentscanner
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.asCoroutineDispatcher
+import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Dispatchers owned by the library so detection and cropping never run on the main thread
+ * and never compete with the app for the shared [kotlinx.coroutines.Dispatchers.Default] pool.
+ */
+object ScannerDispatchers {
+
+    /**
+     * Number of scanner threads, one per available core.
+     */
+    val threadCount: Int = Runtime.getRuntime().availableProcessors().coerceAtLeast(1)
+
+    val Default: CoroutineDispatcher by lazy {
+        Executors.newFixedThreadPool(threadCount, ScannerThreadFactory()).asCoroutineDispatcher()
+    }
+
+    /**
+     * Fork-join pool the tiled warp and threshold split their tiles on.
+     */
+    @JvmStatic
+    val tilePool: ForkJoinPool by lazy { ForkJoinPool(threadCount) }
+
+    private class ScannerThreadFactory : ThreadFactory {
+        private val count = AtomicInteger()
+
+        override fun newThread(runnable: Runnable): Thread =
+            Thread(runnable, "DocumentScanner-${count.incrementAndGet()}").apply {
+                isDaemon = true
+            }
+    }
+}
@@ -13,23 +13,38 @@ import android.graphics.Bitmap;
 import android.graphics.Matrix;
 
 import org.opencv.android.Utils;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.Scalar;
 
 public class ImageUtils {
 
     public static Bitmap rotateBitmap(Bitmap original, int angle) {
         Matrix matrix = new Matrix();
-        matrix.postRotate(90);
+        matrix.postRotate(angle);
         return Bitmap.createBitmap(original, 0, 0, original.getWidth(), original.getHeight(), matrix, true);
     }
 
     public static Mat bitmapToMat(Bitmap bitmap) {
-        Mat mat = new Mat(bitmap.getHeight(), bitmap.getWidth(), CvType.CV_8U, new Scalar(4));
-        Bitmap bitmap32 = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-        Utils.bitmapToMat(bitmap32, mat);
-        return mat;
+        return bitmapToMat(bitmap, new Mat());
+    }
+
+    /**
+     * Converts the bitmap into a CV_8UC4 RGBA Mat written into {@code dst}.
+     * <p>
+     * ARGB_8888 and RGB_565 bitmaps are read directly, so the only allocation is the pixel
+     * buffer of {@code dst} and even that is skipped when {@code dst} already has the bitmap's
+     * size and CV_8UC4 type. Other configs (ALPHA_8, RGBA_F16, HARDWARE) go through one
+     * temporary ARGB_8888 copy that is recycled before returning.
+     */
+    public static Mat bitmapToMat(Bitmap bitmap, Mat dst) {
+        Bitmap.Config config = bitmap.getConfig();
+        if (config == Bitmap.Config.ARGB_8888 || config == Bitmap.Config.RGB_565) {
+            Utils.bitmapToMat(bitmap, dst);
+        } else {
+            Bitmap bitmap32 = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            Utils.bitmapToMat(bitmap32, dst);
+            bitmap32.recycle();
+        }
+        return dst;
     }
 
     public static Bitmap matToBitmap(Mat mat) {
@@ -0,0 +1,119 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.helpers;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reusable workspace of native {@link Mat} buffers keyed by rows, cols and type.
+ * <p>
+ * Detection borrows its intermediate Mats with {@link #acquire(int, int, int)} and hands them
+ * back with {@link #recycle(Mat)}, so scanning the same resolution over and over does not
+ * allocate native memory once the pool is warm. Borrowed Mats have undefined content.
+ * At most {@link #getMaxPooled()} idle Mats are kept, anything above the cap is released
+ * immediately. Call {@link #release()} to free every idle Mat.
+ */
+public class MatPool {
+
+    public static final int DEFAULT_MAX_POOLED = 16;
+
+    private final Map<Long, ArrayDeque<Mat>> idleMats = new HashMap<>();
+    private int maxPooled;
+    private int pooledCount;
+
+    public MatPool() {
+        this(DEFAULT_MAX_POOLED);
+    }
+
+    public MatPool(int maxPooled) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("maxPooled must not be negative.");
+        }
+        this.maxPooled = maxPooled;
+    }
+
+    public Mat acquire(Size size, int type) {
+        return acquire((int) size.height, (int) size.width, type);
+    }
+
+    public synchronized Mat acquire(int rows, int cols, int type) {
+        ArrayDeque<Mat> mats = idleMats.get(key(rows, cols, type));
+        if (mats != null && !mats.isEmpty()) {
+            pooledCount--;
+            return mats.pop();
+        }
+        return new Mat(rows, cols, type);
+    }
+
+    public synchronized void recycle(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        if (mat.empty() || pooledCount >= maxPooled) {
+            mat.release();
+            return;
+        }
+        long key = key(mat.rows(), mat.cols(), mat.type());
+        ArrayDeque<Mat> mats = idleMats.get(key);
+        if (mats == null) {
+            mats = new ArrayDeque<>();
+            idleMats.put(key, mats);
+        }
+        mats.push(mat);
+        pooledCount++;
+    }
+
+    public synchronized int getMaxPooled() {
+        return maxPooled;
+    }
+
+    public synchronized void setMaxPooled(int maxPooled) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("maxPooled must not be negative.");
+        }
+        this.maxPooled = maxPooled;
+        Iterator<ArrayDeque<Mat>> iterator = idleMats.values().iterator();
+        while (pooledCount > maxPooled && iterator.hasNext()) {
+            ArrayDeque<Mat> mats = iterator.next();
+            while (pooledCount > maxPooled && !mats.isEmpty()) {
+                mats.pop().release();
+                pooledCount--;
+            }
+            if (mats.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized int getPooledCount() {
+        return pooledCount;
+    }
+
+    public synchronized void release() {
+        for (ArrayDeque<Mat> mats : idleMats.values()) {
+            for (Mat mat : mats) {
+                mat.release();
+            }
+        }
+        idleMats.clear();
+        pooledCount = 0;
+    }
+
+    private static long key(int rows, int cols, int type) {
+        return ((long) rows << 40) | ((long) cols << 16) | (type & 0xFFFF);
+    }
+
+}
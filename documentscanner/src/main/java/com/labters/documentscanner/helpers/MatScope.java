@@ -0,0 +1,188 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.helpers;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Owner of the Mats one operation creates, all released when the scope is closed.
+ * <p>
+ * Open it with try-with-resources and pass every Mat through {@link #track(Mat)} or create it
+ * with one of the factory methods, so native memory is freed even when the operation throws
+ * instead of waiting for the finalizer. A Mat that outlives the scope, such as a returned
+ * result, is handed over with {@link #detach(Mat)}. Mats borrowed with
+ * {@link #acquire(int, int, int)} go back to the pool instead of being released. A scope is
+ * meant to be used by one thread.
+ */
+public final class MatScope implements AutoCloseable {
+
+    private final MatPool pool;
+    private final List<Mat> owned = new ArrayList<>();
+    private final List<Mat> borrowed = new ArrayList<>();
+    private boolean closed;
+
+    public MatScope() {
+        this(null);
+    }
+
+    /**
+     * Scope that can borrow Mats from {@code pool}, which may be {@code null}.
+     */
+    public MatScope(MatPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Takes ownership of {@code mat} and returns it. {@code null} is returned as is.
+     */
+    public <T extends Mat> T track(T mat) {
+        checkOpen();
+        if (mat != null) {
+            owned.add(mat);
+        }
+        return mat;
+    }
+
+    public <T extends Mat> void trackAll(Collection<T> mats) {
+        for (T mat : mats) {
+            track(mat);
+        }
+    }
+
+    public Mat newMat() {
+        return track(new Mat());
+    }
+
+    public Mat newMat(int rows, int cols, int type) {
+        return track(new Mat(rows, cols, type));
+    }
+
+    public MatOfPoint2f newMatOfPoint2f() {
+        return track(new MatOfPoint2f());
+    }
+
+    /**
+     * Borrows a Mat from the pool this scope was created with, it is recycled on close.
+     */
+    public Mat acquire(int rows, int cols, int type) {
+        checkOpen();
+        if (pool == null) {
+            throw new IllegalStateException("This scope has no MatPool.");
+        }
+        return trackPooled(pool.acquire(rows, cols, type));
+    }
+
+    public Mat acquire(Size size, int type) {
+        return acquire((int) size.height, (int) size.width, type);
+    }
+
+    /**
+     * Takes a Mat that was borrowed from the pool of this scope elsewhere, for example by a
+     * method that hands its result over, it is recycled on close.
+     */
+    public Mat trackPooled(Mat mat) {
+        checkOpen();
+        if (pool == null) {
+            throw new IllegalStateException("This scope has no MatPool.");
+        }
+        borrowed.add(mat);
+        return mat;
+    }
+
+    /**
+     * Releases or recycles {@code mat} now instead of on close, to lower the peak memory of
+     * long operations.
+     */
+    public void free(Mat mat) {
+        if (remove(borrowed, mat)) {
+            pool.recycle(mat);
+        } else if (remove(owned, mat)) {
+            mat.release();
+        }
+    }
+
+    /**
+     * Stops tracking {@code mat} so it survives the scope, the caller now owns it. Borrowed Mats
+     * can not be detached.
+     */
+    public <T extends Mat> T detach(T mat) {
+        if (mat != null && !remove(owned, mat)) {
+            throw new IllegalArgumentException("The Mat is not owned by this scope.");
+        }
+        return mat;
+    }
+
+    /**
+     * Number of Mats the scope currently owns or borrows.
+     */
+    public int size() {
+        return owned.size() + borrowed.size();
+    }
+
+    /**
+     * Native bytes held by the Mats the scope currently owns or borrows. Submats count the
+     * bytes they view, not the bytes of their parent.
+     */
+    public long getTrackedBytes() {
+        long bytes = 0;
+        for (Mat mat : owned) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        for (Mat mat : borrowed) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Releases the owned Mats, newest first, and hands the borrowed ones back to the pool.
+     * Closing twice does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int i = owned.size() - 1; i >= 0; i--) {
+            owned.get(i).release();
+        }
+        for (int i = borrowed.size() - 1; i >= 0; i--) {
+            pool.recycle(borrowed.get(i));
+        }
+        owned.clear();
+        borrowed.clear();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The scope is closed.");
+        }
+    }
+
+    /**
+     * Removes {@code mat} by identity, Mat does not override equals.
+     */
+    private static boolean remove(List<Mat> mats, Mat mat) {
+        for (int i = mats.size() - 1; i >= 0; i--) {
+            if (mats.get(i) == mat) {
+                mats.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+}
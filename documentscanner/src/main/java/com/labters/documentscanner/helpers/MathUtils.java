@@ -14,9 +14,6 @@ import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class MathUtils {
 
     public static MatOfPoint toMatOfPointInt(MatOfPoint2f mat) {
@@ -40,15 +37,39 @@ public class MathUtils {
     }
 
     public static MatOfPoint2f scaleRectangle(MatOfPoint2f original, double scale) {
-        List<Point> originalPoints = original.toList();
-        List<Point> resultPoints = new ArrayList<Point>();
+        float[] points = new float[(int) original.total() * 2];
+        original.get(0, 0, points);
+        for (int i = 0; i < points.length; i++) {
+            points[i] *= scale;
+        }
+
+        MatOfPoint2f result = new MatOfPoint2f();
+        result.alloc(points.length / 2);
+        result.put(0, 0, points);
+        return result;
+    }
 
-        for (Point point : originalPoints) {
-            resultPoints.add(new Point(point.x * scale, point.y * scale));
+    /**
+     * Reads the four corners of {@code mat} with a single JNI call.
+     */
+    public static Quad toQuad(MatOfPoint2f mat) {
+        if (mat.total() != 4) {
+            throw new IllegalArgumentException("A quad needs exactly 4 corners, got " + mat.total() + ".");
         }
+        float[] points = new float[8];
+        mat.get(0, 0, points);
+        return new Quad().set(points);
+    }
 
+    public static MatOfPoint2f toMatOfPoint2f(Quad quad) {
+        float[] points = new float[8];
+        for (int i = 0; i < 4; i++) {
+            points[i * 2] = (float) quad.getX(i);
+            points[i * 2 + 1] = (float) quad.getY(i);
+        }
         MatOfPoint2f result = new MatOfPoint2f();
-        result.fromList(resultPoints);
+        result.alloc(4);
+        result.put(0, 0, points);
         return result;
     }
 
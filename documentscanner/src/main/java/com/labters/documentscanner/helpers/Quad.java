@@ -0,0 +1,271 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.helpers;
+
+import org.opencv.core.Point;
+
+/**
+ * Quadrilateral stored as x0, y0, x1, y1, x2, y2, x3, y3 in one {@code double[8]}.
+ * <p>
+ * The geometry detection and cropping need on four corners is plain arithmetic, done here in
+ * Java without Mats, boxed points or JNI calls. Operations work in place and allocate nothing
+ * after construction, except {@link #getPoint(int)} and {@link #toPoints()}. Nothing in this
+ * class needs the OpenCV native library, {@link Point} is a plain Java class. Use
+ * {@link MathUtils#toQuad(org.opencv.core.MatOfPoint2f)} and
+ * {@link MathUtils#toMatOfPoint2f(Quad)} to convert from and to Mats.
+ */
+public final class Quad {
+
+    public static final int TOP_LEFT = 0;
+    public static final int TOP_RIGHT = 1;
+    public static final int BOTTOM_RIGHT = 2;
+    public static final int BOTTOM_LEFT = 3;
+
+    private static final int[] POLYGON_VIEW_CORNERS = {TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT, BOTTOM_RIGHT};
+
+    private final double[] coordinates = new double[8];
+    private final double[] scratch = new double[8];
+    private final double[] angles = new double[4];
+
+    public Quad() {
+    }
+
+    /**
+     * Quad with the corners x0, y0, x1, y1, x2, y2, x3, y3.
+     */
+    public Quad(double... coordinates) {
+        set(coordinates);
+    }
+
+    /**
+     * Corner of a sorted quad that {@code PolygonView} shows as point {@code index}: 0 top
+     * left, 1 top right, 2 bottom left and 3 bottom right.
+     */
+    public static int polygonViewCorner(int index) {
+        return POLYGON_VIEW_CORNERS[index];
+    }
+
+    public static Quad fromPoints(Point[] points) {
+        if (points.length != 4) {
+            throw new IllegalArgumentException("A quad needs exactly 4 corners.");
+        }
+        Quad quad = new Quad();
+        for (int i = 0; i < 4; i++) {
+            quad.set(i, points[i].x, points[i].y);
+        }
+        return quad;
+    }
+
+    public Quad set(double... coordinates) {
+        if (coordinates.length != 8) {
+            throw new IllegalArgumentException("A quad needs exactly 8 coordinates.");
+        }
+        System.arraycopy(coordinates, 0, this.coordinates, 0, 8);
+        return this;
+    }
+
+    public Quad set(float[] coordinates) {
+        if (coordinates.length != 8) {
+            throw new IllegalArgumentException("A quad needs exactly 8 coordinates.");
+        }
+        for (int i = 0; i < 8; i++) {
+            this.coordinates[i] = coordinates[i];
+        }
+        return this;
+    }
+
+    public Quad set(Quad other) {
+        System.arraycopy(other.coordinates, 0, coordinates, 0, 8);
+        return this;
+    }
+
+    public Quad set(int corner, double x, double y) {
+        coordinates[corner * 2] = x;
+        coordinates[corner * 2 + 1] = y;
+        return this;
+    }
+
+    public double getX(int corner) {
+        return coordinates[corner * 2];
+    }
+
+    public double getY(int corner) {
+        return coordinates[corner * 2 + 1];
+    }
+
+    public Point getPoint(int corner) {
+        return new Point(getX(corner), getY(corner));
+    }
+
+    public Point[] toPoints() {
+        return new Point[]{getPoint(0), getPoint(1), getPoint(2), getPoint(3)};
+    }
+
+    /**
+     * Copies the coordinates into {@code dst}, which must hold at least 8 values.
+     */
+    public void getCoordinates(double[] dst) {
+        System.arraycopy(coordinates, 0, dst, 0, 8);
+    }
+
+    public double getCenterX() {
+        return (coordinates[0] + coordinates[2] + coordinates[4] + coordinates[6]) / 4;
+    }
+
+    public double getCenterY() {
+        return (coordinates[1] + coordinates[3] + coordinates[5] + coordinates[7]) / 4;
+    }
+
+    /**
+     * Area of the polygon through the corners in their order, by the shoelace formula.
+     */
+    public double getArea() {
+        double doubleArea = 0;
+        for (int i = 0; i < 4; i++) {
+            int next = (i + 1) & 3;
+            doubleArea += getX(i) * getY(next) - getX(next) * getY(i);
+        }
+        return Math.abs(doubleArea) / 2;
+    }
+
+    /**
+     * True when every turn along the corners goes the same way and no three consecutive
+     * corners are collinear.
+     */
+    public boolean isConvex() {
+        int sign = 0;
+        for (int i = 0; i < 4; i++) {
+            double cross = cross(i, (i + 1) & 3, (i + 2) & 3);
+            if (cross == 0) {
+                return false;
+            }
+            int turn = cross > 0 ? 1 : -1;
+            if (sign != 0 && turn != sign) {
+                return false;
+            }
+            sign = turn;
+        }
+        return true;
+    }
+
+    /**
+     * Cosine of the angle at {@code corner} between the edges to its two neighbours, 0 for a
+     * right angle. Same as {@link MathUtils#angle(Point, Point, Point)}.
+     */
+    public double getCosine(int corner) {
+        int previous = (corner + 3) & 3;
+        int next = (corner + 1) & 3;
+        double dx1 = getX(previous) - getX(corner);
+        double dy1 = getY(previous) - getY(corner);
+        double dx2 = getX(next) - getX(corner);
+        double dy2 = getY(next) - getY(corner);
+        return (dx1 * dx2 + dy1 * dy2) / Math.sqrt((dx1 * dx1 + dy1 * dy1) * (dx2 * dx2 + dy2 * dy2) + 1e-10);
+    }
+
+    public Quad scale(double factor) {
+        for (int i = 0; i < 8; i++) {
+            coordinates[i] *= factor;
+        }
+        return this;
+    }
+
+    public Quad translate(double dx, double dy) {
+        for (int i = 0; i < 8; i += 2) {
+            coordinates[i] += dx;
+            coordinates[i + 1] += dy;
+        }
+        return this;
+    }
+
+    /**
+     * Reorders the corners to {@link #TOP_LEFT}, {@link #TOP_RIGHT}, {@link #BOTTOM_RIGHT},
+     * {@link #BOTTOM_LEFT}, for any rotation.
+     * <p>
+     * The corners are sorted clockwise by their angle about the center, then the sequence is
+     * rotated to start at the edge that points most to the right, which is the top edge. A
+     * page rotated by less than 45 degrees either way keeps its own top left corner first,
+     * whatever its aspect ratio. Any four points get an order that does not depend on the
+     * order they came in, and a convex quad stays convex.
+     */
+    public Quad sortCorners() {
+        double centerX = getCenterX();
+        double centerY = getCenterY();
+        // With y pointing down, growing angles go clockwise on screen.
+        for (int i = 0; i < 4; i++) {
+            angles[i] = Math.atan2(getY(i) - centerY, getX(i) - centerX);
+        }
+        for (int i = 0; i < 4; i++) {
+            int rank = 0;
+            for (int j = 0; j < 4; j++) {
+                if (angles[j] < angles[i] || (angles[j] == angles[i] && j < i)) {
+                    rank++;
+                }
+            }
+            scratch[rank * 2] = getX(i);
+            scratch[rank * 2 + 1] = getY(i);
+        }
+
+        int first = 0;
+        double mostRight = -Double.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int next = (i + 1) & 3;
+            double dx = scratch[next * 2] - scratch[i * 2];
+            double dy = scratch[next * 2 + 1] - scratch[i * 2 + 1];
+            double length = Math.sqrt(dx * dx + dy * dy);
+            double cosine = length > 0 ? dx / length : -1;
+            if (cosine > mostRight) {
+                mostRight = cosine;
+                first = i;
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            int from = (first + i) & 3;
+            coordinates[i * 2] = scratch[from * 2];
+            coordinates[i * 2 + 1] = scratch[from * 2 + 1];
+        }
+        return this;
+    }
+
+    /**
+     * Mean length of the top and bottom edges of a quad sorted by {@link #sortCorners()}.
+     */
+    public double getAverageWidth() {
+        return (getDistance(0, 1) + getDistance(2, 3)) / 2;
+    }
+
+    /**
+     * Mean length of the left and right edges of a quad sorted by {@link #sortCorners()}.
+     */
+    public double getAverageHeight() {
+        return (getDistance(1, 2) + getDistance(3, 0)) / 2;
+    }
+
+    public double getDistance(int corner1, int corner2) {
+        double dx = getX(corner2) - getX(corner1);
+        double dy = getY(corner2) - getY(corner1);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private double cross(int a, int b, int c) {
+        return (getX(b) - getX(a)) * (getY(c) - getY(b)) - (getY(b) - getY(a)) * (getX(c) - getX(b));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Quad[");
+        for (int i = 0; i < 4; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append('(').append(getX(i)).append(", ").append(getY(i)).append(')');
+        }
+        return builder.append(']').toString();
+    }
+}
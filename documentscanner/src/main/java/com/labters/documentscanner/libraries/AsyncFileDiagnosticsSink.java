@@ -0,0 +1,129 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DiagnosticsSink} that encodes images into a directory on a background thread.
+ * <p>
+ * Images are copied into a bounded queue, when the writer falls behind new images are
+ * dropped instead of blocking the scan. Call {@link #close()} to stop the writer thread, images
+ * still queued at that point are dropped without being written.
+ */
+public class AsyncFileDiagnosticsSink implements DiagnosticsSink, Closeable {
+
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private final File directory;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+    private final AtomicInteger droppedCount = new AtomicInteger();
+
+    public AsyncFileDiagnosticsSink(File directory) {
+        this(directory, DEFAULT_CAPACITY);
+    }
+
+    public AsyncFileDiagnosticsSink(File directory, int capacity) {
+        this.directory = directory;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "DocumentScannerDiagnostics");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !closed;
+    }
+
+    @Override
+    public void onImage(String name, Mat image) {
+        if (closed || image == null || image.empty()) {
+            return;
+        }
+        Entry entry = new Entry(name, image.clone());
+        if (!queue.offer(entry)) {
+            entry.image.release();
+            droppedCount.incrementAndGet();
+        } else if (closed) {
+            // Closed between the check above and the offer, the writer may have drained the
+            // queue already.
+            drain();
+        }
+    }
+
+    /**
+     * Number of images skipped because the queue was full.
+     */
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops the writer thread without waiting for it. Queued images are released unwritten,
+     * later ones are ignored.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+    }
+
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                Entry entry = queue.take();
+                try {
+                    if (!directory.exists()) {
+                        directory.mkdirs();
+                    }
+                    Imgcodecs.imwrite(new File(directory, entry.name).getPath(), entry.image);
+                } finally {
+                    entry.image.release();
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // Closed while waiting for the next image.
+        } finally {
+            drain();
+        }
+    }
+
+    private void drain() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            entry.image.release();
+        }
+    }
+
+    private static class Entry {
+        final String name;
+        final Mat image;
+
+        Entry(String name, Mat image) {
+            this.name = name;
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes a {@link BilevelImage} into compressed image files, without expanding it to more
+ * than one row of bytes.
+ * <p>
+ * PNG (1 bit grayscale, Deflate) opens everywhere, TIFF with CCITT Group 4 is the smaller of
+ * the two on text, typically by a factor of 2 to 4. For PDF use
+ * {@link PdfWriter#addBilevelPage(BilevelImage)}.
+ */
+public final class BilevelEncoder {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int IDAT_SIZE = 64 * 1024;
+
+    private static final short TIFF_SHORT = 3;
+    private static final short TIFF_LONG = 4;
+    private static final int TIFF_ENTRY_COUNT = 9;
+
+    private BilevelEncoder() {
+    }
+
+    /**
+     * Writes a 1 bit grayscale PNG. The output stream is not closed.
+     */
+    public static void writePng(BilevelImage image, OutputStream out) throws IOException {
+        out.write(PNG_SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(image.getWidth());
+        headerData.writeInt(image.getHeight());
+        headerData.writeByte(1);
+        // Grayscale, deflate, no filtering method extensions, not interlaced.
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        writeChunk(out, "IHDR", header.toByteArray(), header.size());
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            ChunkOutputStream idat = new ChunkOutputStream(out, "IDAT");
+            DeflaterOutputStream compressed = new DeflaterOutputStream(idat, deflater, IDAT_SIZE);
+            byte[] data = image.getData();
+            int stride = image.getStride();
+            byte[] row = new byte[stride + 1];
+            for (int y = 0; y < image.getHeight(); y++) {
+                // Filter type 0, and PNG grays are 0 for black so every bit is inverted.
+                row[0] = 0;
+                for (int i = 0; i < stride; i++) {
+                    row[i + 1] = (byte) ~data[y * stride + i];
+                }
+                compressed.write(row);
+            }
+            compressed.finish();
+            idat.flush();
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    /**
+     * Writes a single strip TIFF compressed with CCITT Group 4. The compressed strip is held
+     * in memory until its size is known. The output stream is not closed.
+     */
+    public static void writeTiff(BilevelImage image, OutputStream out) throws IOException {
+        ByteArrayOutputStream strip = new ByteArrayOutputStream();
+        CcittG4Encoder.encode(image.getData(), image.getWidth(), image.getHeight(), image.getStride(), strip);
+
+        int stripOffset = 8 + 2 + TIFF_ENTRY_COUNT * 12 + 4;
+        DataOutputStream tiff = new DataOutputStream(out);
+        // Big endian header with the first directory right after it.
+        tiff.writeBytes("MM");
+        tiff.writeShort(42);
+        tiff.writeInt(8);
+        tiff.writeShort(TIFF_ENTRY_COUNT);
+        writeTiffEntry(tiff, 256, TIFF_LONG, image.getWidth());
+        writeTiffEntry(tiff, 257, TIFF_LONG, image.getHeight());
+        // One bit per sample, Group 4 compression, white is zero.
+        writeTiffEntry(tiff, 258, TIFF_SHORT, 1);
+        writeTiffEntry(tiff, 259, TIFF_SHORT, 4);
+        writeTiffEntry(tiff, 262, TIFF_SHORT, 0);
+        writeTiffEntry(tiff, 273, TIFF_LONG, stripOffset);
+        writeTiffEntry(tiff, 278, TIFF_LONG, image.getHeight());
+        writeTiffEntry(tiff, 279, TIFF_LONG, strip.size());
+        writeTiffEntry(tiff, 293, TIFF_LONG, 0);
+        tiff.writeInt(0);
+        strip.writeTo(tiff);
+        tiff.flush();
+    }
+
+    private static void writeTiffEntry(DataOutputStream out, int tag, short type, int value) throws IOException {
+        out.writeShort(tag);
+        out.writeShort(type);
+        out.writeInt(1);
+        // Values are left aligned in the 4 byte field.
+        if (type == TIFF_SHORT) {
+            out.writeShort(value);
+            out.writeShort(0);
+        } else {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        writeInt(out, length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Splits what is written into chunks of at most {@link #IDAT_SIZE} bytes.
+     */
+    private static final class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final String type;
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int count;
+
+        ChunkOutputStream(OutputStream out, String type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int copied = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, copied);
+                count += copied;
+                off += copied;
+                len -= copied;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk(out, type, buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
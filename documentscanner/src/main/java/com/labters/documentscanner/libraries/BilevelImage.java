@@ -0,0 +1,169 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Black and white page packed 1 bit per pixel, most significant bit first, with set bits for
+ * black. Rows start {@link #getStride()} bytes apart and the unused bits at the end of a row
+ * are zero.
+ * <p>
+ * A thresholded page takes an eighth of the memory of a single channel Mat and a 32nd of an
+ * ARGB_8888 Bitmap, and packs straight into {@link CcittG4Encoder}, {@link BilevelEncoder} and
+ * {@link PdfWriter#addBilevelPage(BilevelImage)}.
+ */
+public final class BilevelImage {
+
+    // Rows read from a Mat at a time, bounds the temporary buffer of fromMat and toMat.
+    private static final int BAND_HEIGHT = 64;
+    private static final byte[] UNPACKED = new byte[256 * 8];
+
+    static {
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < 8; bit++) {
+                UNPACKED[value * 8 + bit] = (value & (0x80 >> bit)) != 0 ? 0 : (byte) 255;
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final byte[] data;
+
+    /**
+     * All white image.
+     */
+    public BilevelImage(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive.");
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = (width + 7) / 8;
+        this.data = new byte[stride * height];
+    }
+
+    /**
+     * Packs a CV_8UC1 image, pixels below 128 become black. Thresholded images only hold 0 and
+     * 255, so nothing is lost.
+     */
+    public static BilevelImage fromMat(Mat gray) {
+        if (gray.type() != CvType.CV_8UC1) {
+            throw new IllegalArgumentException("Expected a CV_8UC1 Mat.");
+        }
+        BilevelImage image = new BilevelImage(gray.cols(), gray.rows());
+        int width = image.width;
+        byte[] band = new byte[width * Math.min(BAND_HEIGHT, image.height)];
+        for (int y = 0; y < image.height; y += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, image.height - y);
+            // Copies row by row, so submats work too, and stops at the last row.
+            gray.get(y, 0, band);
+            for (int row = 0; row < rows; row++) {
+                image.packRow(y + row, band, row * width);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Sets row {@code y} from {@code width} gray bytes starting at {@code gray[offset]}, values
+     * below 128 become black.
+     */
+    public void packRow(int y, byte[] gray, int offset) {
+        int rowStart = y * stride;
+        int x = 0;
+        for (int i = 0; x + 8 <= width; i++, x += 8, offset += 8) {
+            // The top bit of a byte below 128 is clear, invert it to get black as 1.
+            data[rowStart + i] = (byte) ~((gray[offset] & 0x80)
+                    | (gray[offset + 1] & 0x80) >>> 1
+                    | (gray[offset + 2] & 0x80) >>> 2
+                    | (gray[offset + 3] & 0x80) >>> 3
+                    | (gray[offset + 4] & 0x80) >>> 4
+                    | (gray[offset + 5] & 0x80) >>> 5
+                    | (gray[offset + 6] & 0x80) >>> 6
+                    | (gray[offset + 7] & 0x80) >>> 7);
+        }
+        if (x < width) {
+            int value = 0;
+            for (int bit = 0; x < width; bit++, x++, offset++) {
+                if ((gray[offset] & 0x80) == 0) {
+                    value |= 0x80 >> bit;
+                }
+            }
+            data[rowStart + stride - 1] = (byte) value;
+        }
+    }
+
+    /**
+     * Writes row {@code y} as {@code width} bytes of 0 for black and 255 for white starting at
+     * {@code gray[offset]}.
+     */
+    public void unpackRow(int y, byte[] gray, int offset) {
+        int rowStart = y * stride;
+        int whole = width / 8;
+        for (int i = 0; i < whole; i++, offset += 8) {
+            System.arraycopy(UNPACKED, (data[rowStart + i] & 0xff) * 8, gray, offset, 8);
+        }
+        if (whole < stride) {
+            System.arraycopy(UNPACKED, (data[rowStart + whole] & 0xff) * 8, gray, offset, width - whole * 8);
+        }
+    }
+
+    /**
+     * Unpacks into a new CV_8UC1 Mat of 0 and 255.
+     */
+    public Mat toMat() {
+        Mat gray = new Mat(height, width, CvType.CV_8UC1);
+        byte[] band = new byte[width * Math.min(BAND_HEIGHT, height)];
+        for (int y = 0; y < height; y += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, height - y);
+            for (int row = 0; row < rows; row++) {
+                unpackRow(y + row, band, row * width);
+            }
+            gray.put(y, 0, band, 0, rows * width);
+        }
+        return gray;
+    }
+
+    public boolean isBlack(int x, int y) {
+        return (data[y * stride + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    public void setBlack(int x, int y, boolean black) {
+        int index = y * stride + (x >> 3);
+        if (black) {
+            data[index] |= 0x80 >> (x & 7);
+        } else {
+            data[index] &= ~(0x80 >> (x & 7));
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * The packed rows, not a copy.
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import android.graphics.Bitmap;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * {@link TileSink} that writes CV_8UC4 RGBA tiles straight into an ARGB_8888 Bitmap, so a tiled
+ * warp never needs a full size result Mat.
+ */
+public class BitmapTileSink implements TileSink {
+
+    private final Bitmap bitmap;
+    private byte[] rgba = new byte[0];
+    private int[] argb = new int[0];
+
+    public BitmapTileSink(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @Override
+    public void onTile(Mat tile, int x, int y) {
+        if (tile.type() != CvType.CV_8UC4) {
+            throw new IllegalArgumentException("Only CV_8UC4 tiles can be written to a Bitmap.");
+        }
+        int pixels = tile.rows() * tile.cols();
+        if (argb.length < pixels) {
+            rgba = new byte[pixels * 4];
+            argb = new int[pixels];
+        }
+        tile.get(0, 0, rgba);
+        for (int i = 0, j = 0; i < pixels; i++, j += 4) {
+            argb[i] = (rgba[j + 3] & 0xFF) << 24
+                    | (rgba[j] & 0xFF) << 16
+                    | (rgba[j + 1] & 0xFF) << 8
+                    | (rgba[j + 2] & 0xFF);
+        }
+        bitmap.setPixels(argb, 0, tile.cols(), x, y, tile.cols(), tile.rows());
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CCITT Group 4 (ITU-T T.6) encoder for bilevel images, the compression PDF readers decode with
+ * {@code /CCITTFaxDecode /K -1}.
+ * <p>
+ * Rows are packed 1 bit per pixel, most significant bit first, with set bits for black. Each
+ * row is coded against the previous one, so the encoder keeps two rows of changing elements
+ * and the caller can feed rows one at a time as they are produced. Text pages typically
+ * compress 10 to 30 times better than with Deflate.
+ */
+public class CcittG4Encoder {
+
+    private static final String[] WHITE_TERMINATING = {
+            "00110101", "000111", "0111", "1000", "1011", "1100", "1110", "1111",
+            "10011", "10100", "00111", "01000", "001000", "000011", "110100", "110101",
+            "101010", "101011", "0100111", "0001100", "0001000", "0010111", "0000011", "0000100",
+            "0101000", "0101011", "0010011", "0100100", "0011000", "00000010", "00000011", "00011010",
+            "00011011", "00010010", "00010011", "00010100", "00010101", "00010110", "00010111", "00101000",
+            "00101001", "00101010", "00101011", "00101100", "00101101", "00000100", "00000101", "00001010",
+            "00001011", "01010010", "01010011", "01010100", "01010101", "00100100", "00100101", "01011000",
+            "01011001", "01011010", "01011011", "01001010", "01001011", "00110010", "00110011", "00110100"
+    };
+    private static final String[] BLACK_TERMINATING = {
+            "0000110111", "010", "11", "10", "011", "0011", "0010", "00011",
+            "000101", "000100", "0000100", "0000101", "0000111", "00000100", "00000111", "000011000",
+            "0000010111", "0000011000", "0000001000", "00001100111", "00001101000", "00001101100", "00000110111", "00000101000",
+            "00000010111", "00000011000", "000011001010", "000011001011", "000011001100", "000011001101", "000001101000", "000001101001",
+            "000001101010", "000001101011", "000011010010", "000011010011", "000011010100", "000011010101", "000011010110", "000011010111",
+            "000001101100", "000001101101", "000011011010", "000011011011", "000001010100", "000001010101", "000001010110", "000001010111",
+            "000001100100", "000001100101", "000001010010", "000001010011", "000000100100", "000000110111", "000000111000", "000000100111",
+            "000000101000", "000001011000", "000001011001", "000000101011", "000000101100", "000001011010", "000001100110", "000001100111"
+    };
+    // Make-up codes for 64 to 1728 pixels.
+    private static final String[] WHITE_MAKEUP = {
+            "11011", "10010", "010111", "0110111", "00110110", "00110111", "01100100", "01100101", "01101000",
+            "01100111", "011001100", "011001101", "011010010", "011010011", "011010100", "011010101", "011010110",
+            "011010111", "011011000", "011011001", "011011010", "011011011", "010011000", "010011001", "010011010",
+            "011000", "010011011"
+    };
+    private static final String[] BLACK_MAKEUP = {
+            "0000001111", "000011001000", "000011001001", "000001011011", "000000110011", "000000110100",
+            "000000110101", "0000001101100", "0000001101101", "0000001001010", "0000001001011", "0000001001100",
+            "0000001001101", "0000001110010", "0000001110011", "0000001110100", "0000001110101", "0000001110110",
+            "0000001110111", "0000001010010", "0000001010011", "0000001010100", "0000001010101", "0000001011010",
+            "0000001011011", "0000001100100", "0000001100101"
+    };
+    // Make-up codes for 1792 to 2560 pixels, shared by both colors.
+    private static final String[] EXTENDED_MAKEUP = {
+            "00000001000", "00000001100", "00000001101", "000000010010", "000000010011", "000000010100",
+            "000000010101", "000000010110", "000000010111", "000000011100", "000000011101", "000000011110",
+            "000000011111"
+    };
+    // Vertical mode codes for a1 - b1 from -3 to 3.
+    private static final String[] VERTICAL = {
+            "0000010", "000010", "010", "1", "011", "000011", "0000011"
+    };
+    private static final String PASS = "0001";
+    private static final String HORIZONTAL = "001";
+    private static final String EOL = "000000000001";
+
+    private static final int MAX_MAKEUP = 2560;
+
+    private static final int[][] TERMINATING_CODES = {parse(WHITE_TERMINATING), parse(BLACK_TERMINATING)};
+    private static final int[][] MAKEUP_CODES = {
+            concat(parse(WHITE_MAKEUP), parse(EXTENDED_MAKEUP)),
+            concat(parse(BLACK_MAKEUP), parse(EXTENDED_MAKEUP))
+    };
+    private static final int[] VERTICAL_CODES = parse(VERTICAL);
+    private static final int PASS_CODE = parse(PASS);
+    private static final int HORIZONTAL_CODE = parse(HORIZONTAL);
+    private static final int EOL_CODE = parse(EOL);
+
+    private final OutputStream out;
+    private final int width;
+    private int[] referenceChanges;
+    private int[] codingChanges;
+    private int bitBuffer;
+    private int bitCount;
+    private boolean finished;
+
+    /**
+     * Encoder writing to {@code out} for rows of {@code width} pixels.
+     */
+    public CcittG4Encoder(OutputStream out, int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width must be positive.");
+        }
+        this.out = out;
+        this.width = width;
+        // The changes of a row end with three entries of width, so the lookups past the last
+        // real change need no bounds checks. The first reference row is all white.
+        this.referenceChanges = new int[width + 3];
+        this.codingChanges = new int[width + 3];
+        findChanges(null, 0, referenceChanges);
+    }
+
+    /**
+     * Encodes every row of a packed image whose rows start {@code stride} bytes apart.
+     */
+    public static void encode(byte[] data, int width, int height, int stride, OutputStream out) throws IOException {
+        CcittG4Encoder encoder = new CcittG4Encoder(out, width);
+        for (int y = 0; y < height; y++) {
+            encoder.encodeRow(data, y * stride);
+        }
+        encoder.finish();
+    }
+
+    /**
+     * Encodes the row whose first byte is {@code data[offset]}.
+     */
+    public void encodeRow(byte[] data, int offset) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The encoder is finished.");
+        }
+        int[] coding = codingChanges;
+        int[] reference = referenceChanges;
+        findChanges(data, offset, coding);
+
+        int a0 = -1;
+        int color = 0;
+        int codingIndex = 0;
+        int referenceIndex = 0;
+        while (a0 < width) {
+            while (coding[codingIndex] <= a0) {
+                codingIndex++;
+            }
+            int a1 = coding[codingIndex];
+            while (reference[referenceIndex] <= a0) {
+                referenceIndex++;
+            }
+            // Even changes turn black, b1 is the first one turning to the opposite of color.
+            int b1Index = (referenceIndex & 1) == color ? referenceIndex : referenceIndex + 1;
+            int b1 = reference[b1Index];
+            int b2 = reference[b1Index + 1];
+
+            if (b2 < a1) {
+                writeCode(PASS_CODE);
+                a0 = b2;
+            } else if (Math.abs(a1 - b1) <= 3) {
+                writeCode(VERTICAL_CODES[a1 - b1 + 3]);
+                a0 = a1;
+                color ^= 1;
+            } else {
+                int a2 = coding[codingIndex + 1];
+                writeCode(HORIZONTAL_CODE);
+                writeRun(a1 - Math.max(a0, 0), color);
+                writeRun(a2 - a1, color ^ 1);
+                a0 = a2;
+            }
+        }
+
+        codingChanges = reference;
+        referenceChanges = coding;
+    }
+
+    /**
+     * Writes the end of facsimile block and pads the last byte. The output stream is not
+     * closed.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeCode(EOL_CODE);
+        writeCode(EOL_CODE);
+        if (bitCount > 0) {
+            out.write(bitBuffer << (8 - bitCount));
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+        finished = true;
+    }
+
+    /**
+     * Positions where the color differs from the pixel before, starting from white, followed
+     * by three entries of {@link #width}. A {@code null} row is all white.
+     */
+    private void findChanges(byte[] data, int offset, int[] changes) {
+        int count = 0;
+        if (data != null) {
+            int color = 0;
+            int x = 0;
+            while (x < width) {
+                int value = data[offset + (x >> 3)] & 0xff;
+                // Skip whole bytes of the current color.
+                if ((x & 7) == 0 && value == (color == 0 ? 0 : 0xff)) {
+                    x += 8;
+                    continue;
+                }
+                int bit = (value >> (7 - (x & 7))) & 1;
+                if (bit != color) {
+                    changes[count++] = x;
+                    color = bit;
+                }
+                x++;
+            }
+        }
+        changes[count] = width;
+        changes[count + 1] = width;
+        changes[count + 2] = width;
+    }
+
+    private void writeRun(int run, int color) throws IOException {
+        int[] makeup = MAKEUP_CODES[color];
+        while (run >= MAX_MAKEUP) {
+            writeCode(makeup[makeup.length - 1]);
+            run -= MAX_MAKEUP;
+        }
+        if (run >= 64) {
+            writeCode(makeup[run / 64 - 1]);
+            run %= 64;
+        }
+        writeCode(TERMINATING_CODES[color][run]);
+    }
+
+    /**
+     * Writes a code packed as {@code bits << 5 | length}.
+     */
+    private void writeCode(int code) throws IOException {
+        int length = code & 0x1f;
+        bitBuffer = (bitBuffer << length) | (code >>> 5);
+        bitCount += length;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            out.write(bitBuffer >>> bitCount);
+            bitBuffer &= (1 << bitCount) - 1;
+        }
+    }
+
+    private static int parse(String code) {
+        return Integer.parseInt(code, 2) << 5 | code.length();
+    }
+
+    private static int[] parse(String[] codes) {
+        int[] result = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            result[i] = parse(codes[i]);
+        }
+        return result;
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] result = new int[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import com.labters.documentscanner.helpers.MatPool;
+import com.labters.documentscanner.helpers.MathUtils;
+import com.labters.documentscanner.helpers.Quad;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Two level document detector: the quadrilateral is found on a small copy of the image and
+ * each corner is then refined to sub-pixel accuracy in a small window of the full resolution
+ * image.
+ * <p>
+ * Canny and findContours only ever see about {@link #DEFAULT_COARSE_SIZE} pixels on the longer
+ * side, and the full resolution image is read in four windows whose size follows the coarse
+ * scale, so the cost barely grows with the input resolution.
+ */
+public class CoarseToFineDetector {
+
+    public static final int DEFAULT_COARSE_SIZE = 500;
+
+    private static final int MIN_WINDOW_RADIUS = 3;
+    private static final int MAX_WINDOW_RADIUS = 32;
+    private static final TermCriteria REFINE_CRITERIA =
+            new TermCriteria(TermCriteria.EPS + TermCriteria.COUNT, 40, 0.01);
+
+    private final DocumentDetector detector;
+    private final int coarseSize;
+    private final DetectionMode mode;
+
+    public CoarseToFineDetector(DocumentDetector detector) {
+        this(detector, DEFAULT_COARSE_SIZE, DetectionMode.VALUE_CHANNEL);
+    }
+
+    public CoarseToFineDetector(DocumentDetector detector, int coarseSize, DetectionMode mode) {
+        if (coarseSize <= 0) {
+            throw new IllegalArgumentException("coarseSize must be positive.");
+        }
+        this.detector = detector;
+        this.coarseSize = coarseSize;
+        this.mode = mode;
+    }
+
+    /**
+     * Corners of the largest document-like quadrilateral in {@code src}, an RGBA or single
+     * channel image, in {@code src} coordinates, or {@code null} when there is none.
+     */
+    public MatOfPoint2f detect(Mat src) {
+        MatPool matPool = detector.getMatPool();
+        int imageSize = Math.max(src.cols(), src.rows());
+        double ratio = Math.min(1d, (double) coarseSize / imageSize);
+
+        Mat coarse = src;
+        if (ratio < 1) {
+            coarse = matPool.acquire(new Size(Math.round(src.cols() * ratio), Math.round(src.rows() * ratio)), src.type());
+            Imgproc.resize(src, coarse, coarse.size(), 0, 0, Imgproc.INTER_AREA);
+        }
+        MatOfPoint2f quad = detector.getLargestRectangle(coarse, mode);
+        if (coarse != src) {
+            matPool.recycle(coarse);
+        }
+        if (quad == null) {
+            return null;
+        }
+
+        double scale = 1 / ratio;
+        Quad corners = MathUtils.toQuad(quad).scale(scale);
+        quad.release();
+        int radius = (int) Math.min(MAX_WINDOW_RADIUS, Math.max(MIN_WINDOW_RADIUS, Math.ceil(2 * scale)));
+        for (int i = 0; i < 4; i++) {
+            Point refined = refineCorner(src, corners.getPoint(i), radius, matPool);
+            corners.set(i, refined.x, refined.y);
+        }
+        return MathUtils.toMatOfPoint2f(corners);
+    }
+
+    /**
+     * Moves {@code corner} to where the two page edges meet inside a window of the given radius.
+     * The coarse position is kept when the window does not fit the image or the refinement
+     * leaves the window, which happens on low contrast corners.
+     */
+    private Point refineCorner(Mat src, Point corner, int radius, MatPool matPool) {
+        int margin = radius + 2;
+        int left = Math.max(0, (int) Math.round(corner.x) - margin);
+        int top = Math.max(0, (int) Math.round(corner.y) - margin);
+        int right = Math.min(src.cols(), (int) Math.round(corner.x) + margin + 1);
+        int bottom = Math.min(src.rows(), (int) Math.round(corner.y) + margin + 1);
+        // cornerSubPix needs an image of at least 2 * radius + 5 pixels.
+        int windowRadius = Math.min(radius, (Math.min(right - left, bottom - top) - 5) / 2);
+        if (windowRadius < 2) {
+            return corner;
+        }
+
+        Mat window = src.submat(new Rect(left, top, right - left, bottom - top));
+        Mat gray = matPool.acquire(window.rows(), window.cols(), CvType.CV_8UC1);
+        if (window.channels() == 4) {
+            Imgproc.cvtColor(window, gray, Imgproc.COLOR_RGBA2GRAY);
+        } else if (window.channels() == 3) {
+            Imgproc.cvtColor(window, gray, Imgproc.COLOR_RGB2GRAY);
+        } else {
+            window.copyTo(gray);
+        }
+        window.release();
+        // Gradients of noise on one side of the corner pull it towards that side. A blur that
+        // grows with the window keeps them small next to the gradients of the page edges.
+        int blur = Math.max(3, windowRadius / 2 | 1);
+        Imgproc.GaussianBlur(gray, gray, new Size(blur, blur), 0);
+
+        MatOfPoint2f point = new MatOfPoint2f(new Point(corner.x - left, corner.y - top));
+        Imgproc.cornerSubPix(gray, point, new Size(windowRadius, windowRadius), new Size(-1, -1), REFINE_CRITERIA);
+        Point refined = point.toArray()[0];
+        point.release();
+        matPool.recycle(gray);
+
+        refined.x += left;
+        refined.y += top;
+        if (Math.abs(refined.x - corner.x) > windowRadius || Math.abs(refined.y - corner.y) > windowRadius) {
+            return corner;
+        }
+        return refined;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import com.labters.documentscanner.helpers.MathUtils;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+/**
+ * Follows a document across consecutive frames of the same size.
+ * <p>
+ * The four corners of the previous frame are tracked with pyramidal Lucas-Kanade optical flow,
+ * which costs a few small windows instead of a full edge map. When tracking loses confidence
+ * the detector first searches a region around the last corners and only falls back to a full
+ * {@link DocumentDetector#getLargestRectangle(Mat, DetectionMode)} run when that fails too. Tracked
+ * corners are smoothed to keep the overlay from jittering.
+ * <p>
+ * Instances keep per-stream state and are not thread safe, feed frames sequentially.
+ */
+public class CornerTracker {
+
+    public static final int DEFAULT_REDETECT_INTERVAL = 30;
+
+    private static final Size FLOW_WINDOW = new Size(21, 21);
+    private static final int FLOW_PYRAMID_LEVELS = 3;
+    private static final int PATCH_RADIUS = 192;
+    private static final float MAX_FLOW_ERROR = 30f;
+    private static final double MIN_AREA_CHANGE = 0.8;
+    private static final double MAX_AREA_CHANGE = 1.25;
+    private static final double SEARCH_MARGIN = 0.2;
+    private static final double MIN_SEARCH_AREA = 0.5;
+    private static final double SMOOTHING = 0.5;
+
+    private final DocumentDetector detector;
+    private final DetectionMode mode;
+    private final int redetectInterval;
+
+    private final Mat previousFrame = new Mat();
+    private final MatOfPoint2f previousCorners = new MatOfPoint2f();
+    private final MatOfPoint2f trackedCorners = new MatOfPoint2f();
+    private final MatOfPoint2f patchCorner = new MatOfPoint2f();
+    private final MatOfPoint2f trackedCorner = new MatOfPoint2f();
+    private final MatOfByte status = new MatOfByte();
+    private final MatOfFloat error = new MatOfFloat();
+    private final double[] smoothed = new double[8];
+    private boolean tracking;
+    private int framesSinceDetection;
+
+    public CornerTracker(DocumentDetector detector) {
+        this(detector, DetectionMode.VALUE_CHANNEL, DEFAULT_REDETECT_INTERVAL);
+    }
+
+    public CornerTracker(DocumentDetector detector, DetectionMode mode, int redetectInterval) {
+        this.detector = detector;
+        this.mode = mode;
+        this.redetectInterval = redetectInterval;
+    }
+
+    /**
+     * Corners of the document in {@code gray}, or {@code null} when it was lost. The returned
+     * Mat belongs to the caller.
+     */
+    public MatOfPoint2f update(Mat gray) {
+        if (tracking && !previousFrame.size().equals(gray.size())) {
+            reset();
+        }
+
+        boolean tracked = tracking
+                && framesSinceDetection < redetectInterval
+                && track(gray);
+        if (tracked) {
+            framesSinceDetection++;
+            smooth(trackedCorners.toArray());
+        } else {
+            MatOfPoint2f detected = tracking ? searchAround(gray) : null;
+            if (detected == null) {
+                detected = detector.getLargestRectangle(gray, mode);
+            }
+            if (detected == null) {
+                tracking = false;
+                return null;
+            }
+            detected.copyTo(trackedCorners);
+            detected.release();
+            framesSinceDetection = 0;
+            tracking = true;
+            Point[] points = trackedCorners.toArray();
+            for (int i = 0; i < 4; i++) {
+                smoothed[i * 2] = points[i].x;
+                smoothed[i * 2 + 1] = points[i].y;
+            }
+        }
+
+        trackedCorners.copyTo(previousCorners);
+        gray.copyTo(previousFrame);
+        return new MatOfPoint2f(
+                new Point(smoothed[0], smoothed[1]),
+                new Point(smoothed[2], smoothed[3]),
+                new Point(smoothed[4], smoothed[5]),
+                new Point(smoothed[6], smoothed[7]));
+    }
+
+    /**
+     * Forgets the tracked document, the next frame runs a full detection.
+     */
+    public void reset() {
+        tracking = false;
+        framesSinceDetection = 0;
+    }
+
+    public void release() {
+        reset();
+        previousFrame.release();
+        previousCorners.release();
+        trackedCorners.release();
+        patchCorner.release();
+        trackedCorner.release();
+        status.release();
+        error.release();
+    }
+
+    /**
+     * Tracks each corner within a patch around it. Flow over the whole frame would build image
+     * pyramids and gradients of both full frames on every call, while the search only ever
+     * looks {@link #PATCH_RADIUS} pixels around a corner at the coarsest level.
+     */
+    private boolean track(Mat gray) {
+        Point[] previous = previousCorners.toArray();
+        Point[] tracked = new Point[4];
+        for (int i = 0; i < 4; i++) {
+            tracked[i] = trackCorner(gray, previous[i]);
+            if (tracked[i] == null) {
+                return false;
+            }
+        }
+        trackedCorners.fromArray(tracked);
+
+        MatOfPoint trackedInt = MathUtils.toMatOfPointInt(trackedCorners);
+        boolean convex = Imgproc.isContourConvex(trackedInt);
+        trackedInt.release();
+        if (!convex) {
+            return false;
+        }
+        double areaChange = Imgproc.contourArea(trackedCorners) / Imgproc.contourArea(previousCorners);
+        return areaChange >= MIN_AREA_CHANGE && areaChange <= MAX_AREA_CHANGE;
+    }
+
+    private Point trackCorner(Mat gray, Point corner) {
+        int x = Math.max(0, (int) corner.x - PATCH_RADIUS);
+        int y = Math.max(0, (int) corner.y - PATCH_RADIUS);
+        int right = Math.min(gray.cols(), (int) corner.x + PATCH_RADIUS);
+        int bottom = Math.min(gray.rows(), (int) corner.y + PATCH_RADIUS);
+        if (right - x < FLOW_WINDOW.width || bottom - y < FLOW_WINDOW.height) {
+            return null;
+        }
+
+        Mat before = previousFrame.submat(y, bottom, x, right);
+        Mat after = gray.submat(y, bottom, x, right);
+        patchCorner.fromArray(new Point(corner.x - x, corner.y - y));
+        Video.calcOpticalFlowPyrLK(before, after, patchCorner, trackedCorner,
+                status, error, FLOW_WINDOW, FLOW_PYRAMID_LEVELS);
+        before.release();
+        after.release();
+
+        byte[] found = status.toArray();
+        float[] errors = error.toArray();
+        if (found.length != 1 || found[0] == 0 || errors[0] > MAX_FLOW_ERROR) {
+            return null;
+        }
+        Point point = trackedCorner.toArray()[0];
+        point.x += x;
+        point.y += y;
+        return point;
+    }
+
+    /**
+     * Searches the last bounding box grown by {@link #SEARCH_MARGIN} on every side. The region
+     * is nearly twice the box, and a rotated or foreshortened page covers only part of its box,
+     * so the detector's usual floor of a share of its input would reject it. Quads are accepted
+     * down to {@link #MIN_SEARCH_AREA} of the last one instead.
+     */
+    private MatOfPoint2f searchAround(Mat gray) {
+        Rect bounds = Imgproc.boundingRect(previousCorners);
+        int marginX = (int) (bounds.width * SEARCH_MARGIN);
+        int marginY = (int) (bounds.height * SEARCH_MARGIN);
+        int x = Math.max(0, bounds.x - marginX);
+        int y = Math.max(0, bounds.y - marginY);
+        int right = Math.min(gray.cols(), bounds.x + bounds.width + marginX);
+        int bottom = Math.min(gray.rows(), bounds.y + bounds.height + marginY);
+        if (right - x < 2 || bottom - y < 2) {
+            return null;
+        }
+
+        Mat region = gray.submat(y, bottom, x, right);
+        double minArea = Imgproc.contourArea(previousCorners) * MIN_SEARCH_AREA;
+        MatOfPoint2f found = detector.getLargestRectangle(region, mode, minArea);
+        region.release();
+        if (found == null) {
+            return null;
+        }
+        Point[] points = found.toArray();
+        for (Point point : points) {
+            point.x += x;
+            point.y += y;
+        }
+        found.fromArray(points);
+        return found;
+    }
+
+    private void smooth(Point[] points) {
+        for (int i = 0; i < 4; i++) {
+            smoothed[i * 2] += SMOOTHING * (points[i].x - smoothed[i * 2]);
+            smoothed[i * 2 + 1] += SMOOTHING * (points[i].y - smoothed[i * 2 + 1]);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of detection results, so reopening a photo shows its
+ * corners without estimating the orientation or detecting the document again.
+ * <p>
+ * Entries are keyed by {@link #keyOf(int, int, int, PixelRows)}, a hash of the image reduced to
+ * a coarse grid together with its size and EXIF orientation. Each grid cell sums every pixel
+ * under it, so the same decoded image always gives the same key and an edit anywhere gives
+ * another, unless it leaves the sums of every cell as they were, as swapping two pixels within
+ * a cell does. Unrelated images share a key only by a collision of the 64-bit hash.
+ * When a directory is given every entry is also written there as a small file and read back on
+ * a memory miss, which keeps results across process restarts.
+ */
+public class DetectionCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final int DEFAULT_MAX_DISK_ENTRIES = 512;
+
+    private static final int GRID_SIZE = 32;
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_SUFFIX = ".det";
+
+    private final Map<String, Entry> entries;
+    private final File directory;
+    private final int maxDiskEntries;
+
+    public DetectionCache() {
+        this(DEFAULT_MAX_ENTRIES, null, DEFAULT_MAX_DISK_ENTRIES);
+    }
+
+    /**
+     * Cache of at most {@code maxEntries} results in memory, and {@code maxDiskEntries} files
+     * in {@code directory} unless it is {@code null}.
+     */
+    public DetectionCache(final int maxEntries, File directory, int maxDiskEntries) {
+        if (maxEntries <= 0 || maxDiskEntries <= 0) {
+            throw new IllegalArgumentException("Cache sizes must be positive.");
+        }
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DetectionCache.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.directory = directory;
+        this.maxDiskEntries = maxDiskEntries;
+    }
+
+    /**
+     * Key of a {@code width} by {@code height} image, the image detection runs on before it is
+     * rotated, shown with the given EXIF orientation tag. {@code rows} is asked for every row
+     * once, top to bottom.
+     */
+    public static String keyOf(int width, int height, int exifOrientation, PixelRows rows) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive.");
+        }
+        // Sums of the four channels per cell, an area average without the division.
+        long[] sums = new long[GRID_SIZE * GRID_SIZE * 4];
+        int[] cellOfColumn = new int[width];
+        for (int x = 0; x < width; x++) {
+            cellOfColumn[x] = (int) ((long) x * GRID_SIZE / width) * 4;
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            rows.read(y, row);
+            int rowOffset = (int) ((long) y * GRID_SIZE / height) * GRID_SIZE * 4;
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                int cell = rowOffset + cellOfColumn[x];
+                sums[cell] += pixel >>> 24;
+                sums[cell + 1] += (pixel >> 16) & 0xff;
+                sums[cell + 2] += (pixel >> 8) & 0xff;
+                sums[cell + 3] += pixel & 0xff;
+            }
+        }
+
+        // 64-bit FNV-1a over the cell sums.
+        long hash = 0xcbf29ce484222325L;
+        for (long sum : sums) {
+            for (int shift = 0; shift < 64; shift += 8) {
+                hash ^= (sum >>> shift) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return Long.toHexString(hash) + '-' + width + 'x' + height + '-' + exifOrientation;
+    }
+
+    /**
+     * Cached result for {@code key}, or {@code null} when there is none. Reads the disk tier on
+     * a memory miss, call it off the main thread when a directory is set.
+     */
+    public Entry get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null || directory == null) {
+                return entry;
+            }
+        }
+        Entry entry = read(new File(directory, key + FILE_SUFFIX));
+        if (entry != null) {
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        if (directory != null) {
+            write(new File(directory, key + FILE_SUFFIX), entry);
+        }
+    }
+
+    /**
+     * Drops every entry from memory and from the directory.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        File[] files = listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Entry read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FILE_VERSION) {
+                // Written by another version of this class, it would never be read again.
+                input.close();
+                file.delete();
+                return null;
+            }
+            int rotationDegrees = input.readInt();
+            int workingSize = input.readInt();
+            float[] corners = null;
+            if (input.readBoolean()) {
+                corners = new float[8];
+                for (int i = 0; i < 8; i++) {
+                    corners[i] = input.readFloat();
+                }
+            }
+            // Marks the file as recently used for pruning.
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(corners, rotationDegrees, workingSize);
+        } catch (IOException e) {
+            // Truncated or otherwise unreadable.
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes through a temporary file so a reader never sees half an entry. A failed write only
+     * loses the disk copy, the entry stays in memory.
+     */
+    private void write(File file, Entry entry) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeInt(FILE_VERSION);
+            output.writeInt(entry.rotationDegrees);
+            output.writeInt(entry.workingSize);
+            output.writeBoolean(entry.corners != null);
+            if (entry.corners != null) {
+                for (float coordinate : entry.corners) {
+                    output.writeFloat(coordinate);
+                }
+            }
+        } catch (IOException e) {
+            temporary.delete();
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            return;
+        }
+        prune();
+    }
+
+    private void prune() {
+        File[] files = listFiles();
+        if (files.length <= maxDiskEntries) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - maxDiskEntries; i++) {
+            files[i].delete();
+        }
+    }
+
+    private File[] listFiles() {
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    /**
+     * Pixels of the image {@link #keyOf(int, int, int, PixelRows)} hashes.
+     */
+    public interface PixelRows {
+
+        /**
+         * Copies row {@code y} into {@code row} as ARGB colors, one per column.
+         */
+        void read(int y, int[] row);
+    }
+
+    /**
+     * Result of one detection: the corners as x0, y0 ... y3 relative to the width and height of
+     * the rotated image, or {@code null} when no document was found, the rotation applied
+     * before detection and the working size detection ran at.
+     */
+    public static final class Entry {
+        private final float[] corners;
+        private final int rotationDegrees;
+        private final int workingSize;
+
+        public Entry(float[] corners, int rotationDegrees, int workingSize) {
+            if (corners != null && corners.length != 8) {
+                throw new IllegalArgumentException("A quad needs exactly 8 coordinates.");
+            }
+            this.corners = corners == null ? null : corners.clone();
+            this.rotationDegrees = rotationDegrees;
+            this.workingSize = workingSize;
+        }
+
+        public float[] getCorners() {
+            return corners == null ? null : corners.clone();
+        }
+
+        public int getRotationDegrees() {
+            return rotationDegrees;
+        }
+
+        public int getWorkingSize() {
+            return workingSize;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+/**
+ * Edge map pipeline used by {@link NativeClass} before looking for contours.
+ */
+public enum DetectionMode {
+
+    /**
+     * Original pipeline: blur the color image, force hue and saturation to constants in HSV,
+     * shift the value channel and convert back to BGR before running Canny on three channels.
+     */
+    HSV,
+
+    /**
+     * Runs Canny on the value channel only. With hue and saturation fixed the red channel of the
+     * HSV round-trip equals the value channel and dominates the other two, so the edges are the
+     * same while four full-frame color passes are skipped. Single channel inputs, such as camera
+     * luma planes, are treated as the value channel directly.
+     */
+    VALUE_CHANNEL
+}
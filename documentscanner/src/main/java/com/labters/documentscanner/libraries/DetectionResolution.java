@@ -0,0 +1,137 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+/**
+ * Policy for the resolution detection runs at, expressed as the length of the longer side of
+ * the working image.
+ * <p>
+ * Smaller working images are faster, Canny and findContours cost grows with the pixel count,
+ * while larger ones place the corners more precisely. {@link NativeClass} asks the policy for a
+ * working size before every detection and reports how long the detection took afterwards.
+ */
+public abstract class DetectionResolution {
+
+    public static final int DEFAULT_SIZE = 2000;
+
+    /**
+     * Always scales the image so its longer side is {@code size}, upscaling small images. This
+     * was the only behaviour before policies existed.
+     */
+    public static DetectionResolution fixed(int size) {
+        return new Fixed(size);
+    }
+
+    /**
+     * Downscales images whose longer side exceeds {@code size} and leaves smaller ones as they
+     * are, so no time is spent on interpolated pixels.
+     */
+    public static DetectionResolution maxSize(int size) {
+        return new MaxSize(size);
+    }
+
+    /**
+     * Picks the working size between {@code minSize} and {@code maxSize} that keeps detection
+     * within {@code budgetMillis}, learned from the previous detections on this device. Images
+     * are never upscaled.
+     */
+    public static DetectionResolution adaptive(long budgetMillis, int minSize, int maxSize) {
+        return new Adaptive(budgetMillis, minSize, maxSize);
+    }
+
+    /**
+     * Longer side of the working image for an image whose longer side is {@code imageSize}.
+     */
+    public abstract int getWorkingSize(int imageSize);
+
+    /**
+     * Called after a detection at {@code workingSize} that took {@code elapsedNanos}.
+     */
+    public void onDetection(int workingSize, long elapsedNanos) {
+    }
+
+    private static void checkSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Detection size must be positive.");
+        }
+    }
+
+    private static final class Fixed extends DetectionResolution {
+        private final int size;
+
+        Fixed(int size) {
+            checkSize(size);
+            this.size = size;
+        }
+
+        @Override
+        public int getWorkingSize(int imageSize) {
+            return size;
+        }
+    }
+
+    private static final class MaxSize extends DetectionResolution {
+        private final int size;
+
+        MaxSize(int size) {
+            checkSize(size);
+            this.size = size;
+        }
+
+        @Override
+        public int getWorkingSize(int imageSize) {
+            return Math.min(size, imageSize);
+        }
+    }
+
+    /**
+     * Detection time grows with the pixel count, the square of the size, so after each
+     * detection the size that would have met the budget is {@code size * sqrt(budget / time)}.
+     * The estimate is smoothed so one slow frame, for example during a GC, does not halve the
+     * resolution.
+     */
+    private static final class Adaptive extends DetectionResolution {
+        private static final double SMOOTHING = 0.3;
+
+        private final long budgetNanos;
+        private final int minSize;
+        private final int maxSize;
+        private double size;
+
+        Adaptive(long budgetMillis, int minSize, int maxSize) {
+            checkSize(minSize);
+            if (budgetMillis <= 0) {
+                throw new IllegalArgumentException("Time budget must be positive.");
+            }
+            if (maxSize < minSize) {
+                throw new IllegalArgumentException("maxSize must not be smaller than minSize.");
+            }
+            this.budgetNanos = budgetMillis * 1_000_000L;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.size = maxSize;
+        }
+
+        @Override
+        public synchronized int getWorkingSize(int imageSize) {
+            return Math.min((int) Math.round(size), imageSize);
+        }
+
+        @Override
+        public synchronized void onDetection(int workingSize, long elapsedNanos) {
+            if (elapsedNanos <= 0) {
+                return;
+            }
+            double target = workingSize * Math.sqrt((double) budgetNanos / elapsedNanos);
+            size += SMOOTHING * (target - size);
+            size = Math.max(minSize, Math.min(maxSize, size));
+        }
+    }
+}
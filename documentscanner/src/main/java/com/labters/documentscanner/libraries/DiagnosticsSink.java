@@ -0,0 +1,38 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import org.opencv.core.Mat;
+
+/**
+ * Receives intermediate images of the scan pipeline for debugging.
+ * <p>
+ * Producers check {@link #isEnabled()} first and skip any work that only exists for
+ * diagnostics, so the default {@link #NONE} sink costs nothing. The Mat passed to
+ * {@link #onImage(String, Mat)} belongs to the caller and may be released right after
+ * the call returns.
+ */
+public interface DiagnosticsSink {
+
+    DiagnosticsSink NONE = new DiagnosticsSink() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void onImage(String name, Mat image) {
+        }
+    };
+
+    boolean isEnabled();
+
+    void onImage(String name, Mat image);
+}
@@ -0,0 +1,364 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import com.labters.documentscanner.helpers.MatPool;
+import com.labters.documentscanner.helpers.MatScope;
+import com.labters.documentscanner.helpers.Quad;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Mat based document detection behind {@link NativeClass}.
+ * <p>
+ * It has no Android dependency so it also runs on a desktop JVM with the OpenCV Java
+ * bindings. It does not load the native library itself, on Android {@link NativeClass} does.
+ */
+public class DocumentDetector {
+
+    private static final double AREA_LOWER_THRESHOLD = 0.4;
+    private static final double AREA_UPPER_THRESHOLD = 0.98;
+    private static final double CONTOUR_AREA_THRESHOLD = 500;
+    private static final double[] ARC_LENGTH_FACTORS = {0.05, 0.1};
+
+    /**
+     * Orders quadrilaterals by area, largest first. It computes both areas over JNI on every
+     * comparison, rank {@link QuadCandidates} instead when the areas are already known.
+     */
+    public static final Comparator<MatOfPoint2f> AreaDescendingComparator = new Comparator<MatOfPoint2f>() {
+        public int compare(MatOfPoint2f m1, MatOfPoint2f m2) {
+            double area1 = Imgproc.contourArea(m1);
+            double area2 = Imgproc.contourArea(m2);
+            return Double.compare(area2, area1);
+        }
+    };
+
+    private final MatPool matPool;
+    private Mat dilateElement;
+    private DetectionMode detectionMode = DetectionMode.HSV;
+    private DiagnosticsSink diagnosticsSink = DiagnosticsSink.NONE;
+
+    public DocumentDetector() {
+        this(new MatPool());
+    }
+
+    public DocumentDetector(MatPool matPool) {
+        this.matPool = matPool;
+    }
+
+    public DiagnosticsSink getDiagnosticsSink() {
+        return diagnosticsSink;
+    }
+
+    public void setDiagnosticsSink(DiagnosticsSink diagnosticsSink) {
+        this.diagnosticsSink = diagnosticsSink == null ? DiagnosticsSink.NONE : diagnosticsSink;
+    }
+
+    public DetectionMode getDetectionMode() {
+        return detectionMode;
+    }
+
+    public void setDetectionMode(DetectionMode detectionMode) {
+        this.detectionMode = detectionMode;
+    }
+
+    /**
+     * Largest document-like quadrilateral in {@code src}, in {@code src} coordinates, or
+     * {@code null} when there is none. The input is used at its own resolution.
+     */
+    public MatOfPoint2f getLargestRectangle(Mat src, DetectionMode mode) {
+        return getLargestRectangle(src, mode, src.rows() * src.cols() * AREA_LOWER_THRESHOLD);
+    }
+
+    /**
+     * Like {@link #getLargestRectangle(Mat, DetectionMode)} but accepts quadrilaterals down to
+     * {@code minArea} square pixels instead of a fixed share of {@code src}. Searching a region
+     * around a known document needs it, a rotated page covers much less of its bounding box.
+     */
+    public MatOfPoint2f getLargestRectangle(Mat src, DetectionMode mode, double minArea) {
+        QuadCandidates candidates = findCandidates(src, mode, true, minArea);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.toMat(candidates.best());
+    }
+
+    // best
+    public List<MatOfPoint2f> getPoints(Mat src) {
+        return getPoints(src, detectionMode);
+    }
+
+    /**
+     * Every document-like quadrilateral in {@code src}, for each arc length factor in contour
+     * order. A polygon that both factors simplify to is listed twice.
+     */
+    public List<MatOfPoint2f> getPoints(Mat src, DetectionMode mode) {
+        return getCandidates(src, mode).toMatList();
+    }
+
+    /**
+     * Every document-like quadrilateral in {@code src} with its area and score, see
+     * {@link QuadCandidates}, in the order of {@link #getPoints(Mat, DetectionMode)}.
+     */
+    public QuadCandidates getCandidates(Mat src, DetectionMode mode) {
+        return findCandidates(src, mode, false, src.rows() * src.cols() * AREA_LOWER_THRESHOLD);
+    }
+
+    /**
+     * Approximates every contour once per arc length factor and keeps the rectangles. When all
+     * of them are wanted they are added in the order of the original search, by arc length
+     * factor and then by contour, including the same polygon found with both factors.
+     * <p>
+     * An approximated polygon is made of contour points, so its area is at most the area of
+     * the contour's bounding box. Contours whose box is too small for a document are rejected
+     * before any conversion. When only the largest rectangle is wanted the remaining contours
+     * are visited by decreasing box area and the search stops as soon as no box left can hold
+     * a rectangle larger than the best one found, and a polygon both factors simplify to
+     * is only checked once.
+     */
+    private QuadCandidates findCandidates(Mat src, DetectionMode mode, boolean largestOnly, double minArea) {
+        if (src.empty()) {
+            throw new IllegalArgumentException("Input Mat 'src' is empty.");
+        }
+
+        try (MatScope scope = new MatScope(matPool)) {
+            Mat modifiedImage = scope.trackPooled(getModifiedImage(src, mode));
+
+            // Find contours
+            List<MatOfPoint> contours = new ArrayList<>();
+            Mat hierarchy = scope.newMat();
+            Imgproc.findContours(modifiedImage, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+            scope.trackAll(contours);
+            scope.free(hierarchy);
+            scope.free(modifiedImage);
+
+            double maxArea = src.rows() * src.cols() * AREA_UPPER_THRESHOLD;
+            double minBoxArea = Math.max(CONTOUR_AREA_THRESHOLD, minArea);
+            final double[] boxAreas = new double[contours.size()];
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < contours.size(); i++) {
+                boxAreas[i] = Imgproc.boundingRect(contours.get(i)).area();
+                if (boxAreas[i] >= minBoxArea) {
+                    order.add(i);
+                }
+            }
+            if (largestOnly) {
+                Collections.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer i1, Integer i2) {
+                        return Double.compare(boxAreas[i2], boxAreas[i1]);
+                    }
+                });
+            }
+
+            // Process contours to find rectangles
+            QuadCandidates rectangles = new QuadCandidates();
+            MatOfPoint2f contourFloat = scope.newMatOfPoint2f();
+            MatOfPoint2f approx = scope.newMatOfPoint2f();
+            Quad quad = new Quad();
+            double largestArea = 0;
+            float[][][] approximations = largestOnly ? null : new float[ARC_LENGTH_FACTORS.length][contours.size()][];
+            for (int index : order) {
+                if (largestOnly && boxAreas[index] <= largestArea) {
+                    break;
+                }
+                MatOfPoint contour = contours.get(index);
+                if (Imgproc.contourArea(contour) <= CONTOUR_AREA_THRESHOLD) {
+                    continue;
+                }
+                contour.convertTo(contourFloat, CvType.CV_32FC2);
+                double arcLength = Imgproc.arcLength(contourFloat, true);
+
+                float[] previous = null;
+                for (int factor = 0; factor < ARC_LENGTH_FACTORS.length; factor++) {
+                    Imgproc.approxPolyDP(contourFloat, approx, arcLength * ARC_LENGTH_FACTORS[factor], true);
+                    float[] points = new float[(int) approx.total() * 2];
+                    approx.get(0, 0, points);
+                    if (approximations != null) {
+                        approximations[factor][index] = points;
+                        continue;
+                    }
+                    // Both factors often simplify to the same polygon.
+                    if (Arrays.equals(points, previous)) {
+                        continue;
+                    }
+                    previous = points;
+                    if (points.length == 8 && addIfRectangle(quad.set(points), minArea, maxArea, rectangles)) {
+                        largestArea = Math.max(largestArea, rectangles.getArea(rectangles.size() - 1));
+                    }
+                }
+            }
+            if (approximations != null) {
+                // Listed per arc length factor, then per contour, duplicates included, as
+                // getPoints always has.
+                for (float[][] byContour : approximations) {
+                    for (int index : order) {
+                        float[] points = byContour[index];
+                        if (points != null && points.length == 8) {
+                            addIfRectangle(quad.set(points), minArea, maxArea, rectangles);
+                        }
+                    }
+                }
+            }
+            return rectangles;
+        }
+    }
+
+    /**
+     * Dilated edge map that contours are searched in. The returned Mat is borrowed from
+     * {@link #getMatPool()}, hand it back with {@link MatPool#recycle(Mat)}.
+     */
+    public Mat getModifiedImage(Mat src, DetectionMode mode) {
+        return mode == DetectionMode.VALUE_CHANNEL || src.channels() == 1
+                ? getValueEdgeImage(src)
+                : getModifiedImage(src);
+    }
+
+    private Mat getModifiedImage(Mat src) {
+        Mat rgb = matPool.acquire(src.size(), CvType.CV_8UC3);
+        Imgproc.cvtColor(src, rgb, Imgproc.COLOR_BGR2RGB);
+
+        Mat blurred = matPool.acquire(src.size(), CvType.CV_8UC3);
+        Imgproc.GaussianBlur(rgb, blurred, new Size(5, 5), 0);
+        if (diagnosticsSink.isEnabled()) {
+            diagnosticsSink.onImage("blurred.jpg", blurred);
+        }
+
+        Mat hsvImage = rgb;
+        Imgproc.cvtColor(blurred, hsvImage, Imgproc.COLOR_BGR2HSV);
+
+        Mat hue = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Mat saturation = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Mat value = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Core.extractChannel(hsvImage, value, 2);
+
+        double delta_value =  -0.05 * Core.mean(value).val[0];
+
+        hue.setTo(Scalar.all(180));
+        saturation.setTo(Scalar.all(110));
+
+        Core.add(value, Scalar.all(delta_value), value);
+
+        Core.merge(Arrays.asList(hue, saturation, value), hsvImage);
+        matPool.recycle(hue);
+        matPool.recycle(saturation);
+        matPool.recycle(value);
+
+        Mat processedImage = blurred;
+        Imgproc.cvtColor(hsvImage, processedImage, Imgproc.COLOR_HSV2BGR);
+        matPool.recycle(hsvImage);
+
+        Mat cannyImage = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Imgproc.Canny(processedImage, cannyImage, 40, 80);
+        matPool.recycle(processedImage);
+
+        Mat dilatedImage = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Imgproc.dilate(cannyImage, dilatedImage, getDilateElement());
+        matPool.recycle(cannyImage);
+
+        return dilatedImage;
+    }
+
+    private Mat getValueEdgeImage(Mat src) {
+        Mat value = src;
+        if (src.channels() > 1) {
+            Mat hsvImage = matPool.acquire(src.size(), CvType.CV_8UC3);
+            Imgproc.cvtColor(src, hsvImage, Imgproc.COLOR_RGB2HSV);
+            value = matPool.acquire(src.size(), CvType.CV_8UC1);
+            Core.extractChannel(hsvImage, value, 2);
+            matPool.recycle(hsvImage);
+        }
+
+        Mat blurred = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Imgproc.GaussianBlur(value, blurred, new Size(5, 5), 0);
+        if (value != src) {
+            matPool.recycle(value);
+        }
+
+        double delta_value = -0.05 * Core.mean(blurred).val[0];
+        Core.add(blurred, Scalar.all(delta_value), blurred);
+
+        Mat cannyImage = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Imgproc.Canny(blurred, cannyImage, 40, 80);
+        matPool.recycle(blurred);
+
+        Mat dilatedImage = matPool.acquire(src.size(), CvType.CV_8UC1);
+        Imgproc.dilate(cannyImage, dilatedImage, getDilateElement());
+        matPool.recycle(cannyImage);
+
+        return dilatedImage;
+    }
+
+    private synchronized Mat getDilateElement() {
+        if (dilateElement == null) {
+            dilateElement = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
+        }
+        return dilateElement;
+    }
+
+    /**
+     * Workspace that detection borrows its intermediate Mats from. Use it to change the cap of
+     * idle Mats kept between scans.
+     */
+    public MatPool getMatPool() {
+        return matPool;
+    }
+
+    /**
+     * Frees every native buffer kept between scans. The instance stays usable, the workspace
+     * is simply refilled by the next detection.
+     */
+    public void release() {
+        matPool.release();
+    }
+
+    /**
+     * Adds {@code quad} to {@code candidates} with its area and a score of one minus the largest
+     * corner cosine when it is a convex quadrilateral with an area between {@code minArea} and
+     * {@code maxArea} and a plausible shape. Returns whether it was added.
+     */
+    private boolean addIfRectangle(Quad quad, double minArea, double maxArea, QuadCandidates candidates) {
+        double area = quad.getArea();
+        if (area < minArea || area > maxArea) {
+            return false;
+        }
+
+        if (!quad.isConvex()) {
+            return false;
+        }
+
+        // Check if the angles at corners 1 to 3 are more than 84.26 degrees (cos 0.1).
+        double maxCosine = 0;
+
+        for (int i = 1; i < 4; i++) {
+            maxCosine = Math.max(Math.abs(quad.getCosine(i)), maxCosine);
+        }
+
+        if (maxCosine >= 0.1) {
+            return false;
+        }
+        candidates.add(quad, area, 1 - maxCosine);
+        return true;
+    }
+
+}
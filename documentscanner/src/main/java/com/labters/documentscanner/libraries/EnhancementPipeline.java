@@ -0,0 +1,572 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import com.labters.documentscanner.helpers.MatScope;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Ordered list of enhancement stages applied to a cropped page, built with {@link #builder()}.
+ * <p>
+ * Per-pixel stages next to each other (contrast stretch, gamma) are composed into a single
+ * 256 entry lookup table and applied in one pass, the histograms they need are derived from
+ * one histogram of their input. The other stages write into one of two full size Mats that
+ * are reused for the whole run, and color pages are converted to gray into one of them before
+ * thresholding, so a pipeline never holds more than two page sized intermediates however many
+ * stages it has. {@link #apply(Mat)} keeps the input as well, {@link #applyAndRelease} uses it
+ * as one of the two. Pipelines are immutable and can be shared.
+ * <p>
+ * Input is a CV_8UC1, CV_8UC3 or CV_8UC4 Mat. Color stages leave a fourth (alpha) channel
+ * unchanged, {@code grayscale} and {@code binarize} return a single channel.
+ */
+public final class EnhancementPipeline {
+
+    /**
+     * Receives the time every stage took, fused stages are reported once with their names
+     * joined by {@code +}.
+     */
+    public interface StageListener {
+        void onStage(String stage, long elapsedNanos);
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 31;
+    public static final double DEFAULT_C = 7.0;
+
+    /**
+     * No stages, the page is returned as it was cropped.
+     */
+    public static final EnhancementPipeline ORIGINAL = builder().build();
+    public static final EnhancementPipeline GRAYSCALE = builder().grayscale().build();
+    /**
+     * Gaussian adaptive threshold with a block size of 31 and a constant of 7, black text on
+     * white.
+     */
+    public static final EnhancementPipeline BINARIZE = builder().binarize().build();
+    /**
+     * Shadow removal, contrast stretch and a light sharpen, keeps the colors.
+     */
+    public static final EnhancementPipeline DOCUMENT = builder()
+            .removeShadows()
+            .stretchContrast()
+            .sharpen()
+            .build();
+
+    // Longer side of the copy the shadow background is estimated on.
+    private static final int SHADOW_WORK_SIZE = 512;
+
+    private final List<Stage> stages;
+
+    private EnhancementPipeline(List<Stage> stages) {
+        this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    /**
+     * Whether the last stage binarizes, so the output only holds 0 and 255.
+     */
+    public boolean isBinarizing() {
+        if (stages.isEmpty()) {
+            return false;
+        }
+        return stages.get(stages.size() - 1) instanceof ThresholdStage;
+    }
+
+    /**
+     * Applies the pipeline on the calling thread and returns a new Mat owned by the caller,
+     * {@code src} is not modified.
+     */
+    public Mat apply(Mat src) {
+        return apply(src, null, null);
+    }
+
+    /**
+     * Applies the pipeline and returns a new Mat owned by the caller, {@code src} is not
+     * modified. Thresholding is split into tiles on {@code pool} unless it is {@code null}.
+     * {@code listener} may be {@code null}.
+     */
+    public Mat apply(Mat src, ForkJoinPool pool, StageListener listener) {
+        return apply(src, false, pool, listener);
+    }
+
+    /**
+     * Like {@link #apply(Mat, ForkJoinPool, StageListener)}, but takes ownership of {@code src}
+     * and uses it as one of the two buffers, so the caller's copy of the page does not stay
+     * alive next to them. {@code src} must not be used afterwards, the returned Mat may be
+     * {@code src} itself.
+     */
+    public Mat applyAndRelease(Mat src, ForkJoinPool pool, StageListener listener) {
+        return apply(src, true, pool, listener);
+    }
+
+    private Mat apply(Mat src, boolean ownsSrc, ForkJoinPool pool, StageListener listener) {
+        try (MatScope scope = new MatScope()) {
+            if (ownsSrc) {
+                scope.track(src);
+            }
+            if (src.depth() != CvType.CV_8U) {
+                throw new IllegalArgumentException("Expected an 8 bit Mat.");
+            }
+            Mat[] buffers = {ownsSrc ? src : scope.newMat(), scope.newMat()};
+            // The caller's Mat, which is only read, or null when src is one of the buffers.
+            Mat input = ownsSrc ? null : src;
+            Mat current = src;
+            int index = 0;
+            while (index < stages.size()) {
+                long start = System.nanoTime();
+                Mat next = current == buffers[0] ? buffers[1] : buffers[0];
+                String name;
+                if (stages.get(index) instanceof PointStage) {
+                    int end = index;
+                    while (end < stages.size() && stages.get(end) instanceof PointStage) {
+                        end++;
+                    }
+                    name = applyPointStages(stages.subList(index, end), current,
+                            current == input ? next : current);
+                    if (current == input) {
+                        current = next;
+                    }
+                    index = end;
+                } else {
+                    FilterStage stage = (FilterStage) stages.get(index);
+                    if (stage instanceof ThresholdStage && current.channels() != 1) {
+                        // The gray page goes into one buffer and the result into the other,
+                        // replacing the color page when the pipeline owns it.
+                        Mat gray = current == input ? buffers[1] : next;
+                        next = current == input ? buffers[0] : current;
+                        Imgproc.cvtColor(current, gray, grayConversion(current));
+                        current = gray;
+                    }
+                    stage.apply(current, next, pool);
+                    name = stage.name;
+                    current = next;
+                    index++;
+                }
+                if (listener != null) {
+                    listener.onStage(name, System.nanoTime() - start);
+                }
+            }
+            if (current == input) {
+                return src.clone();
+            }
+            return scope.detach(current);
+        }
+    }
+
+    /**
+     * Composes {@code run} into one lookup table and applies it to {@code src}, which may be
+     * {@code dst}. Returns the joined stage names.
+     */
+    private static String applyPointStages(List<Stage> run, Mat src, Mat dst) {
+        boolean needsHistogram = false;
+        for (Stage stage : run) {
+            needsHistogram |= ((PointStage) stage).needsHistogram();
+        }
+        long[] histogram = needsHistogram ? histogram(src) : null;
+        int[] table = new int[256];
+        for (int value = 0; value < 256; value++) {
+            table[value] = value;
+        }
+        StringBuilder name = new StringBuilder();
+        for (Stage stage : run) {
+            int[] stageTable = ((PointStage) stage).table(histogram);
+            for (int value = 0; value < 256; value++) {
+                table[value] = stageTable[table[value]];
+            }
+            if (histogram != null) {
+                // The histogram of the stage output, for the stages after it.
+                long[] mapped = new long[256];
+                for (int value = 0; value < 256; value++) {
+                    mapped[stageTable[value]] += histogram[value];
+                }
+                histogram = mapped;
+            }
+            name.append(name.length() == 0 ? "" : "+").append(stage.name);
+        }
+
+        int channels = src.channels();
+        byte[] lut = new byte[256 * channels];
+        for (int value = 0; value < 256; value++) {
+            for (int channel = 0; channel < channels; channel++) {
+                lut[value * channels + channel] = (byte) (channel == 3 ? value : table[value]);
+            }
+        }
+        Mat lutMat = new Mat(1, 256, CvType.CV_8UC(channels));
+        try {
+            lutMat.put(0, 0, lut);
+            Core.LUT(src, lutMat, dst);
+        } finally {
+            lutMat.release();
+        }
+        return name.toString();
+    }
+
+    /**
+     * Histogram of all color channels together, alpha excluded.
+     */
+    private static long[] histogram(Mat src) {
+        long[] histogram = new long[256];
+        int colorChannels = Math.min(src.channels(), 3);
+        try (MatScope scope = new MatScope()) {
+            List<Mat> images = Collections.singletonList(src);
+            Mat hist = scope.newMat();
+            Mat mask = scope.newMat();
+            MatOfInt histSize = scope.track(new MatOfInt(256));
+            MatOfFloat ranges = scope.track(new MatOfFloat(0f, 256f));
+            float[] counts = new float[256];
+            for (int channel = 0; channel < colorChannels; channel++) {
+                MatOfInt channels = scope.track(new MatOfInt(channel));
+                Imgproc.calcHist(images, channels, mask, hist, histSize, ranges);
+                hist.get(0, 0, counts);
+                for (int value = 0; value < 256; value++) {
+                    histogram[value] += (long) counts[value];
+                }
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Copies the alpha channel of a four channel {@code src} back over {@code dst}, for stages
+     * that filter every channel alike.
+     */
+    private static void keepAlpha(Mat src, Mat dst) {
+        if (src.channels() != 4) {
+            return;
+        }
+        MatOfInt alpha = new MatOfInt(3, 3);
+        try {
+            Core.mixChannels(Collections.singletonList(src), Collections.singletonList(dst), alpha);
+        } finally {
+            alpha.release();
+        }
+    }
+
+    private static int grayConversion(Mat src) {
+        return src.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY;
+    }
+
+    private abstract static class Stage {
+        final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Maps every value through a table, the same for each color channel.
+     */
+    private abstract static class PointStage extends Stage {
+        PointStage(String name) {
+            super(name);
+        }
+
+        boolean needsHistogram() {
+            return false;
+        }
+
+        /**
+         * {@code histogram} is the histogram of the stage input if {@link #needsHistogram()}.
+         */
+        abstract int[] table(long[] histogram);
+    }
+
+    /**
+     * Reads {@code src} and writes a new image into {@code dst}, never the same Mat.
+     */
+    private abstract static class FilterStage extends Stage {
+        FilterStage(String name) {
+            super(name);
+        }
+
+        abstract void apply(Mat src, Mat dst, ForkJoinPool pool);
+    }
+
+    private static final class GrayscaleStage extends FilterStage {
+        GrayscaleStage() {
+            super("grayscale");
+        }
+
+        @Override
+        void apply(Mat src, Mat dst, ForkJoinPool pool) {
+            if (src.channels() == 1) {
+                src.copyTo(dst);
+            } else {
+                Imgproc.cvtColor(src, dst, grayConversion(src));
+            }
+        }
+    }
+
+    private static final class ShadowStage extends FilterStage {
+        ShadowStage() {
+            super("shadows");
+        }
+
+        /**
+         * Estimates the paper color on a small copy, where closing with a few pixel kernel
+         * removes the text, and divides the page by it.
+         */
+        @Override
+        void apply(Mat src, Mat dst, ForkJoinPool pool) {
+            double scale = Math.min(1.0, (double) SHADOW_WORK_SIZE / Math.max(src.cols(), src.rows()));
+            try (MatScope scope = new MatScope()) {
+                Mat small = scope.newMat();
+                Imgproc.resize(src, small, new Size(), scale, scale, Imgproc.INTER_AREA);
+                Mat kernel = scope.track(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(7, 7)));
+                Imgproc.dilate(small, small, kernel);
+                Imgproc.medianBlur(small, small, 7);
+                // The background is built in dst and divided in place, no third page sized Mat.
+                Imgproc.resize(small, dst, src.size(), 0, 0, Imgproc.INTER_LINEAR);
+                Core.divide(src, dst, dst, 255);
+            }
+            keepAlpha(src, dst);
+        }
+    }
+
+    private static final class SharpenStage extends FilterStage {
+        private final double sigma;
+        private final double amount;
+
+        SharpenStage(double sigma, double amount) {
+            super("sharpen");
+            this.sigma = sigma;
+            this.amount = amount;
+        }
+
+        /**
+         * Unsharp mask, the blurred copy is built in dst and combined in place.
+         */
+        @Override
+        void apply(Mat src, Mat dst, ForkJoinPool pool) {
+            Imgproc.GaussianBlur(src, dst, new Size(), sigma);
+            Core.addWeighted(src, 1 + amount, dst, -amount, 0, dst);
+            keepAlpha(src, dst);
+        }
+    }
+
+    /**
+     * Thresholds a CV_8UC1 {@code src}, color pages are converted to gray by the pipeline
+     * first.
+     */
+    private abstract static class ThresholdStage extends FilterStage {
+        ThresholdStage() {
+            super("binarize");
+        }
+    }
+
+    private static final class BinarizeStage extends ThresholdStage {
+        private final int blockSize;
+        private final double c;
+
+        BinarizeStage(int blockSize, double c) {
+            this.blockSize = blockSize;
+            this.c = c;
+        }
+
+        @Override
+        void apply(Mat src, Mat dst, ForkJoinPool pool) {
+            if (pool == null) {
+                Imgproc.adaptiveThreshold(src, dst, 255.0, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                        Imgproc.THRESH_BINARY, blockSize, c);
+            } else {
+                TiledThreshold.adaptiveThreshold(src, dst, 255.0, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
+                        Imgproc.THRESH_BINARY, blockSize, c, TiledThreshold.DEFAULT_TILE_SIZE, pool);
+            }
+        }
+    }
+
+    private static final class IntegralBinarizeStage extends ThresholdStage {
+        private final IntegralThreshold threshold;
+
+        IntegralBinarizeStage(IntegralThreshold threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        void apply(Mat src, Mat dst, ForkJoinPool pool) {
+            threshold.threshold(src, dst, pool);
+        }
+    }
+
+    private static final class ContrastStage extends PointStage {
+        private final double clip;
+
+        ContrastStage(double clip) {
+            super("contrast");
+            this.clip = clip;
+        }
+
+        @Override
+        boolean needsHistogram() {
+            return true;
+        }
+
+        /**
+         * Maps the range between the {@code clip} and {@code 1 - clip} quantiles onto 0..255.
+         */
+        @Override
+        int[] table(long[] histogram) {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            long limit = (long) (total * clip);
+            int low = 0;
+            long sum = histogram[0];
+            while (low < 255 && sum <= limit) {
+                sum += histogram[++low];
+            }
+            int high = 255;
+            sum = histogram[255];
+            while (high > 0 && sum <= limit) {
+                sum += histogram[--high];
+            }
+            int[] table = new int[256];
+            for (int value = 0; value < 256; value++) {
+                table[value] = high <= low ? value
+                        : clamp((int) Math.round((value - low) * 255.0 / (high - low)));
+            }
+            return table;
+        }
+    }
+
+    private static final class GammaStage extends PointStage {
+        private final double gamma;
+
+        GammaStage(double gamma) {
+            super("gamma");
+            this.gamma = gamma;
+        }
+
+        @Override
+        int[] table(long[] histogram) {
+            int[] table = new int[256];
+            for (int value = 0; value < 256; value++) {
+                table[value] = clamp((int) Math.round(255 * Math.pow(value / 255.0, gamma)));
+            }
+            return table;
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    public static final class Builder {
+        private final List<Stage> stages = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder grayscale() {
+            stages.add(new GrayscaleStage());
+            return this;
+        }
+
+        /**
+         * Evens out shadows and uneven lighting by dividing the page by its estimated paper
+         * color, the paper becomes white.
+         */
+        public Builder removeShadows() {
+            stages.add(new ShadowStage());
+            return this;
+        }
+
+        public Builder stretchContrast() {
+            return stretchContrast(0.01);
+        }
+
+        /**
+         * Stretches the values between the {@code clip} and {@code 1 - clip} quantiles to the
+         * full range, {@code clip} is from 0 to 0.5.
+         */
+        public Builder stretchContrast(double clip) {
+            if (clip < 0 || clip >= 0.5) {
+                throw new IllegalArgumentException("clip must be from 0 to 0.5.");
+            }
+            stages.add(new ContrastStage(clip));
+            return this;
+        }
+
+        /**
+         * Raises every value to {@code gamma}, below 1 brightens and above 1 darkens.
+         */
+        public Builder gamma(double gamma) {
+            if (gamma <= 0) {
+                throw new IllegalArgumentException("gamma must be positive.");
+            }
+            stages.add(new GammaStage(gamma));
+            return this;
+        }
+
+        public Builder sharpen() {
+            return sharpen(1.5, 0.8);
+        }
+
+        /**
+         * Unsharp mask with a Gaussian of {@code sigma} pixels, {@code amount} of 1 doubles
+         * the edge contrast.
+         */
+        public Builder sharpen(double sigma, double amount) {
+            if (sigma <= 0 || amount < 0) {
+                throw new IllegalArgumentException("sigma must be positive and amount not negative.");
+            }
+            stages.add(new SharpenStage(sigma, amount));
+            return this;
+        }
+
+        public Builder binarize() {
+            return binarize(DEFAULT_BLOCK_SIZE, DEFAULT_C);
+        }
+
+        /**
+         * Gaussian adaptive threshold, the output has a single channel of 0 and 255.
+         */
+        public Builder binarize(int blockSize, double c) {
+            if (blockSize < 3 || blockSize % 2 == 0) {
+                throw new IllegalArgumentException("blockSize must be odd and at least 3.");
+            }
+            stages.add(new BinarizeStage(blockSize, c));
+            return this;
+        }
+
+        /**
+         * Thresholds with {@code threshold}, whose cost does not grow with the window size.
+         * The output has a single channel of 0 and 255.
+         */
+        public Builder binarize(IntegralThreshold threshold) {
+            stages.add(new IntegralBinarizeStage(threshold));
+            return this;
+        }
+
+        public EnhancementPipeline build() {
+            return new EnhancementPipeline(stages);
+        }
+    }
+}
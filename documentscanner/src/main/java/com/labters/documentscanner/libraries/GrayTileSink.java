@@ -0,0 +1,50 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * {@link TileSink} that converts every tile to gray as it writes it into a CV_8UC1 Mat, so a
+ * tiled warp of a color image never holds the page with more than one byte per pixel.
+ */
+public class GrayTileSink implements TileSink {
+
+    private final Mat gray;
+
+    public GrayTileSink(Mat gray) {
+        if (gray.type() != CvType.CV_8UC1) {
+            throw new IllegalArgumentException("Expected a CV_8UC1 Mat.");
+        }
+        this.gray = gray;
+    }
+
+    public Mat getMat() {
+        return gray;
+    }
+
+    @Override
+    public void onTile(Mat tile, int x, int y) {
+        Mat region = gray.submat(y, y + tile.rows(), x, x + tile.cols());
+        try {
+            if (tile.channels() == 1) {
+                tile.copyTo(region);
+            } else {
+                // The region has the tile size and type, so the conversion writes into it.
+                Imgproc.cvtColor(tile, region,
+                        tile.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+            }
+        } finally {
+            region.release();
+        }
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Adaptive threshold against the mean of a square window, computed from running sums so the
+ * cost per pixel is the same for any window size, unlike the Gaussian of
+ * {@link org.opencv.imgproc.Imgproc#adaptiveThreshold}.
+ * <p>
+ * The sums are the integral image taken one band at a time: every column keeps the sum of the
+ * window rows around the current row, and a window sum is the difference of two prefix sums
+ * of those column sums along the row. Only the window rows are held, so a page can be
+ * thresholded while it is produced, see {@link #newStream(int, int, RowSink)}. Windows are
+ * clipped at the image border and averaged over the pixels inside.
+ * <p>
+ * {@link Method#BRADLEY} turns a pixel black when it is darker than the mean by more than the
+ * given fraction. {@link Method#SAUVOLA} lowers the threshold where the window has little
+ * contrast, which keeps noise in blank paper areas white.
+ */
+public final class IntegralThreshold {
+
+    public enum Method {
+        BRADLEY,
+        SAUVOLA
+    }
+
+    /**
+     * Receives thresholded rows in order, {@code row} holds 0 for black and 255 for white and is
+     * only valid during the call.
+     */
+    public interface RowSink {
+        void onRow(int y, byte[] row);
+    }
+
+    public static final int DEFAULT_WINDOW_SIZE = 31;
+    public static final double DEFAULT_BRADLEY_T = 0.15;
+    public static final double DEFAULT_SAUVOLA_K = 0.2;
+    /**
+     * Keeps the count times the sum of squares of a window inside a long.
+     */
+    public static final int MAX_WINDOW_SIZE = 2047;
+
+    // Dynamic range of the standard deviation in Sauvola's formula, for 8 bit images.
+    private static final double SAUVOLA_R = 128;
+    // Rows read from or written to a Mat at a time.
+    private static final int BAND_HEIGHT = 64;
+    // Rows every parallel task outputs.
+    private static final int STRIP_HEIGHT = 256;
+
+    private final Method method;
+    private final int windowSize;
+    private final double strength;
+
+    /**
+     * Thresholds with {@code method} over a window of {@code windowSize} pixels. {@code strength}
+     * is the fraction t for {@link Method#BRADLEY} and k for {@link Method#SAUVOLA}.
+     */
+    public IntegralThreshold(Method method, int windowSize, double strength) {
+        if (windowSize < 3 || windowSize > MAX_WINDOW_SIZE || windowSize % 2 == 0) {
+            throw new IllegalArgumentException("windowSize must be odd and from 3 to " + MAX_WINDOW_SIZE + ".");
+        }
+        if (strength < 0 || strength >= 1) {
+            throw new IllegalArgumentException("strength must be from 0 to 1.");
+        }
+        this.method = method;
+        this.windowSize = windowSize;
+        this.strength = strength;
+    }
+
+    public static IntegralThreshold bradley() {
+        return new IntegralThreshold(Method.BRADLEY, DEFAULT_WINDOW_SIZE, DEFAULT_BRADLEY_T);
+    }
+
+    public static IntegralThreshold sauvola() {
+        return new IntegralThreshold(Method.SAUVOLA, DEFAULT_WINDOW_SIZE, DEFAULT_SAUVOLA_K);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    /**
+     * Stream for a {@code width} x {@code height} image. Push the rows in order, each row is
+     * passed to {@code sink} as soon as the rows below it that its window needs have arrived.
+     */
+    public RowStream newStream(int width, int height, RowSink sink) {
+        return new RowStream(width, height, 0, 0, height, sink);
+    }
+
+    /**
+     * Thresholds a CV_8UC1 {@code src} into {@code dst} on the calling thread.
+     */
+    public void threshold(Mat src, Mat dst) {
+        threshold(src, dst, null);
+    }
+
+    /**
+     * Thresholds a CV_8UC1 {@code src} into {@code dst} as CV_8UC1 of 0 and 255, in strips on
+     * {@code pool} unless it is {@code null}. Strips read the window rows of their neighbours,
+     * {@code src} and {@code dst} must be different Mats.
+     */
+    public void threshold(final Mat src, final Mat dst, ForkJoinPool pool) {
+        checkInput(src);
+        if (src == dst) {
+            throw new IllegalArgumentException("'src' cannot be thresholded in place.");
+        }
+        dst.create(src.size(), CvType.CV_8UC1);
+        final int width = src.cols();
+        run(src, pool, new SinkFactory() {
+            @Override
+            public RowSink create() {
+                return new MatRowSink(dst, width);
+            }
+        });
+    }
+
+    /**
+     * Thresholds a CV_8UC1 {@code src} straight into a packed {@link BilevelImage}, no full size
+     * thresholded Mat is allocated. Runs in strips on {@code pool} unless it is {@code null}.
+     */
+    public BilevelImage toBilevel(Mat src, ForkJoinPool pool) {
+        checkInput(src);
+        final BilevelImage image = new BilevelImage(src.cols(), src.rows());
+        final RowSink sink = new RowSink() {
+            @Override
+            public void onRow(int y, byte[] row) {
+                image.packRow(y, row, 0);
+            }
+        };
+        run(src, pool, new SinkFactory() {
+            @Override
+            public RowSink create() {
+                return sink;
+            }
+        });
+        return image;
+    }
+
+    private void run(final Mat src, ForkJoinPool pool, final SinkFactory sinks) {
+        final int height = src.rows();
+        if (pool == null || height <= STRIP_HEIGHT) {
+            stream(src, 0, height, sinks.create());
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int y = 0; y < height; y += STRIP_HEIGHT) {
+            final int top = y;
+            final int bottom = Math.min(height, y + STRIP_HEIGHT);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    stream(src, top, bottom, sinks.create());
+                    return null;
+                }
+            });
+        }
+        TileTasks.invokeAll(pool, tasks);
+    }
+
+    /**
+     * Outputs rows {@code top} to {@code bottom} of {@code src}, reading the window rows around
+     * them.
+     */
+    private void stream(Mat src, int top, int bottom, RowSink sink) {
+        int width = src.cols();
+        int height = src.rows();
+        int radius = windowSize / 2;
+        int first = Math.max(0, top - radius);
+        int last = Math.min(height, bottom + radius);
+        RowStream stream = new RowStream(width, height, first, top, bottom, sink);
+        byte[] band = new byte[width * Math.min(BAND_HEIGHT, last - first)];
+        for (int y = first; y < last; y += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, last - y);
+            // Copies row by row, so submats work too, and stops at the last row.
+            src.get(y, 0, band);
+            stream.push(band, 0, rows);
+        }
+        if (sink instanceof MatRowSink) {
+            ((MatRowSink) sink).flush();
+        }
+    }
+
+    private static void checkInput(Mat src) {
+        if (src.type() != CvType.CV_8UC1) {
+            throw new IllegalArgumentException("Expected a CV_8UC1 Mat.");
+        }
+    }
+
+    private interface SinkFactory {
+        RowSink create();
+    }
+
+    /**
+     * Collects rows and writes them into a Mat a band at a time.
+     */
+    private static final class MatRowSink implements RowSink {
+        private final Mat dst;
+        private final int width;
+        private final byte[] band;
+        private int bandTop = -1;
+        private int bandRows;
+
+        MatRowSink(Mat dst, int width) {
+            this.dst = dst;
+            this.width = width;
+            this.band = new byte[width * BAND_HEIGHT];
+        }
+
+        @Override
+        public void onRow(int y, byte[] row) {
+            if (bandRows == 0) {
+                bandTop = y;
+            }
+            System.arraycopy(row, 0, band, bandRows * width, width);
+            if (++bandRows == BAND_HEIGHT) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (bandRows > 0) {
+                dst.put(bandTop, 0, band, 0, bandRows * width);
+                bandRows = 0;
+            }
+        }
+    }
+
+    /**
+     * Thresholds an image pushed one band of rows at a time, holding only the rows of one
+     * window. Not thread safe.
+     */
+    public final class RowStream {
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final int outputEnd;
+        private final RowSink sink;
+        private final byte[] rows;
+        private final int ringRows;
+        private final byte[] output;
+        private final int[] columnSums;
+        private final long[] columnSquares;
+        // Running sums along the row of the column sums, a window sum is a difference of two.
+        private final long[] sumPrefix;
+        private final long[] squarePrefix;
+        private final double paper;
+        private int received;
+        private int next;
+        private int windowTop;
+        private int windowBottom;
+
+        /**
+         * Stream that is pushed rows from {@code firstRow} on and outputs rows
+         * {@code outputStart} to {@code outputEnd}.
+         */
+        RowStream(int width, int height, int firstRow, int outputStart, int outputEnd, RowSink sink) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Image size must be positive.");
+            }
+            this.width = width;
+            this.height = height;
+            this.radius = windowSize / 2;
+            this.outputEnd = outputEnd;
+            this.sink = sink;
+            // The window rows plus the row leaving the window when the next one arrives.
+            this.ringRows = Math.min(height, 2 * radius + 2);
+            this.rows = new byte[ringRows * width];
+            this.output = new byte[width];
+            this.columnSums = new int[width];
+            this.columnSquares = method == Method.SAUVOLA ? new long[width] : null;
+            this.sumPrefix = new long[width + 1];
+            this.squarePrefix = method == Method.SAUVOLA ? new long[width + 1] : null;
+            this.paper = 1 - strength;
+            this.received = firstRow;
+            this.next = outputStart;
+            this.windowTop = firstRow;
+            this.windowBottom = firstRow;
+        }
+
+        /**
+         * Pushes {@code count} rows of {@code width} bytes starting at {@code gray[offset]}.
+         */
+        public void push(byte[] gray, int offset, int count) {
+            if (received + count > height) {
+                throw new IllegalStateException("More rows than the image height were pushed.");
+            }
+            for (int i = 0; i < count; i++, offset += width) {
+                System.arraycopy(gray, offset, rows, (received % ringRows) * width, width);
+                received++;
+                while (next < outputEnd && received >= Math.min(height, next + radius + 1)) {
+                    emit(next++);
+                }
+            }
+        }
+
+        /**
+         * Whether every row has been passed to the sink.
+         */
+        public boolean isComplete() {
+            return next >= outputEnd;
+        }
+
+        private void emit(int y) {
+            int bottom = Math.min(height, y + radius + 1);
+            int top = Math.max(0, y - radius);
+            // Once the window is full one row enters and one leaves it, both in one pass.
+            while (windowBottom < bottom && windowTop < top) {
+                slideRows(windowBottom++, windowTop++);
+            }
+            while (windowBottom < bottom) {
+                addRow(windowBottom++, 1);
+            }
+            while (windowTop < top) {
+                addRow(windowTop++, -1);
+            }
+            int windowRows = bottom - top;
+            int rowStart = (y % ringRows) * width;
+            // Columns from radius to width - radius have the full window, the rest is clipped.
+            int interiorStart = Math.min(radius, width);
+            int interiorEnd = Math.max(interiorStart, width - radius);
+            prefix(columnSums, sumPrefix);
+            if (columnSquares == null) {
+                thresholdBradley(rowStart, windowRows, 0, interiorStart);
+                thresholdBradleyInterior(rowStart, windowRows, interiorStart, interiorEnd);
+                thresholdBradley(rowStart, windowRows, interiorEnd, width);
+            } else {
+                prefix(columnSquares, squarePrefix);
+                thresholdSauvola(rowStart, windowRows, 0, interiorStart);
+                thresholdSauvolaInterior(rowStart, windowRows, interiorStart, interiorEnd);
+                thresholdSauvola(rowStart, windowRows, interiorEnd, width);
+            }
+            sink.onRow(y, output);
+        }
+
+        private void slideRows(int entering, int leaving) {
+            int enteringStart = (entering % ringRows) * width;
+            int leavingStart = (leaving % ringRows) * width;
+            int[] sums = columnSums;
+            for (int x = 0; x < width; x++) {
+                sums[x] += (rows[enteringStart + x] & 0xff) - (rows[leavingStart + x] & 0xff);
+            }
+            long[] squares = columnSquares;
+            if (squares != null) {
+                for (int x = 0; x < width; x++) {
+                    int in = rows[enteringStart + x] & 0xff;
+                    int out = rows[leavingStart + x] & 0xff;
+                    squares[x] += in * in - out * out;
+                }
+            }
+        }
+
+        private void addRow(int y, int sign) {
+            int rowStart = (y % ringRows) * width;
+            int[] sums = columnSums;
+            long[] squares = columnSquares;
+            for (int x = 0; x < width; x++) {
+                int value = rows[rowStart + x] & 0xff;
+                sums[x] += sign * value;
+                if (squares != null) {
+                    squares[x] += sign * value * value;
+                }
+            }
+        }
+
+        private void thresholdBradley(int rowStart, int windowRows, int from, int to) {
+            double paper = this.paper;
+            for (int x = from; x < to; x++) {
+                int left = Math.max(0, x - radius);
+                int right = Math.min(width, x + radius + 1);
+                long sum = sumPrefix[right] - sumPrefix[left];
+                long count = (long) windowRows * (right - left);
+                // value <= mean * (1 - t), multiplied by the count. The left side is an exact
+                // integer and the right side is rounded once, so t is not quantised.
+                output[x] = (rows[rowStart + x] & 0xff) * count <= sum * paper ? 0 : (byte) 255;
+            }
+        }
+
+        private void thresholdBradleyInterior(int rowStart, int windowRows, int from, int to) {
+            long[] prefix = sumPrefix;
+            double paper = this.paper;
+            long count = (long) windowRows * windowSize;
+            int before = radius;
+            int after = radius + 1;
+            for (int x = from; x < to; x++) {
+                long sum = prefix[x + after] - prefix[x - before];
+                output[x] = (rows[rowStart + x] & 0xff) * count <= sum * paper ? 0 : (byte) 255;
+            }
+        }
+
+        private void thresholdSauvola(int rowStart, int windowRows, int from, int to) {
+            for (int x = from; x < to; x++) {
+                int left = Math.max(0, x - radius);
+                int right = Math.min(width, x + radius + 1);
+                output[x] = sauvola(rows[rowStart + x] & 0xff, sumPrefix[right] - sumPrefix[left],
+                        squarePrefix[right] - squarePrefix[left], (long) windowRows * (right - left));
+            }
+        }
+
+        private void thresholdSauvolaInterior(int rowStart, int windowRows, int from, int to) {
+            long[] sums = sumPrefix;
+            long[] squares = squarePrefix;
+            long count = (long) windowRows * windowSize;
+            double countSquared = (double) count * count;
+            double paper = 1 - strength;
+            double contrast = strength / SAUVOLA_R;
+            int before = radius;
+            int after = radius + 1;
+            // sauvola() with the per row constants hoisted out.
+            for (int x = from; x < to; x++) {
+                long sum = sums[x + after] - sums[x - before];
+                long square = squares[x + after] - squares[x - before];
+                double difference = (double) (rows[rowStart + x] & 0xff) * count - sum * paper;
+                double scale = sum * contrast;
+                long spread = count * square - sum * sum;
+                output[x] = difference <= 0 || difference * difference * countSquared <= scale * scale * spread
+                        ? 0 : (byte) 255;
+            }
+        }
+
+        /**
+         * value <= mean * (1 + k * (deviation / R - 1)), multiplied by the count and squared so
+         * neither a division nor a square root is needed.
+         */
+        private byte sauvola(int value, long sum, long square, long count) {
+            double k = strength;
+            double difference = (double) value * count - sum * (1 - k);
+            if (difference <= 0) {
+                return 0;
+            }
+            double scale = sum * k / SAUVOLA_R;
+            // count squared times the variance, exact in a long.
+            long spread = count * square - sum * sum;
+            return difference * difference * count * count <= scale * scale * spread ? 0 : (byte) 255;
+        }
+
+        private void prefix(int[] values, long[] prefix) {
+            long sum = 0;
+            for (int x = 0; x < width; x++) {
+                sum += values[x];
+                prefix[x + 1] = sum;
+            }
+        }
+
+        private void prefix(long[] values, long[] prefix) {
+            long sum = 0;
+            for (int x = 0; x < width; x++) {
+                sum += values[x];
+                prefix[x + 1] = sum;
+            }
+        }
+    }
+}
@@ -13,29 +13,20 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 
 import com.labters.documentscanner.helpers.ImageUtils;
+import com.labters.documentscanner.helpers.MatPool;
+import com.labters.documentscanner.helpers.MatScope;
 import com.labters.documentscanner.helpers.MathUtils;
 
-import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfInt;
-import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
-import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import android.net.Uri;
-import android.os.Environment;
 
 public class NativeClass {
 
@@ -44,215 +35,181 @@ public class NativeClass {
     }
 
     private static final int THRESHOLD_LEVEL = 2;
-    private static final double AREA_LOWER_THRESHOLD = 0.4;
-    private static final double AREA_UPPER_THRESHOLD = 0.98;
-    private static final double DOWNSCALE_IMAGE_SIZE = 2000f;
 
-    public Bitmap getScannedBitmap(Bitmap bitmap, float x1, float y1, float x2, float y2, float x3, float y3, float x4, float y4) {
-        PerspectiveTransformation perspective = new PerspectiveTransformation();
-        MatOfPoint2f rectangle = new MatOfPoint2f();
-        rectangle.fromArray(new Point(x1, y1), new Point(x2, y2), new Point(x3, y3), new Point(x4, y4));
-        Mat dstMat = perspective.transform(ImageUtils.bitmapToMat(bitmap), rectangle);
-        return ImageUtils.matToBitmap(dstMat);
-    }
-
-    private static Comparator<MatOfPoint2f> AreaDescendingComparator = new Comparator<MatOfPoint2f>() {
-        public int compare(MatOfPoint2f m1, MatOfPoint2f m2) {
-            double area1 = Imgproc.contourArea(m1);
-            double area2 = Imgproc.contourArea(m2);
-            return (int) Math.ceil(area2 - area1);
-        }
-    };
-
-
-    public MatOfPoint2f getPoint(Bitmap bitmap) {
+    private final DocumentDetector detector;
+    private volatile DetectionResolution detectionResolution = DetectionResolution.maxSize(DetectionResolution.DEFAULT_SIZE);
+    private volatile int lastWorkingSize;
+    private volatile long lastDetectionNanos;
 
-        Mat src = ImageUtils.bitmapToMat(bitmap);
-
-        // Downscale image for better performance.
-        double ratio = DOWNSCALE_IMAGE_SIZE / Math.max(src.width(), src.height());
-        Size downscaledSize = new Size(src.width() * ratio, src.height() * ratio);
-        Mat downscaled = new Mat(downscaledSize, src.type());
-        Imgproc.resize(src, downscaled, downscaledSize);
-
-        List<MatOfPoint2f> rectangles = getPoints(downscaled);
-        if (rectangles.size() == 0) {
-            return null;
-        }
-        Collections.sort(rectangles, AreaDescendingComparator);
-        MatOfPoint2f largestRectangle = rectangles.get(0);
-        MatOfPoint2f result = MathUtils.scaleRectangle(largestRectangle, 1f / ratio);
-        return result;
+    public NativeClass() {
+        this(new MatPool());
     }
 
-    // best
-    public List<MatOfPoint2f> getPoints(Mat src) {
-        if (src.empty()) {
-            throw new IllegalArgumentException("Input Mat 'src' is empty.");
-        }
+    public NativeClass(MatPool matPool) {
+        this.detector = new DocumentDetector(matPool);
+    }
 
-        Mat modifiedImage = getModifiedImage(src);
-
-        // Find contours
-        List<MatOfPoint> contours = new ArrayList<>();
-        Imgproc.findContours(modifiedImage, contours, new Mat(), Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
-
-        // Process contours to find rectangles
-        List<MatOfPoint2f> rectangles = new ArrayList<>();
-        double areaThreshold = 500;
-        double[] arcLengths = {0.05, 0.1};
-
-        int srcArea = src.rows() * src.cols();
-        for (double arcLenFactor : arcLengths) {
-            for (MatOfPoint contour : contours) {
-                double contourArea = Imgproc.contourArea(contour);
-                if (contourArea > areaThreshold) {
-                    MatOfPoint2f contourFloat = MathUtils.toMatOfPointFloat(contour);
-                    double arcLen = Imgproc.arcLength(contourFloat, true) * arcLenFactor;
-                    MatOfPoint2f approx = new MatOfPoint2f();
-                    Imgproc.approxPolyDP(contourFloat, approx, arcLen, true);
-
-                    if (isRectangle(approx, srcArea)) {
-                        rectangles.add(approx);
-                    }
-                }
-            }
+    public Bitmap getScannedBitmap(Bitmap bitmap, float x1, float y1, float x2, float y2, float x3, float y3, float x4, float y4) {
+        long memory = NativeMemoryMonitor.begin();
+        PerspectiveTransformation perspective = new PerspectiveTransformation(getDiagnosticsSink());
+        try (MatScope scope = new MatScope()) {
+            Mat src = scope.track(ImageUtils.bitmapToMat(bitmap));
+            MatOfPoint2f rectangle = scope.track(new MatOfPoint2f(
+                    new Point(x1, y1), new Point(x2, y2), new Point(x3, y3), new Point(x4, y4)));
+            Mat dstMat = scope.track(perspective.transform(src, rectangle));
+            return ImageUtils.matToBitmap(dstMat);
+        } finally {
+            NativeMemoryMonitor.end("getScannedBitmap", memory);
         }
-
-        return rectangles;
     }
 
-    private Mat getModifiedImage(Mat src) {
-        String fileName;
-
-        Imgproc.cvtColor(src, src, Imgproc.COLOR_BGR2RGB);
-
-        Mat blurred = new Mat();
-        Imgproc.GaussianBlur(src, blurred, new Size(5, 5), 0);
-        fileName = "/blurred.jpg";
-        saveImage(blurred, fileName);
-
-        Mat hsvImage = new Mat();
-        Imgproc.cvtColor(blurred, hsvImage, Imgproc.COLOR_BGR2HSV);
-
-        List<Mat> hsvChannels = new ArrayList<>();
-        Core.split(hsvImage, hsvChannels);
-        Mat hue = hsvChannels.get(0);
-        Mat saturation = hsvChannels.get(1);
-        Mat value = hsvChannels.get(2);
-
-        double delta_value =  -0.05 * Core.mean(value).val[0];
-
-        Mat modifiedHue = hue.clone();
-        Mat modifiedSaturation = saturation.clone();
-        Mat modifiedValue = new Mat();
-
-        modifiedHue.setTo(Scalar.all(180));
-        modifiedSaturation.setTo(Scalar.all(110));
-
-        Core.add(value, Scalar.all(delta_value), modifiedValue);
-
-        hsvChannels.set(0, modifiedHue);
-        hsvChannels.set(1, modifiedSaturation);
-        hsvChannels.set(2, modifiedValue);
-        Core.merge(hsvChannels, hsvImage);
-
-        Mat processedImage = new Mat();
-        Imgproc.cvtColor(hsvImage, processedImage, Imgproc.COLOR_HSV2BGR);
-
-//        fileName = "/hsv.jpg";
-//        saveImage(processedImage, fileName);
-
-        Mat cannyImage = new Mat();
-        Imgproc.Canny(processedImage, cannyImage, 40, 80);
-
-//        fileName = "/canny.jpg";
-//        saveImage(cannyImage, fileName);
-
-        Mat dilatedImage = new Mat();
-        Mat dilateElement = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
-        Imgproc.dilate(cannyImage, dilatedImage, dilateElement);
-
-//        fileName = "/dilate.jpg";
-//        saveImage(dilatedImage, fileName);
-
-//        Imgproc.cvtColor(processedImage, processedImage, Imgproc.COLOR_BGR2GRAY);
-//        Mat adaptiveImage = new Mat();
-//        Imgproc.adaptiveThreshold(processedImage, adaptiveImage, 255.0,
-//                Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C,
-//                Imgproc.THRESH_BINARY, 45, 3.0);
+    /**
+     * Mat based detector this class feeds, usable wherever the native library is loaded.
+     */
+    public DocumentDetector getDetector() {
+        return detector;
+    }
 
-//        fileName = "/adaptiveThreshold.jpg";
-//        saveImage(adaptiveImage, fileName);
+    public DiagnosticsSink getDiagnosticsSink() {
+        return detector.getDiagnosticsSink();
+    }
 
-//        List<MatOfPoint> contours = new ArrayList<>();
-//        Imgproc.findContours(dilatedImage, contours, new Mat(), Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
-//
-//        Mat contoursImage = src.clone();
-//
-//        double areaThreshold = 500;
-//
-//        for (int i = 0; i < contours.size(); i++) {
-//            double contourArea = Imgproc.contourArea(contours.get(i));
-//            if (contourArea > areaThreshold) {
-//                Imgproc.drawContours(contoursImage, contours, i, new Scalar(0, 255, 0), 2);
-//            }
-//        }
-//
-//        fileName = "/contours.jpg";
-//        saveImage(contoursImage, fileName);
+    public void setDiagnosticsSink(DiagnosticsSink diagnosticsSink) {
+        detector.setDiagnosticsSink(diagnosticsSink);
+    }
 
-        return dilatedImage;
+    public DetectionMode getDetectionMode() {
+        return detector.getDetectionMode();
     }
 
+    public void setDetectionMode(DetectionMode detectionMode) {
+        detector.setDetectionMode(detectionMode);
+    }
 
-    public void saveImage(Mat image, String imageName) {
-        // Define the directory path
-        String directoryPath = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES).toString();
-        directoryPath += "/camScan";
+    public DetectionResolution getDetectionResolution() {
+        return detectionResolution;
+    }
 
-        // Create the directory if it doesn't exist
-        File directory = new File(directoryPath);
-        if (!directory.exists()) {
-            directory.mkdirs();
+    /**
+     * Resolution {@link #getPoint(Bitmap)} detects at, {@link DetectionResolution#maxSize(int)}
+     * of {@link DetectionResolution#DEFAULT_SIZE} unless set.
+     */
+    public void setDetectionResolution(DetectionResolution detectionResolution) {
+        if (detectionResolution == null) {
+            throw new IllegalArgumentException("detectionResolution must not be null.");
         }
+        this.detectionResolution = detectionResolution;
+    }
 
-        // Create the full file path
-        String filePath = directoryPath + imageName;
+    /**
+     * Longer side of the working image the last {@link #getPoint(Bitmap)} call detected on, 0
+     * before the first call.
+     */
+    public int getLastWorkingSize() {
+        return lastWorkingSize;
+    }
 
-        // Save the image
-        Imgcodecs.imwrite(filePath, image);
+    /**
+     * Time the last {@link #getPoint(Bitmap)} call spent resizing and detecting.
+     */
+    public long getLastDetectionNanos() {
+        return lastDetectionNanos;
     }
 
+    public MatOfPoint2f getPoint(Bitmap bitmap) {
+        return getPoint(bitmap, getDetectionMode());
+    }
 
+    public MatOfPoint2f getPoint(Bitmap bitmap, DetectionMode mode) {
+        DetectionResolution resolution = detectionResolution;
+        long memory = NativeMemoryMonitor.begin();
+        try (MatScope scope = new MatScope(detector.getMatPool())) {
+            Mat src = ImageUtils.bitmapToMat(bitmap,
+                    scope.acquire(bitmap.getHeight(), bitmap.getWidth(), CvType.CV_8UC4));
+
+            long start = System.nanoTime();
+            int imageSize = Math.max(src.width(), src.height());
+            int workingSize = resolution.getWorkingSize(imageSize);
+            Mat working = src;
+            double ratio = 1;
+            if (workingSize != imageSize) {
+                ratio = (double) workingSize / imageSize;
+                Size workingImageSize = new Size(Math.round(src.width() * ratio), Math.round(src.height() * ratio));
+                working = scope.acquire(workingImageSize, src.type());
+                Imgproc.resize(src, working, working.size(), 0, 0,
+                        ratio < 1 ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR);
+                scope.free(src);
+            }
 
+            MatOfPoint2f largestRectangle = scope.track(detector.getLargestRectangle(working, mode));
+            scope.free(working);
 
-    private boolean isRectangle(MatOfPoint2f polygon, int srcArea) {
-        MatOfPoint polygonInt = MathUtils.toMatOfPointInt(polygon);
+            long elapsed = System.nanoTime() - start;
+            resolution.onDetection(workingSize, elapsed);
+            lastWorkingSize = workingSize;
+            lastDetectionNanos = elapsed;
 
-        if (polygon.rows() != 4) {
-            return false;
+            if (largestRectangle == null) {
+                return null;
+            }
+            if (ratio == 1) {
+                return scope.detach(largestRectangle);
+            }
+            return MathUtils.scaleRectangle(largestRectangle, 1f / ratio);
+        } finally {
+            NativeMemoryMonitor.end("getPoint", memory);
         }
+    }
 
-        double area = Math.abs(Imgproc.contourArea(polygon));
-        if (area < srcArea * AREA_LOWER_THRESHOLD || area > srcArea * AREA_UPPER_THRESHOLD) {
-            return false;
+    /**
+     * Same as {@link #getPoint(Bitmap)} with {@link CoarseToFineDetector}: the quadrilateral is
+     * found at {@link CoarseToFineDetector#DEFAULT_COARSE_SIZE} pixels and its corners are refined
+     * to sub-pixel accuracy on {@code bitmap} itself. The detection resolution policy is not used.
+     */
+    public MatOfPoint2f getRefinedPoint(Bitmap bitmap) {
+        long memory = NativeMemoryMonitor.begin();
+        try (MatScope scope = new MatScope(detector.getMatPool())) {
+            Mat src = ImageUtils.bitmapToMat(bitmap,
+                    scope.acquire(bitmap.getHeight(), bitmap.getWidth(), CvType.CV_8UC4));
+            return new CoarseToFineDetector(detector,
+                    CoarseToFineDetector.DEFAULT_COARSE_SIZE, getDetectionMode()).detect(src);
+        } finally {
+            NativeMemoryMonitor.end("getRefinedPoint", memory);
         }
+    }
 
-        if (!Imgproc.isContourConvex(polygonInt)) {
-            return false;
-        }
+    /**
+     * Largest document-like quadrilateral in {@code src}, in {@code src} coordinates, or
+     * {@code null} when there is none. Unlike {@link #getPoint(Bitmap)} the input is used at
+     * its own resolution.
+     */
+    public MatOfPoint2f getLargestRectangle(Mat src, DetectionMode mode) {
+        return detector.getLargestRectangle(src, mode);
+    }
 
-        // Check if the all angles are more than 72.54 degrees (cos 0.3).
-        double maxCosine = 0;
-        Point[] approxPoints = polygon.toArray();
+    // best
+    public List<MatOfPoint2f> getPoints(Mat src) {
+        return detector.getPoints(src);
+    }
 
-        for (int i = 2; i < 5; i++) {
-            double cosine = Math.abs(MathUtils.angle(approxPoints[i % 4], approxPoints[i - 2], approxPoints[i - 1]));
-            maxCosine = Math.max(cosine, maxCosine);
-        }
+    public List<MatOfPoint2f> getPoints(Mat src, DetectionMode mode) {
+        return detector.getPoints(src, mode);
+    }
+
+    /**
+     * Workspace that detection borrows its intermediate Mats from. Use it to change the cap of
+     * idle Mats kept between scans.
+     */
+    public MatPool getMatPool() {
+        return detector.getMatPool();
+    }
 
-        return !(maxCosine >= 0.1);
+    /**
+     * Frees every native buffer kept between scans. The instance stays usable, the workspace
+     * is simply refilled by the next detection.
+     */
+    public void release() {
+        detector.release();
     }
 
 }
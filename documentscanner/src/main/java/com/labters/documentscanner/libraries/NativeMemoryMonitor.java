@@ -0,0 +1,73 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Debug counter of live native memory around scans.
+ * <p>
+ * OpenCV allocates Mat buffers on the native heap, which the Java heap numbers do not show.
+ * When enabled, every detection and crop logs how many native heap bytes it left allocated
+ * and how many are live in total, so a leak shows up as a figure that keeps growing over a
+ * long batch session. Scans running at the same time are counted together. Disabled by
+ * default, reading the native heap size is cheap but not free.
+ */
+public final class NativeMemoryMonitor {
+
+    private static final String TAG = "NativeMemory";
+
+    private static volatile boolean enabled;
+    private static volatile long lastRetainedBytes;
+
+    private NativeMemoryMonitor() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        NativeMemoryMonitor.enabled = enabled;
+    }
+
+    /**
+     * Native heap bytes currently allocated by the process.
+     */
+    public static long getLiveBytes() {
+        return Debug.getNativeHeapAllocatedSize();
+    }
+
+    /**
+     * Native heap bytes the last finished scan left allocated, negative when it freed more
+     * than it allocated, for example by trimming a pool.
+     */
+    public static long getLastRetainedBytes() {
+        return lastRetainedBytes;
+    }
+
+    /**
+     * Marks the start of a scan, pass the result to {@link #end(String, long)}. Returns -1 when
+     * the monitor is disabled.
+     */
+    public static long begin() {
+        return enabled ? getLiveBytes() : -1;
+    }
+
+    public static void end(String scan, long begin) {
+        if (!enabled || begin < 0) {
+            return;
+        }
+        long live = getLiveBytes();
+        lastRetainedBytes = live - begin;
+        Log.d(TAG, scan + " retained " + lastRetainedBytes + " bytes, " + live + " bytes live");
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import com.labters.documentscanner.helpers.MatScope;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap orientation stage that runs once on a downscaled copy of the input, so the full
+ * resolution image is rotated at most once.
+ * <p>
+ * It has no Android dependency, the Bitmap overload is the {@code estimate} extension in the
+ * {@code com.labters.documentscanner} package.
+ */
+public class OrientationEstimator {
+
+    /**
+     * Same value as {@code ExifInterface.ORIENTATION_UNDEFINED}, the EXIF tag is not known.
+     */
+    public static final int ORIENTATION_UNDEFINED = 0;
+
+    /**
+     * Longer side, in pixels, that images are scaled down to before {@link #estimate(Mat)}.
+     */
+    public static final int ANALYSIS_SIZE = 800;
+
+    private static final double MIN_INK_FRACTION = 0.01;
+    private static final double MAX_INK_FRACTION = 0.35;
+    private static final double MIN_PROFILE_RATIO = 2.0;
+    private static final int MIN_TEXT_LINES = 5;
+    private static final double MIN_ASYMMETRY = 1.3;
+
+    /**
+     * Clockwise rotation in degrees that makes an image with the given EXIF orientation tag
+     * upright. Mirrored orientations are mapped to their rotation part.
+     */
+    public static int fromExifOrientation(int orientation) {
+        switch (orientation) {
+            case 3: // ORIENTATION_ROTATE_180
+            case 4: // ORIENTATION_FLIP_VERTICAL
+                return 180;
+            case 5: // ORIENTATION_TRANSPOSE
+            case 6: // ORIENTATION_ROTATE_90
+                return 90;
+            case 7: // ORIENTATION_TRANSVERSE
+            case 8: // ORIENTATION_ROTATE_270
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Estimates the clockwise rotation, 0, 90 or 270 degrees, that makes the text lines of a
+     * gray image horizontal and upright. Returns 0, so the image is kept as it is, unless the
+     * page clearly holds text lying on its side. Scale the image down to about
+     * {@link #ANALYSIS_SIZE} first, and prefer the EXIF tag whenever it is available.
+     * <p>
+     * Text lines make the ink projection onto rows alternate between lines and gaps while the
+     * projection onto columns stays flat. The page is only taken to be on its side when the
+     * column profile varies clearly more than the row profile and splits into several lines.
+     * Which side is then told by the lines themselves: turned upright, Latin text has more
+     * ink above its x-height band, from capitals and ascenders, than below it, from
+     * descenders. Tables, ruled forms and pictures are symmetric, so they stay as they are.
+     */
+    public int estimate(Mat gray) {
+        try (MatScope scope = new MatScope()) {
+            Mat ink = scope.newMat();
+            Imgproc.adaptiveThreshold(gray, ink, 1.0,
+                    Imgproc.ADAPTIVE_THRESH_MEAN_C,
+                    Imgproc.THRESH_BINARY_INV, 15, 10.0);
+            double inkFraction = Core.sumElems(ink).val[0] / ink.total();
+            if (inkFraction < MIN_INK_FRACTION || inkFraction > MAX_INK_FRACTION) {
+                return 0;
+            }
+
+            Mat rowProfile = scope.newMat();
+            Mat columnProfile = scope.newMat();
+            Core.reduce(ink, rowProfile, 1, Core.REDUCE_SUM, CvType.CV_32F);
+            Core.reduce(ink, columnProfile, 0, Core.REDUCE_SUM, CvType.CV_32F);
+            if (variation(toArray(columnProfile)) <= variation(toArray(rowProfile)) * MIN_PROFILE_RATIO) {
+                return 0;
+            }
+
+            // Turned clockwise, the lines of a page that needs 90 degrees are upright.
+            Mat turned = scope.newMat();
+            Core.rotate(ink, turned, Core.ROTATE_90_CLOCKWISE);
+            Mat lineProfile = scope.newMat();
+            Core.reduce(turned, lineProfile, 1, Core.REDUCE_SUM, CvType.CV_32F);
+            double[] aboveAndBelow = new double[2];
+            if (measureLines(toArray(lineProfile), aboveAndBelow) < MIN_TEXT_LINES) {
+                return 0;
+            }
+            if (aboveAndBelow[0] > aboveAndBelow[1] * MIN_ASYMMETRY) {
+                return 90;
+            }
+            if (aboveAndBelow[1] > aboveAndBelow[0] * MIN_ASYMMETRY) {
+                return 270;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Finds the x-height bands of the text lines in a row profile, the runs of rows above the
+     * mean, and adds the ink in the half band above and below each to {@code aboveAndBelow}
+     * without crossing into the neighbouring lines. Returns the number of lines.
+     */
+    private int measureLines(float[] profile, double[] aboveAndBelow) {
+        double mean = 0;
+        for (float value : profile) {
+            mean += value;
+        }
+        mean /= profile.length;
+
+        int lines = 0;
+        int previousEnd = 0;
+        int y = 0;
+        while (y < profile.length) {
+            if (profile[y] <= mean) {
+                y++;
+                continue;
+            }
+            int start = y;
+            while (y < profile.length && profile[y] > mean) {
+                y++;
+            }
+            int end = y;
+            int nextStart = end;
+            while (nextStart < profile.length && profile[nextStart] <= mean) {
+                nextStart++;
+            }
+            int reach = Math.max(1, (end - start) / 2);
+            int aboveFrom = Math.max(Math.max(0, start - reach), (previousEnd + start + 1) / 2);
+            int belowTo = Math.min(Math.min(profile.length, end + reach), (end + nextStart) / 2);
+            for (int i = aboveFrom; i < start; i++) {
+                aboveAndBelow[0] += profile[i];
+            }
+            for (int i = end; i < belowTo; i++) {
+                aboveAndBelow[1] += profile[i];
+            }
+            previousEnd = end;
+            lines++;
+        }
+        return lines;
+    }
+
+    private static float[] toArray(Mat profile) {
+        float[] values = new float[(int) profile.total()];
+        profile.get(0, 0, values);
+        return values;
+    }
+
+    /**
+     * Squared coefficient of variation of the profile between its first and last inked
+     * entries, so margins and a short last column do not count as structure.
+     */
+    private double variation(float[] values) {
+        int first = 0;
+        int last = values.length - 1;
+        while (first < last && values[first] == 0) {
+            first++;
+        }
+        while (last > first && values[last] == 0) {
+            last--;
+        }
+        double sum = 0;
+        double squareSum = 0;
+        for (int i = first; i <= last; i++) {
+            sum += values[i];
+            squareSum += (double) values[i] * values[i];
+        }
+        int count = last - first + 1;
+        double mean = sum / count;
+        if (mean <= 0) {
+            return 0;
+        }
+        double variance = squareSum / count - mean * mean;
+        return variance / (mean * mean);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Multi-page PDF writer that streams every page to the output as soon as it is added.
+ * <p>
+ * Color and gray pages are embedded as JPEG data (DCTDecode) without decoding, bilevel pages
+ * are compressed with {@link CcittG4Encoder} (CCITTFaxDecode). Nothing of a page is kept once
+ * it is written, only the byte offset of each object, so a batch of hundreds of pages runs in
+ * the memory of a single page. Pages are sized from their pixel size and the resolution given
+ * to the constructor. Call {@link #close()} to write the page tree and cross-reference table,
+ * the output is not a valid PDF before that.
+ */
+public class PdfWriter implements Closeable {
+
+    public static final int DEFAULT_DPI = 300;
+
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+
+    private final PositionOutputStream out;
+    private final int dpi;
+    private long[] offsets = new long[64];
+    private int[] pages = new int[16];
+    private int pageCount;
+    private int objectCount = PAGES;
+    private boolean closed;
+
+    public PdfWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_DPI);
+    }
+
+    public PdfWriter(OutputStream out, int dpi) throws IOException {
+        if (dpi <= 0) {
+            throw new IllegalArgumentException("dpi must be positive.");
+        }
+        this.out = new PositionOutputStream(out);
+        this.dpi = dpi;
+        write("%PDF-1.4\n");
+        // A comment with high bytes marks the file as binary for transfer tools.
+        this.out.write(new byte[]{'%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n'});
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Adds a page from a baseline JPEG of {@code width} x {@code height} pixels with 1 (gray)
+     * or 3 (color) components.
+     */
+    public void addJpegPage(byte[] jpeg, int width, int height, int components) throws IOException {
+        addJpegPage(jpeg, 0, jpeg.length, width, height, components);
+    }
+
+    public void addJpegPage(byte[] jpeg, int offset, int length, int width, int height, int components)
+            throws IOException {
+        int image = beginImage(width, height, colorSpace(components), 8, "/DCTDecode", null);
+        out.write(jpeg, offset, length);
+        endImage(length);
+        addPage(image, width, height);
+    }
+
+    /**
+     * Adds a page from a JPEG read from {@code jpeg} until its end. The stream is not closed.
+     */
+    public void addJpegPage(InputStream jpeg, int width, int height, int components) throws IOException {
+        int image = beginImage(width, height, colorSpace(components), 8, "/DCTDecode", null);
+        long start = out.position;
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = jpeg.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        endImage(out.position - start);
+        addPage(image, width, height);
+    }
+
+    /**
+     * Adds a bilevel page. Rows are packed 1 bit per pixel, most significant bit first, with
+     * set bits for black, and start {@code stride} bytes apart.
+     */
+    public void addBilevelPage(byte[] data, int width, int height, int stride) throws IOException {
+        if (stride * 8 < width || data.length < (long) stride * height) {
+            throw new IllegalArgumentException("The data is too small for the page size.");
+        }
+        String parameters = "<< /K -1 /Columns " + width + " /Rows " + height + " >>";
+        int image = beginImage(width, height, "/DeviceGray", 1, "/CCITTFaxDecode", parameters);
+        long start = out.position;
+        CcittG4Encoder.encode(data, width, height, stride, out);
+        endImage(out.position - start);
+        addPage(image, width, height);
+    }
+
+    public void addBilevelPage(BilevelImage image) throws IOException {
+        addBilevelPage(image.getData(), image.getWidth(), image.getHeight(), image.getStride());
+    }
+
+    /**
+     * Writes the page tree, the cross-reference table and the trailer, then closes the
+     * underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            beginObject(PAGES);
+            StringBuilder kids = new StringBuilder();
+            for (int i = 0; i < pageCount; i++) {
+                kids.append(i == 0 ? "" : " ").append(pages[i]).append(" 0 R");
+            }
+            write("<< /Type /Pages /Kids [" + kids + "] /Count " + pageCount + " >>\nendobj\n");
+            beginObject(CATALOG);
+            write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+
+            long xref = out.position;
+            StringBuilder table = new StringBuilder("xref\n0 " + (objectCount + 1) + "\n0000000000 65535 f \n");
+            for (int i = 1; i <= objectCount; i++) {
+                table.append(String.format(Locale.ROOT, "%010d 00000 n \n", offsets[i]));
+            }
+            write(table.toString());
+            write("trailer\n<< /Size " + (objectCount + 1) + " /Root " + CATALOG + " 0 R >>\nstartxref\n"
+                    + xref + "\n%%EOF\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the image dictionary and opens its stream. The length is written after the data
+     * as the next object, so the data can be streamed without knowing its size.
+     */
+    private int beginImage(int width, int height, String colorSpace, int bitsPerComponent, String filter,
+                           String decodeParameters) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed.");
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        int image = newObject();
+        beginObject(image);
+        write("<< /Type /XObject /Subtype /Image /Width " + width + " /Height " + height
+                + " /ColorSpace " + colorSpace + " /BitsPerComponent " + bitsPerComponent
+                + " /Filter " + filter
+                + (decodeParameters == null ? "" : " /DecodeParms " + decodeParameters)
+                + " /Length " + (image + 1) + " 0 R >>\nstream\n");
+        return image;
+    }
+
+    private void endImage(long length) throws IOException {
+        write("\nendstream\nendobj\n");
+        int lengthObject = newObject();
+        beginObject(lengthObject);
+        write(length + "\nendobj\n");
+    }
+
+    private void addPage(int image, int width, int height) throws IOException {
+        String pageWidth = toPoints(width);
+        String pageHeight = toPoints(height);
+        byte[] content = ("q " + pageWidth + " 0 0 " + pageHeight + " 0 0 cm /Im0 Do Q\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        int contentObject = newObject();
+        beginObject(contentObject);
+        write("<< /Length " + content.length + " >>\nstream\n");
+        out.write(content);
+        write("endstream\nendobj\n");
+
+        int page = newObject();
+        beginObject(page);
+        write("<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox [0 0 " + pageWidth + " " + pageHeight
+                + "] /Resources << /XObject << /Im0 " + image + " 0 R >> >> /Contents " + contentObject
+                + " 0 R >>\nendobj\n");
+        if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pageCount * 2);
+        }
+        pages[pageCount++] = page;
+        out.flush();
+    }
+
+    private int newObject() {
+        objectCount++;
+        if (objectCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        return objectCount;
+    }
+
+    private void beginObject(int object) throws IOException {
+        offsets[object] = out.position;
+        write(object + " 0 obj\n");
+    }
+
+    private String toPoints(int pixels) {
+        return String.format(Locale.ROOT, "%.2f", pixels * 72d / dpi);
+    }
+
+    private static String colorSpace(int components) {
+        if (components == 1) {
+            return "/DeviceGray";
+        }
+        if (components == 3) {
+            return "/DeviceRGB";
+        }
+        throw new IllegalArgumentException("JPEG pages need 1 or 3 components.");
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Counts the bytes written, the cross-reference table needs the offset of every object.
+     */
+    private static final class PositionOutputStream extends FilterOutputStream {
+        long position;
+
+        PositionOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -9,87 +9,237 @@
 
 package com.labters.documentscanner.libraries;
 
-import android.os.Environment;
+import com.labters.documentscanner.helpers.MatScope;
+import com.labters.documentscanner.helpers.MathUtils;
+import com.labters.documentscanner.helpers.Quad;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 public class PerspectiveTransformation {
     private static final String DEBUG_TAG = "PerspectiveTransformation";
+    private static final int TILE_SOURCE_MARGIN = 2;
+
+    public static final int DEFAULT_TILE_SIZE = 1024;
+
+    private final DiagnosticsSink diagnosticsSink;
 
     public PerspectiveTransformation() {
+        this(DiagnosticsSink.NONE);
     }
 
-    public Mat transform(Mat src, MatOfPoint2f corners) {
-        MatOfPoint2f sortedCorners = sortCorners(corners);
-        Size size = getRectangleSize(sortedCorners);
+    public PerspectiveTransformation(DiagnosticsSink diagnosticsSink) {
+        this.diagnosticsSink = diagnosticsSink == null ? DiagnosticsSink.NONE : diagnosticsSink;
+    }
 
-        Mat result = Mat.zeros(size, src.type());
-        MatOfPoint2f imageOutline = getOutline(result);
+    public Mat transform(Mat src, MatOfPoint2f corners) {
+        Quad sortedQuad = MathUtils.toQuad(corners).sortCorners();
+        Size size = getRectangleSize(sortedQuad);
 
-        Mat transformation = Imgproc.getPerspectiveTransform(sortedCorners, imageOutline);
-        Imgproc.warpPerspective(src, result, transformation, size);
+        try (MatScope scope = new MatScope()) {
+            Mat result = scope.track(Mat.zeros(size, src.type()));
+            MatOfPoint2f sortedCorners = scope.track(MathUtils.toMatOfPoint2f(sortedQuad));
+            MatOfPoint2f imageOutline = scope.track(getOutline(result.cols(), result.rows()));
 
-        String fileName = "/bef_perspective.jpg";
-        saveImage(src, fileName);
+            Mat transformation = scope.track(Imgproc.getPerspectiveTransform(sortedCorners, imageOutline));
+            Imgproc.warpPerspective(src, result, transformation, size);
 
-        fileName = "/after_perspective.jpg";
-        saveImage(result, fileName);
+            if (diagnosticsSink.isEnabled()) {
+                diagnosticsSink.onImage("bef_perspective.jpg", src);
+                diagnosticsSink.onImage("after_perspective.jpg", result);
+            }
 
-        return result;
+            return scope.detach(result);
+        }
     }
 
-    public void saveImage(Mat image, String imageName) {
-        // Define the directory path
-        String directoryPath = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES).toString();
-        directoryPath += "/camScan";
+    /**
+     * Size of the image {@link #transform(Mat, MatOfPoint2f)} produces for these corners.
+     */
+    public Size getOutputSize(MatOfPoint2f corners) {
+        Size size = getRectangleSize(MathUtils.toQuad(corners).sortCorners());
+        return new Size((int) size.width, (int) size.height);
+    }
 
-        // Create the directory if it doesn't exist
-        File directory = new File(directoryPath);
-        if (!directory.exists()) {
-            directory.mkdirs();
+    /**
+     * Same warp as {@link #transform(Mat, MatOfPoint2f)} computed tile by tile.
+     * <p>
+     * The homography is computed once. Each output tile only reads the part of {@code src}
+     * its pixels map to and is handed to {@code sink} before the next one is computed, so the
+     * output never has to exist as a whole. Peak memory besides {@code src} is one tile. Pass
+     * a tile width of at least the output width to get row bands for line based encoders.
+     */
+    public void transformTiled(Mat src, MatOfPoint2f corners, int tileWidth, int tileHeight, TileSink sink) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive.");
         }
+        Quad sortedQuad = MathUtils.toQuad(corners).sortCorners();
+        Size size = getRectangleSize(sortedQuad);
+        int width = (int) size.width;
+        int height = (int) size.height;
+        double[] inverseMap = getInverseMap(sortedQuad, width, height);
+
+        try (MatScope scope = new MatScope()) {
+            Mat tile = scope.newMat();
+            Mat tileMap = scope.newMat(3, 3, CvType.CV_64F);
+            double[] map = new double[9];
+            for (int y = 0; y < height; y += tileHeight) {
+                for (int x = 0; x < width; x += tileWidth) {
+                    warpTile(src, inverseMap, x, y,
+                            Math.min(tileWidth, width - x), Math.min(tileHeight, height - y),
+                            tile, tileMap, map);
+                    sink.onTile(tile, x, y);
+                }
+            }
+        }
+    }
 
-        // Create the full file path
-        String filePath = directoryPath + imageName;
-
-        // Save the image
-        Imgcodecs.imwrite(filePath, image);
+    /**
+     * Parallel version of {@link #transformTiled(Mat, MatOfPoint2f, int, int, TileSink)}.
+     * <p>
+     * The tiles of one tile row are warped concurrently on {@code pool}, then handed to
+     * {@code sink} in row-major order from the calling thread, so the sink does not need to be
+     * thread safe and peak memory is one row of tiles. Every tile is computed exactly as in the
+     * sequential version, the output is bit-identical for any number of threads.
+     */
+    public void transformTiled(final Mat src, MatOfPoint2f corners, final int tileWidth, final int tileHeight,
+                               TileSink sink, ForkJoinPool pool) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive.");
+        }
+        Quad sortedQuad = MathUtils.toQuad(corners).sortCorners();
+        Size size = getRectangleSize(sortedQuad);
+        final int width = (int) size.width;
+        final int height = (int) size.height;
+        final double[] inverseMap = getInverseMap(sortedQuad, width, height);
+
+        // In long, a tile width of Integer.MAX_VALUE asks for row bands.
+        int columns = (int) (((long) width + tileWidth - 1) / tileWidth);
+        final Mat[] tiles = new Mat[columns];
+        final Mat[] tileMaps = new Mat[columns];
+        List<Callable<Void>> tasks = new ArrayList<>(columns);
+        try (MatScope scope = new MatScope()) {
+            for (int i = 0; i < columns; i++) {
+                tiles[i] = scope.newMat();
+                tileMaps[i] = scope.newMat(3, 3, CvType.CV_64F);
+            }
+            for (int y = 0; y < height; y += tileHeight) {
+                final int tileY = y;
+                tasks.clear();
+                for (int i = 0; i < columns; i++) {
+                    final int column = i;
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            int x = column * tileWidth;
+                            warpTile(src, inverseMap, x, tileY,
+                                    Math.min(tileWidth, width - x), Math.min(tileHeight, height - tileY),
+                                    tiles[column], tileMaps[column], new double[9]);
+                            return null;
+                        }
+                    });
+                }
+                TileTasks.invokeAll(pool, tasks);
+                for (int i = 0; i < columns; i++) {
+                    sink.onTile(tiles[i], i * tileWidth, tileY);
+                }
+            }
+        }
     }
 
-    private Size getRectangleSize(MatOfPoint2f rectangle) {
-        Point[] corners = rectangle.toArray();
+    private double[] getInverseMap(Quad sortedQuad, int width, int height) {
+        try (MatScope scope = new MatScope()) {
+            MatOfPoint2f sortedCorners = scope.track(MathUtils.toMatOfPoint2f(sortedQuad));
+            MatOfPoint2f outline = scope.track(getOutline(width, height));
+            Mat transformation = scope.track(Imgproc.getPerspectiveTransform(sortedCorners, outline));
+            Mat inverse = scope.track(transformation.inv());
+            double[] inverseMap = new double[9];
+            inverse.get(0, 0, inverseMap);
+            return inverseMap;
+        }
+    }
 
-        double top = getDistance(corners[0], corners[1]);
-        double right = getDistance(corners[1], corners[2]);
-        double bottom = getDistance(corners[2], corners[3]);
-        double left = getDistance(corners[3], corners[0]);
+    private void warpTile(Mat src, double[] inverseMap, int x, int y, int width, int height,
+                          Mat tile, Mat tileMap, double[] map) {
+        Rect sourceRect = getSourceRect(inverseMap, x, y, width, height, src);
+        if (sourceRect.width <= 0 || sourceRect.height <= 0) {
+            tile.create(height, width, src.type());
+            tile.setTo(Scalar.all(0));
+            return;
+        }
+        getTileMap(inverseMap, x, y, sourceRect.x, sourceRect.y, map);
+        tileMap.put(0, 0, map);
+        Mat sourceTile = src.submat(sourceRect);
+        try {
+            Imgproc.warpPerspective(sourceTile, tile, tileMap, new Size(width, height),
+                    Imgproc.INTER_LINEAR | Imgproc.WARP_INVERSE_MAP);
+        } finally {
+            sourceTile.release();
+        }
+    }
 
-        double averageWidth = (top + bottom) / 2f;
-        double averageHeight = (right + left) / 2f;
+    /**
+     * Bounding box, grown by the interpolation margin, of the source pixels that output tile
+     * pixels map to. A rectangle maps to a convex quadrilateral, so its corners are enough.
+     */
+    private Rect getSourceRect(double[] inverseMap, int x, int y, int width, int height, Mat src) {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            double dx = (i & 1) == 0 ? x : x + width;
+            double dy = (i & 2) == 0 ? y : y + height;
+            double w = inverseMap[6] * dx + inverseMap[7] * dy + inverseMap[8];
+            double sx = (inverseMap[0] * dx + inverseMap[1] * dy + inverseMap[2]) / w;
+            double sy = (inverseMap[3] * dx + inverseMap[4] * dy + inverseMap[5]) / w;
+            minX = Math.min(minX, sx);
+            minY = Math.min(minY, sy);
+            maxX = Math.max(maxX, sx);
+            maxY = Math.max(maxY, sy);
+        }
+        int left = Math.max(0, (int) Math.floor(minX) - TILE_SOURCE_MARGIN);
+        int top = Math.max(0, (int) Math.floor(minY) - TILE_SOURCE_MARGIN);
+        int right = Math.min(src.cols(), (int) Math.ceil(maxX) + TILE_SOURCE_MARGIN);
+        int bottom = Math.min(src.rows(), (int) Math.ceil(maxY) + TILE_SOURCE_MARGIN);
+        return new Rect(left, top, right - left, bottom - top);
+    }
 
-        return new Size(new Point(averageWidth, averageHeight));
+    /**
+     * Output-to-source map of one tile: translate tile coordinates to output coordinates,
+     * apply the inverse homography and translate into the source sub-Mat.
+     */
+    private void getTileMap(double[] inverseMap, int x, int y, int sourceX, int sourceY, double[] map) {
+        System.arraycopy(inverseMap, 0, map, 0, 9);
+        map[2] = inverseMap[0] * x + inverseMap[1] * y + inverseMap[2];
+        map[5] = inverseMap[3] * x + inverseMap[4] * y + inverseMap[5];
+        map[8] = inverseMap[6] * x + inverseMap[7] * y + inverseMap[8];
+        for (int i = 0; i < 3; i++) {
+            map[i] -= sourceX * map[6 + i];
+            map[3 + i] -= sourceY * map[6 + i];
+        }
     }
 
-    private double getDistance(Point p1, Point p2) {
-        double dx = p2.x - p1.x;
-        double dy = p2.y - p1.y;
-        return Math.sqrt(dx * dx + dy * dy);
+    private Size getRectangleSize(Quad sortedQuad) {
+        return new Size(sortedQuad.getAverageWidth(), sortedQuad.getAverageHeight());
     }
 
-    private MatOfPoint2f getOutline(Mat image) {
+    private MatOfPoint2f getOutline(int cols, int rows) {
         Point topLeft = new Point(0, 0);
-        Point topRight = new Point(image.cols(), 0);
-        Point bottomRight = new Point(image.cols(), image.rows());
-        Point bottomLeft = new Point(0, image.rows());
+        Point topRight = new Point(cols, 0);
+        Point bottomRight = new Point(cols, rows);
+        Point bottomLeft = new Point(0, rows);
         Point[] points = {topLeft, topRight, bottomRight, bottomLeft};
 
         MatOfPoint2f result = new MatOfPoint2f();
@@ -98,42 +248,4 @@ public class PerspectiveTransformation {
         return result;
     }
 
-    private MatOfPoint2f sortCorners(MatOfPoint2f corners) {
-        Point center = getMassCenter(corners);
-        List<Point> points = corners.toList();
-        List<Point> topPoints = new ArrayList<Point>();
-        List<Point> bottomPoints = new ArrayList<Point>();
-
-        for (Point point : points) {
-            if (point.y < center.y) {
-                topPoints.add(point);
-            } else {
-                bottomPoints.add(point);
-            }
-        }
-
-        Point topLeft = topPoints.get(0).x > topPoints.get(1).x ? topPoints.get(1) : topPoints.get(0);
-        Point topRight = topPoints.get(0).x > topPoints.get(1).x ? topPoints.get(0) : topPoints.get(1);
-        Point bottomLeft = bottomPoints.get(0).x > bottomPoints.get(1).x ? bottomPoints.get(1) : bottomPoints.get(0);
-        Point bottomRight = bottomPoints.get(0).x > bottomPoints.get(1).x ? bottomPoints.get(0) : bottomPoints.get(1);
-
-        MatOfPoint2f result = new MatOfPoint2f();
-        Point[] sortedPoints = {topLeft, topRight, bottomRight, bottomLeft};
-        result.fromArray(sortedPoints);
-
-        return result;
-    }
-
-    private Point getMassCenter(MatOfPoint2f points) {
-        double xSum = 0;
-        double ySum = 0;
-        List<Point> pointList = points.toList();
-        int len = pointList.size();
-        for (Point point : pointList) {
-            xSum += point.x;
-            ySum += point.y;
-        }
-        return new Point(xSum / len, ySum / len);
-    }
-
 }
@@ -23,6 +23,7 @@ import android.widget.ImageView;
 import android.widget.Magnifier;
 
 import com.labters.documentscanner.R;
+import com.labters.documentscanner.helpers.Quad;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -118,31 +119,31 @@ public class PolygonView extends FrameLayout {
         return getOrderedPoints(points);
     }
 
+    /**
+     * Maps four points to 0 top left, 1 top right, 2 bottom left and 3 bottom right, in any
+     * rotation, with the same ordering the crop uses, see {@link Quad#sortCorners()}. Any other
+     * number of points gives an empty map.
+     */
     public Map<Integer, PointF> getOrderedPoints(List<PointF> points) {
-
-        PointF centerPoint = new PointF();
-        int size = points.size();
-        for (PointF pointF : points) {
-            centerPoint.x += pointF.x / size;
-            centerPoint.y += pointF.y / size;
-        }
         Map<Integer, PointF> orderedPoints = new HashMap<>();
-        for (PointF pointF : points) {
-            int index = -1;
-            if (pointF.x < centerPoint.x && pointF.y < centerPoint.y) {
-                index = 0;
-            } else if (pointF.x > centerPoint.x && pointF.y < centerPoint.y) {
-                index = 1;
-            } else if (pointF.x < centerPoint.x && pointF.y > centerPoint.y) {
-                index = 2;
-            } else if (pointF.x > centerPoint.x && pointF.y > centerPoint.y) {
-                index = 3;
-            }
-            orderedPoints.put(index, pointF);
+        if (points.size() != 4) {
+            return orderedPoints;
+        }
+        Quad quad = new Quad();
+        for (int i = 0; i < 4; i++) {
+            quad.set(i, points.get(i).x, points.get(i).y);
+        }
+        quad.sortCorners();
+        for (int i = 0; i < 4; i++) {
+            orderedPoints.put(i, toPointF(quad, Quad.polygonViewCorner(i)));
         }
         return orderedPoints;
     }
 
+    private static PointF toPointF(Quad quad, int corner) {
+        return new PointF((float) quad.getX(corner), (float) quad.getY(corner));
+    }
+
     public void setPoints(Map<Integer, PointF> pointFMap) {
         if (pointFMap.size() == 4) {
             setPointsCoordinates(pointFMap);
@@ -284,8 +285,18 @@ public class PolygonView extends FrameLayout {
         return super.onTouchEvent(event);
     }
 
+    /**
+     * A shape is valid when it has four corners that form a convex quadrilateral.
+     */
     public boolean isValidShape(Map<Integer, PointF> pointFMap) {
-        return pointFMap.size() == 4;
+        if (pointFMap.size() != 4) {
+            return false;
+        }
+        Quad quad = new Quad();
+        for (int i = 0; i < 4; i++) {
+            quad.set(Quad.polygonViewCorner(i), pointFMap.get(i).x, pointFMap.get(i).y);
+        }
+        return quad.isConvex();
     }
 
     private class TouchListenerImpl implements OnTouchListener {
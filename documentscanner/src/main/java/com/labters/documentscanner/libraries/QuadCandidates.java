@@ -0,0 +1,157 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import com.labters.documentscanner.helpers.MathUtils;
+import com.labters.documentscanner.helpers.Quad;
+
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Document candidates found by {@link DocumentDetector}, stored in primitive arrays together
+ * with the area and score computed while they were validated.
+ * <p>
+ * Ranking reads the stored values only, so picking the best candidates makes no JNI call, and
+ * no Mat exists until {@link #toMat(int)} is called for the ones that are actually used.
+ * Candidates rank by area, larger first, with ties broken by the higher score.
+ */
+public class QuadCandidates {
+
+    private double[] corners = new double[8 * 8];
+    private double[] areas = new double[8];
+    private double[] scores = new double[8];
+    private int size;
+
+    /**
+     * Adds a quadrilateral. {@code score} is 1 for right angles and lower the further the
+     * corners are from them.
+     */
+    public void add(Quad quad, double area, double score) {
+        if (size == areas.length) {
+            int capacity = size * 2;
+            corners = Arrays.copyOf(corners, capacity * 8);
+            areas = Arrays.copyOf(areas, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+        for (int i = 0; i < 4; i++) {
+            corners[size * 8 + i * 2] = quad.getX(i);
+            corners[size * 8 + i * 2 + 1] = quad.getY(i);
+        }
+        areas[size] = area;
+        scores[size] = score;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getArea(int index) {
+        checkIndex(index);
+        return areas[index];
+    }
+
+    public double getScore(int index) {
+        checkIndex(index);
+        return scores[index];
+    }
+
+    /**
+     * Corner {@code corner} of candidate {@code index}, 0 to 3 in the order they were added.
+     */
+    public Point getCorner(int index, int corner) {
+        checkIndex(index);
+        return new Point(corners[index * 8 + corner * 2], corners[index * 8 + corner * 2 + 1]);
+    }
+
+    /**
+     * Copies the corners of candidate {@code index} into {@code dst}.
+     */
+    public Quad getQuad(int index, Quad dst) {
+        checkIndex(index);
+        for (int i = 0; i < 4; i++) {
+            dst.set(i, corners[index * 8 + i * 2], corners[index * 8 + i * 2 + 1]);
+        }
+        return dst;
+    }
+
+    /**
+     * Index of the best candidate, or -1 when there is none.
+     */
+    public int best() {
+        int best = -1;
+        for (int i = 0; i < size; i++) {
+            if (best < 0 || ranksBefore(i, best)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Indices of the best {@code k} candidates, best first. Runs in O(n * k), which beats
+     * sorting everything for the handful of candidates callers look at.
+     */
+    public int[] top(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative.");
+        }
+        int count = Math.min(k, size);
+        int[] top = new int[count];
+        int filled = 0;
+        for (int i = 0; i < size; i++) {
+            if (filled == count && (count == 0 || !ranksBefore(i, top[count - 1]))) {
+                continue;
+            }
+            int position = filled < count ? filled++ : count - 1;
+            while (position > 0 && ranksBefore(i, top[position - 1])) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = i;
+        }
+        return top;
+    }
+
+    public MatOfPoint2f toMat(int index) {
+        return MathUtils.toMatOfPoint2f(getQuad(index, new Quad()));
+    }
+
+    /**
+     * Every candidate as a Mat, in the order they were added.
+     */
+    public List<MatOfPoint2f> toMatList() {
+        List<MatOfPoint2f> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(toMat(i));
+        }
+        return result;
+    }
+
+    private boolean ranksBefore(int a, int b) {
+        int byArea = Double.compare(areas[a], areas[b]);
+        return byArea > 0 || (byArea == 0 && scores[a] > scores[b]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Candidate " + index + " of " + size);
+        }
+    }
+}
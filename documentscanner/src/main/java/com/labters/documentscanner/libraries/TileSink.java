@@ -0,0 +1,23 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import org.opencv.core.Mat;
+
+/**
+ * Receives the output of a tiled operation one tile at a time.
+ * <p>
+ * Tiles arrive in row-major order. The tile Mat is reused for the next tile, copy whatever
+ * has to outlive the call.
+ */
+public interface TileSink {
+
+    void onTile(Mat tile, int x, int y);
+}
@@ -0,0 +1,88 @@
+/*
+ * *
+ *  * Created by Ali YÜCE on 3/2/20 11:18 PM
+ *  * https://github.com/mayuce/
+ *  * Copyright (c) 2020 . All rights reserved.
+ *  * Last modified 3/2/20 11:10 PM
+ *
+ */
+
+package com.labters.documentscanner.libraries;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link Imgproc#adaptiveThreshold} split into tiles that run in parallel on a fork-join pool.
+ * <p>
+ * Each tile is thresholded together with a halo of half the block size around it, which is
+ * exactly the neighbourhood the Gaussian or mean window reads. adaptiveThreshold treats its
+ * input as isolated and replicates the border, so where a tile touches the image edge the
+ * border is the real one and elsewhere the halo supplies the real neighbours. The interior of
+ * every tile is therefore bit-identical to thresholding the whole image at once.
+ * <p>
+ * Tiles read neighbours of other tiles, {@code src} and {@code dst} must be different Mats.
+ */
+public class TiledThreshold {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private TiledThreshold() {
+    }
+
+    public static void adaptiveThreshold(final Mat src, final Mat dst, final double maxValue,
+                                         final int adaptiveMethod, final int thresholdType,
+                                         final int blockSize, final double c,
+                                         int tileSize, ForkJoinPool pool) {
+        if (src.channels() != 1) {
+            throw new IllegalArgumentException("Input Mat 'src' must have a single channel.");
+        }
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive.");
+        }
+        if (src == dst) {
+            throw new IllegalArgumentException("Tiles read their halo from 'src', it cannot be thresholded in place.");
+        }
+        dst.create(src.size(), src.type());
+        final int halo = blockSize / 2;
+        final int width = src.cols();
+        final int height = src.rows();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                final Rect tile = new Rect(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int left = Math.max(0, tile.x - halo);
+                        int top = Math.max(0, tile.y - halo);
+                        int right = Math.min(width, tile.x + tile.width + halo);
+                        int bottom = Math.min(height, tile.y + tile.height + halo);
+
+                        Mat region = src.submat(top, bottom, left, right);
+                        Mat thresholded = new Mat();
+                        Imgproc.adaptiveThreshold(region, thresholded, maxValue,
+                                adaptiveMethod, thresholdType, blockSize, c);
+                        Mat interior = thresholded.submat(new Rect(tile.x - left, tile.y - top, tile.width, tile.height));
+                        Mat target = dst.submat(tile);
+                        interior.copyTo(target);
+
+                        target.release();
+                        interior.release();
+                        thresholded.release();
+                        region.release();
+                        return null;
+                    }
+                });
+            }
+        }
+        TileTasks.invokeAll(pool, tasks);
+    }
+}
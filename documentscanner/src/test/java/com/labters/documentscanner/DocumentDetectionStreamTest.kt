@@ -0,0 +1,134 @@
+package com.labters.documentscanner
+
+import com.labters.documentscanner.helpers.Quad
+import com.labters.documentscanner.libraries.DetectionMode
+import com.labters.documentscanner.libraries.DocumentDetector
+import kotlinx.coroutines.ExecutorCoroutineDispatcher
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.BeforeClass
+import org.junit.Test
+import org.opencv.core.CvType
+import org.opencv.core.Mat
+import org.opencv.core.MatOfPoint
+import org.opencv.core.Point
+import org.opencv.core.Scalar
+import org.opencv.imgproc.Imgproc
+import java.util.concurrent.Executors
+import kotlin.math.hypot
+import kotlin.math.max
+
+/**
+ * Drives [DocumentDetectionStream] with synthetic luma frames on the desktop OpenCV bindings.
+ */
+class DocumentDetectionStreamTest {
+
+    private val dispatcher: ExecutorCoroutineDispatcher = Executors.newSingleThreadExecutor().asCoroutineDispatcher()
+
+    @After
+    fun tearDown() {
+        dispatcher.close()
+    }
+
+    @Test
+    fun findsPageInPaddedFrameAndScalesCornersBack() {
+        val detector = DocumentDetector()
+        val stream = DocumentDetectionStream(320, dispatcher) {
+            detector.getLargestRectangle(it, DetectionMode.VALUE_CHANNEL)
+        }
+        val results = runBlocking { stream.detect(frames(3, 0)).toList() }
+        stream.release()
+        detector.release()
+
+        assertEquals(2L, results.last().timestampNanos)
+        val expected = Quad.fromPoints(PAGE).sortCorners()
+        for (result in results) {
+            assertEquals(WIDTH, result.frameWidth)
+            assertEquals(HEIGHT, result.frameHeight)
+            assertTrue(result.isFound)
+            val corners = result.corners!!
+            val found = Quad(*DoubleArray(8) { corners[it].toDouble() }).sortCorners()
+            var error = 0.0
+            for (i in 0 until 4) {
+                error = max(error, hypot(found.getX(i) - expected.getX(i), found.getY(i) - expected.getY(i)))
+            }
+            assertTrue("Corner error $error px", error < 12)
+        }
+    }
+
+    @Test
+    fun slowCollectorOnlyReceivesNewestResults() {
+        val stream = DocumentDetectionStream(320, dispatcher) { null }
+        val results = runBlocking {
+            val received = ArrayList<QuadDetection>()
+            stream.detect(frames(50, 5)).collect {
+                received.add(it)
+                delay(20)
+            }
+            received
+        }
+        stream.release()
+
+        assertTrue("Received ${results.size} results", results.size < 50)
+        assertEquals(49L, results.last().timestampNanos)
+        assertTrue(results.none { it.isFound })
+    }
+
+    @Test
+    fun reusesFrameBuffers() {
+        val addresses = HashSet<Long>()
+        var calls = 0
+        val stream = DocumentDetectionStream(320, dispatcher) {
+            addresses.add(it.dataAddr())
+            calls++
+            null
+        }
+        runBlocking { stream.detect(frames(10, 10)).toList() }
+        stream.release()
+
+        assertTrue("Detected $calls frames", calls > 1)
+        assertEquals(1, addresses.size)
+    }
+
+    /**
+     * [count] copies of a light page on a dark background, with bright padding at the end of
+     * every row that must not be taken for image content.
+     */
+    private fun frames(count: Int, intervalMillis: Long): Flow<LumaFrame> = flow {
+        val image = Mat(HEIGHT, ROW_STRIDE, CvType.CV_8UC1, Scalar(255.0))
+        image.submat(0, HEIGHT, 0, WIDTH).setTo(Scalar(60.0))
+        val page = MatOfPoint(*PAGE)
+        Imgproc.fillConvexPoly(image, page, Scalar(220.0))
+        val data = ByteArray(ROW_STRIDE * HEIGHT)
+        image.get(0, 0, data)
+        page.release()
+        image.release()
+        for (i in 0 until count) {
+            emit(LumaFrame(data.copyOf(), WIDTH, HEIGHT, ROW_STRIDE, i.toLong()))
+            if (intervalMillis > 0) {
+                delay(intervalMillis)
+            }
+        }
+    }
+
+    companion object {
+        private const val WIDTH = 1280
+        private const val HEIGHT = 720
+        private const val ROW_STRIDE = 1344
+        private val PAGE = arrayOf(Point(200.0, 100.0), Point(1050.0, 130.0), Point(1020.0, 650.0), Point(230.0, 620.0))
+
+        @BeforeClass
+        @JvmStatic
+        fun loadOpenCv() {
+            nu.pattern.OpenCV.loadLocally()
+        }
+    }
+}